@@ -0,0 +1,254 @@
+package org.threadly.litesockets.jfr;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import org.threadly.litesockets.Client;
+import org.threadly.litesockets.Server;
+import org.threadly.litesockets.SocketEventRecorder;
+import org.threadly.litesockets.SocketExecuter;
+
+/**
+ * <p>A {@link SocketEventRecorder} which emits Java Flight Recorder events.  This requires Java 11+ 
+ * so it is built separately from the main (Java 8) jar.  Install with 
+ * {@link SocketExecuter#setSocketEventRecorder(SocketEventRecorder)}.</p>
+ * 
+ * <p>Reads and write flushes happen very frequently, so they are only emitted when the syscall 
+ * took longer than the provided threshold (default {@link #DEFAULT_IO_THRESHOLD_NANOS}).  All other 
+ * events are rare and are always emitted, though any event can still be disabled or given a 
+ * threshold in the JFR recording settings.</p>
+ */
+public class JfrSocketEventRecorder implements SocketEventRecorder {
+  public static final long DEFAULT_IO_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final int BACKPRESSURE_CLEANUP_SIZE = 1024;
+  
+  private final ConcurrentHashMap<Client, BackpressureEvent> backpressureEvents = new ConcurrentHashMap<>();
+  private final long ioThresholdNanos;
+  
+  /**
+   * Constructs a recorder using {@link #DEFAULT_IO_THRESHOLD_NANOS} for read and write events.
+   */
+  public JfrSocketEventRecorder() {
+    this(DEFAULT_IO_THRESHOLD_NANOS);
+  }
+  
+  /**
+   * Constructs a recorder with the provided threshold for read and write events.
+   * 
+   * @param ioThresholdNanos reads and writes faster than this are not emitted, {@code 0} emits all
+   */
+  public JfrSocketEventRecorder(final long ioThresholdNanos) {
+    this.ioThresholdNanos = ioThresholdNanos;
+  }
+
+  @Override
+  public void clientAccepted(final Server server, final Client client) {
+    final AcceptEvent event = new AcceptEvent();
+    if(event.isEnabled()) {
+      event.remoteAddress = String.valueOf(client.getRemoteSocketAddress());
+      event.localAddress = String.valueOf(client.getLocalSocketAddress());
+      event.commit();
+    }
+  }
+
+  @Override
+  public void clientConnected(final Client client, final long connectMillis, final Throwable error) {
+    final ConnectEvent event = new ConnectEvent();
+    if(event.isEnabled()) {
+      event.remoteAddress = String.valueOf(client.getRemoteSocketAddress());
+      event.connectTime = connectMillis;
+      event.success = error == null;
+      event.error = error == null ? null : error.toString();
+      event.commit();
+    }
+  }
+
+  @Override
+  public void clientRead(final Client client, final int bytes, final long durationNanos) {
+    if(durationNanos >= ioThresholdNanos) {
+      final ReadEvent event = new ReadEvent();
+      if(event.isEnabled()) {
+        event.remoteAddress = String.valueOf(client.getRemoteSocketAddress());
+        event.bytes = bytes;
+        event.readTime = durationNanos;
+        event.commit();
+      }
+    }
+  }
+
+  @Override
+  public void clientWriteFlushed(final Client client, final int bytes, final long durationNanos) {
+    if(durationNanos >= ioThresholdNanos) {
+      final WriteFlushEvent event = new WriteFlushEvent();
+      if(event.isEnabled()) {
+        event.remoteAddress = String.valueOf(client.getRemoteSocketAddress());
+        event.bytes = bytes;
+        event.writeTime = durationNanos;
+        event.commit();
+      }
+    }
+  }
+
+  @Override
+  public void readBackpressureStarted(final Client client, final int bufferedBytes) {
+    final BackpressureEvent event = new BackpressureEvent();
+    if(event.isEnabled()) {
+      event.begin();
+      event.remoteAddress = String.valueOf(client.getRemoteSocketAddress());
+      event.bufferedBytes = bufferedBytes;
+      if(backpressureEvents.size() >= BACKPRESSURE_CLEANUP_SIZE) {
+        // clients closed while paused never end their event
+        backpressureEvents.keySet().removeIf(Client::isClosed);
+      }
+      backpressureEvents.put(client, event);
+    }
+  }
+
+  @Override
+  public void readBackpressureEnded(final Client client, final int bufferedBytes) {
+    final BackpressureEvent event = backpressureEvents.remove(client);
+    if(event != null) {
+      event.end();
+      if(event.shouldCommit()) {
+        event.commit();
+      }
+    }
+  }
+
+  @Override
+  public void sslHandshakeFinished(final Client client, final long durationNanos, 
+                                   final SSLSession session, final Throwable error) {
+    final SslHandshakeEvent event = new SslHandshakeEvent();
+    if(event.isEnabled()) {
+      event.remoteAddress = String.valueOf(client.getRemoteSocketAddress());
+      event.handshakeTime = durationNanos;
+      event.success = error == null;
+      if(session != null) {
+        event.protocol = session.getProtocol();
+        event.cipherSuite = session.getCipherSuite();
+      }
+      event.error = error == null ? null : error.toString();
+      event.commit();
+    }
+  }
+  
+  /**
+   * Emitted when a {@link org.threadly.litesockets.TCPServer} accepts a client.
+   */
+  @Name("org.threadly.litesockets.Accept")
+  @Label("Socket Accept")
+  @Category({"litesockets"})
+  @StackTrace(false)
+  public static class AcceptEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress;
+    @Label("Local Address")
+    public String localAddress;
+  }
+  
+  /**
+   * Emitted when an outbound client connect completes.
+   */
+  @Name("org.threadly.litesockets.Connect")
+  @Label("Socket Connect")
+  @Category({"litesockets"})
+  @StackTrace(false)
+  public static class ConnectEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress;
+    @Label("Connect Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long connectTime;
+    @Label("Success")
+    public boolean success;
+    @Label("Error")
+    public String error;
+  }
+  
+  /**
+   * Emitted for slow socket reads.
+   */
+  @Name("org.threadly.litesockets.Read")
+  @Label("Socket Read")
+  @Category({"litesockets"})
+  @StackTrace(false)
+  public static class ReadEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress;
+    @Label("Bytes Read")
+    @DataAmount
+    public int bytes;
+    @Label("Read Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long readTime;
+  }
+  
+  /**
+   * Emitted for slow socket write flushes.
+   */
+  @Name("org.threadly.litesockets.WriteFlush")
+  @Label("Socket Write Flush")
+  @Category({"litesockets"})
+  @StackTrace(false)
+  public static class WriteFlushEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress;
+    @Label("Bytes Written")
+    @DataAmount
+    public int bytes;
+    @Label("Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long writeTime;
+  }
+  
+  /**
+   * Emitted once a client which stopped reading due to a full read buffer resumes.  The event 
+   * duration is how long reading was paused.
+   */
+  @Name("org.threadly.litesockets.ReadBackpressure")
+  @Label("Read Backpressure")
+  @Description("Time a client stopped reading from its socket because its read buffer was full")
+  @Category({"litesockets"})
+  @StackTrace(false)
+  public static class BackpressureEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress;
+    @Label("Buffered Bytes")
+    @DataAmount
+    public int bufferedBytes;
+  }
+  
+  /**
+   * Emitted when an SSL handshake completes or fails.
+   */
+  @Name("org.threadly.litesockets.SslHandshake")
+  @Label("SSL Handshake")
+  @Category({"litesockets"})
+  @StackTrace(false)
+  public static class SslHandshakeEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress;
+    @Label("Handshake Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long handshakeTime;
+    @Label("Success")
+    public boolean success;
+    @Label("Protocol")
+    public String protocol;
+    @Label("Cipher Suite")
+    public String cipherSuite;
+    @Label("Error")
+    public String error;
+  }
+}
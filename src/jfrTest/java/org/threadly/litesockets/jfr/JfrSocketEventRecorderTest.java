@@ -0,0 +1,133 @@
+package org.threadly.litesockets.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.litesockets.TCPClient;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.ThreadedSocketExecuter;
+import org.threadly.litesockets.tcp.FakeTCPServerClient;
+import org.threadly.litesockets.tcp.TCPTests;
+import org.threadly.litesockets.utils.PortUtils;
+import org.threadly.litesockets.utils.SSLUtils;
+import org.threadly.test.concurrent.TestCondition;
+
+public class JfrSocketEventRecorderTest {
+  private static final String[] EVENT_NAMES = new String[] {"org.threadly.litesockets.Accept", 
+                                                            "org.threadly.litesockets.Connect", 
+                                                            "org.threadly.litesockets.Read", 
+                                                            "org.threadly.litesockets.WriteFlush", 
+                                                            "org.threadly.litesockets.SslHandshake"};
+  PriorityScheduler PS;
+  ThreadedSocketExecuter SE;
+  int port;
+  RecordingStream stream;
+  Map<String, AtomicInteger> eventCounts;
+  Map<String, RecordedEvent> lastEvents;
+  
+  @Before
+  public void start() {
+    port = PortUtils.findTCPPort();
+    PS = new PriorityScheduler(5);
+    SE = new ThreadedSocketExecuter(PS);
+    SE.start();
+    eventCounts = new ConcurrentHashMap<>();
+    lastEvents = new ConcurrentHashMap<>();
+    stream = new RecordingStream();
+    for(String name : EVENT_NAMES) {
+      eventCounts.put(name, new AtomicInteger());
+      stream.enable(name).withThreshold(Duration.ZERO);
+      stream.onEvent(name, (e) -> {
+        lastEvents.put(name, e);
+        eventCounts.get(name).incrementAndGet();
+      });
+    }
+    stream.startAsync();
+  }
+  
+  @After
+  public void stop() {
+    stream.close();
+    SE.stopIfRunning();
+    PS.shutdownNow();
+  }
+  
+  private void blockForEvent(final String name) {
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return eventCounts.get(name).get() > 0;
+      }
+    }.blockTillTrue(10000);
+  }
+  
+  @Test
+  public void tcpEventsTest() throws Exception {
+    SE.setSocketEventRecorder(new JfrSocketEventRecorder(0));
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    final TCPServer server = SE.createTCPServer("localhost", port);
+    serverFC.addTCPServer(server);
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    serverFC.addTCPClient(client);
+    client.connect().get();
+    client.write(TCPTests.SMALL_TEXT_BUFFER.duplicate()).get();
+    
+    blockForEvent("org.threadly.litesockets.Accept");
+    blockForEvent("org.threadly.litesockets.Connect");
+    blockForEvent("org.threadly.litesockets.Read");
+    blockForEvent("org.threadly.litesockets.WriteFlush");
+    
+    assertTrue(lastEvents.get("org.threadly.litesockets.Connect").getBoolean("success"));
+    RecordedEvent writeEvent = lastEvents.get("org.threadly.litesockets.WriteFlush");
+    assertEquals(TCPTests.SMALL_TEXT_BUFFER.remaining(), writeEvent.getInt("bytes"));
+    assertEquals(String.valueOf(client.getRemoteSocketAddress()), writeEvent.getString("remoteAddress"));
+    client.close();
+    server.close();
+  }
+  
+  @Test
+  public void sslHandshakeTest() throws Exception {
+    SE.setSocketEventRecorder(new JfrSocketEventRecorder());
+    File filename = new File(ClassLoader.getSystemClassLoader().getResource("test.pem").getFile());
+    SSLContext sslCtx = SSLContext.getInstance("TLS");
+    sslCtx.init(SSLUtils.generateKeyStoreFromPEM(filename, filename).getKeyManagers(), 
+                new TrustManager[] {new SSLUtils.FullTrustManager()}, null);
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    final TCPServer server = SE.createTCPServer("localhost", port);
+    server.setSSLContext(sslCtx);
+    server.setDoHandshake(true);
+    serverFC.addTCPServer(server);
+    
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    SSLEngine sslec = sslCtx.createSSLEngine("localhost", port);
+    sslec.setUseClientMode(true);
+    client.setSSLEngine(sslec);
+    serverFC.addTCPClient(client);
+    client.connect().get();
+    client.startSSL().get();
+    
+    blockForEvent("org.threadly.litesockets.SslHandshake");
+    RecordedEvent event = lastEvents.get("org.threadly.litesockets.SslHandshake");
+    assertTrue(event.getBoolean("success"));
+    assertTrue(event.getString("protocol").startsWith("TLS"));
+    client.close();
+    server.close();
+  }
+}
@@ -0,0 +1,202 @@
+package org.threadly.litesockets.buffers;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the {@link MergedByteBuffers} implementations.  Each benchmark builds a new set of
+ * buffers from {@code chunkCount} chunks of {@link #CHUNK_SIZE} bytes then consumes them, so 
+ * {@link #build()} is included as the baseline cost of creating the buffers.
+ * 
+ * <p>The chunk size is odd so that int and long reads regularly cross chunk boundaries.</p>
+ * 
+ * <p>{@link #addPopChurn(Blackhole)} is the exception, it interleaves {@code add()} and 
+ * {@code popBuffer()} on a single instance kept for the whole trial, the way a client read buffer
+ * is used.  {@link SimpleMergedByteBuffers} can not be added to, so for it this only pops the 
+ * buffers given to the constructor.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergedByteBuffersBenchmark {
+  public static final int CHUNK_SIZE = 1023;
+  public static final int PULL_SIZE = 100;
+  private static final byte[] PATTERN = "\r\n\r\n".getBytes();
+  
+  /**
+   * The {@link MergedByteBuffers} implementations to benchmark.
+   */
+  public enum BufferType {
+    Reuseable, Simple, Transactional
+  }
+  
+  @Param
+  public BufferType bufferType;
+  
+  @Param({"1", "16", "256"})
+  public int chunkCount;
+  
+  private ByteBuffer[] chunks;
+  private MergedByteBuffers searchBuffers;
+  private MergedByteBuffers churnBuffers;
+  
+  @Setup
+  public void setup() {
+    chunks = new ByteBuffer[chunkCount];
+    for(int i = 0; i < chunkCount; i++) {
+      final byte[] ba = new byte[CHUNK_SIZE];
+      Arrays.fill(ba, (byte)'a');
+      chunks[i] = ByteBuffer.wrap(ba);
+    }
+    // the search pattern is only at the very end, split across the last two chunks when possible
+    final ByteBuffer last = chunks[chunkCount - 1];
+    if(chunkCount > 1) {
+      chunks[chunkCount - 2].put(CHUNK_SIZE - 2, PATTERN[0]).put(CHUNK_SIZE - 1, PATTERN[1]);
+      last.put(0, PATTERN[2]).put(1, PATTERN[3]);
+    } else {
+      for(int i = 0; i < PATTERN.length; i++) {
+        last.put(CHUNK_SIZE - PATTERN.length + i, PATTERN[i]);
+      }
+    }
+    searchBuffers = newBuffers();
+    switch(bufferType) {
+      case Simple:
+        churnBuffers = null;
+        break;
+      case Transactional:
+        churnBuffers = new TransactionalByteBuffers();
+        break;
+      default:
+        churnBuffers = new ReuseableMergedByteBuffers(false);
+    }
+  }
+  
+  private MergedByteBuffers newBuffers() {
+    final ByteBuffer[] dups = new ByteBuffer[chunks.length];
+    for(int i = 0; i < chunks.length; i++) {
+      dups[i] = chunks[i].duplicate();
+    }
+    switch(bufferType) {
+      case Simple:
+        return new SimpleMergedByteBuffers(false, dups);
+      case Transactional:
+        TransactionalByteBuffers tbb = new TransactionalByteBuffers();
+        tbb.add(dups);
+        tbb.begin();
+        return tbb;
+      default:
+        return new ReuseableMergedByteBuffers(false, dups);
+    }
+  }
+  
+  private static void finish(final MergedByteBuffers mbb) {
+    if(mbb instanceof TransactionalByteBuffers) {
+      ((TransactionalByteBuffers)mbb).commit();
+    }
+  }
+  
+  @Benchmark
+  public MergedByteBuffers build() {
+    final MergedByteBuffers mbb = newBuffers();
+    finish(mbb);
+    return mbb;
+  }
+  
+  @Benchmark
+  public int addPopChurn(final Blackhole bh) {
+    if(churnBuffers == null) {
+      // Simple has no add path
+      final MergedByteBuffers mbb = newBuffers();
+      int count = 0;
+      while(mbb.hasRemaining()) {
+        bh.consume(mbb.popBuffer());
+        count++;
+      }
+      return count;
+    }
+    final MergedByteBuffers mbb = churnBuffers;
+    if(mbb instanceof TransactionalByteBuffers) {
+      ((TransactionalByteBuffers)mbb).begin();
+    }
+    // one chunk stays queued so each add appends behind a buffer which is then popped
+    mbb.add(chunks[0].duplicate());
+    for(int i = 1; i < chunks.length; i++) {
+      mbb.add(chunks[i].duplicate());
+      bh.consume(mbb.popBuffer());
+    }
+    bh.consume(mbb.popBuffer());
+    finish(mbb);
+    return chunks.length;
+  }
+  
+  @Benchmark
+  public int indexOf() {
+    return searchBuffers.indexOf(PATTERN);
+  }
+  
+  @Benchmark
+  public long getInt() {
+    final MergedByteBuffers mbb = newBuffers();
+    long sum = 0;
+    while(mbb.remaining() >= Integer.BYTES) {
+      sum += mbb.getInt();
+    }
+    finish(mbb);
+    return sum;
+  }
+  
+  @Benchmark
+  public long getLong() {
+    final MergedByteBuffers mbb = newBuffers();
+    long sum = 0;
+    while(mbb.remaining() >= Long.BYTES) {
+      sum += mbb.getLong();
+    }
+    finish(mbb);
+    return sum;
+  }
+  
+  @Benchmark
+  public void pullBuffer(final Blackhole bh) {
+    final MergedByteBuffers mbb = newBuffers();
+    while(mbb.remaining() >= PULL_SIZE) {
+      bh.consume(mbb.pullBuffer(PULL_SIZE));
+    }
+    finish(mbb);
+  }
+  
+  @Benchmark
+  public int discard() {
+    final MergedByteBuffers mbb = newBuffers();
+    while(mbb.remaining() >= PULL_SIZE) {
+      mbb.discard(PULL_SIZE);
+    }
+    finish(mbb);
+    return mbb.remaining();
+  }
+  
+  @Benchmark
+  public MergedByteBuffers duplicateAndClean() {
+    final MergedByteBuffers mbb = newBuffers();
+    final MergedByteBuffers result = mbb.duplicateAndClean();
+    finish(mbb);
+    return result;
+  }
+}
@@ -4,17 +4,19 @@ import java.io.Closeable;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.threadly.concurrent.SubmitterExecutor;
 import org.threadly.concurrent.future.ListenableFuture;
 import org.threadly.concurrent.future.SettableListenableFuture;
 import org.threadly.litesockets.buffers.MergedByteBuffers;
 import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
+import org.threadly.litesockets.utils.AdaptiveAllocationSizer;
+import org.threadly.litesockets.utils.HeavyHitterTracker;
 import org.threadly.litesockets.utils.IOUtils;
 import org.threadly.litesockets.utils.SimpleByteStats;
-import org.threadly.util.Clock;
+import org.threadly.litesockets.utils.SingleWriterByteStats;
 import org.threadly.util.ExceptionUtils;
 
 /**
@@ -34,20 +36,37 @@ import org.threadly.util.ExceptionUtils;
  * @author lwahlmeier
  */
 public abstract class Client implements Closeable {
+  protected static final int CLOSED_FLAG = 1;
+  protected static final int CONNECTION_STARTED_FLAG = 2;
+  private static final ThreadLocal<ByteBuffer> SHARED_READ_BUFFER = new ThreadLocal<>();
+  private static final ClientCloseListener[] NO_CLOSE_LISTENERS = new ClientCloseListener[0];
+  private static final AtomicIntegerFieldUpdater<Client> STATE_FLAGS_UPDATER = 
+      AtomicIntegerFieldUpdater.newUpdater(Client.class, "stateFlags");
+  private static final AtomicReferenceFieldUpdater<Client, ClientCloseListener[]> CLOSE_LISTENERS_UPDATER = 
+      AtomicReferenceFieldUpdater.newUpdater(Client.class, ClientCloseListener[].class, "closeListeners");
+  
   protected final SubmitterExecutor clientExecutor;
+  // readBuffers is also used as the lock for reader state
   protected final ReuseableMergedByteBuffers readBuffers = new ReuseableMergedByteBuffers(false);
+  /**
+   * The lock for reader state, this is the same object as {@link #readBuffers}.
+   * 
+   * @deprecated synchronize on {@link #readBuffers} instead
+   */
+  @Deprecated
+  protected final Object readerLock = readBuffers;
   protected final SocketExecuterCommonBase se;
-  protected final long startTime = Clock.lastKnownForwardProgressingMillis();
-  protected final Object readerLock = new Object();
-  protected final AtomicBoolean closed = new AtomicBoolean(false);
-  protected final ConcurrentLinkedQueue<ClientCloseListener> closerListener = new ConcurrentLinkedQueue<>();
   protected volatile ClientByteStats stats;
-  protected volatile Runnable readerCaller = null;
+  protected volatile Reader reader = null;
+  private volatile int stateFlags = 0;
+  private volatile ClientCloseListener[] closeListeners = NO_CLOSE_LISTENERS;
   protected volatile boolean useNativeBuffers = false;
   protected volatile boolean keepReadBuffer = true;
+  protected volatile boolean sharedReadBuffer = false;
   protected volatile boolean directUdpWrites = false;
   protected volatile int maxBufferSize = IOUtils.DEFAULT_CLIENT_MAX_BUFFER_SIZE;
   protected volatile int newReadBufferSize = IOUtils.DEFAULT_CLIENT_READ_BUFFER_SIZE;
+  protected volatile AdaptiveAllocationSizer readAllocationSizer = null;
   private ByteBuffer readByteBuffer = IOUtils.EMPTY_BYTEBUFFER;
 
   public Client(final SocketExecuterCommonBase se, final boolean statsEnabled) {
@@ -242,6 +261,10 @@ public abstract class Client implements Closeable {
     stats.addWrite(size);
   }
 
+  protected void recordSyscallStats() {
+    stats.addSyscall();
+  }
+
   /**
    * <p>When this clients socket has a read pending and {@link #canRead()} is true, this is where the ByteBuffer for the read comes from.
    * In general this should only be used by the ReadThread in the {@link SocketExecuter} and it should be noted 
@@ -250,41 +273,119 @@ public abstract class Client implements Closeable {
    * @return A {@link ByteBuffer} to use during this clients read operations.
    */
   protected ByteBuffer provideReadByteBuffer() {
+    final AdaptiveAllocationSizer sizer = readAllocationSizer;
+    final int allocationSize;
+    final int minRemaining;
+    if(sizer == null) {
+      allocationSize = newReadBufferSize;
+      minRemaining = IOUtils.DEFAULT_MIN_CLIENT_READ_BUFFER_SIZE;
+    } else {
+      allocationSize = sizer.nextAllocationSize();
+      minRemaining = Math.min(IOUtils.DEFAULT_MIN_CLIENT_READ_BUFFER_SIZE, allocationSize / 2);
+    }
     if(keepReadBuffer) {
-      if(readByteBuffer.remaining() < IOUtils.DEFAULT_MIN_CLIENT_READ_BUFFER_SIZE) {
+      if(readByteBuffer.remaining() < minRemaining || 
+         (sizer != null && readByteBuffer.capacity() < allocationSize)) {
         if(useNativeBuffers) {
-          readByteBuffer = ByteBuffer.allocateDirect(newReadBufferSize);
+          readByteBuffer = ByteBuffer.allocateDirect(allocationSize);
         } else {
-          readByteBuffer = ByteBuffer.allocate(newReadBufferSize);
+          readByteBuffer = ByteBuffer.allocate(allocationSize);
         }
       }
       return readByteBuffer;
     } else {
       if(useNativeBuffers) {
-        return ByteBuffer.allocateDirect(newReadBufferSize);
+        return ByteBuffer.allocateDirect(allocationSize);
       } else {
-        return ByteBuffer.allocate(newReadBufferSize);
+        return ByteBuffer.allocate(allocationSize);
       }
     }
 
   }
 
+  /**
+   * <p>Provides the calling threads shared read {@link ByteBuffer}.  This buffer is reused by every client 
+   * that reads on this thread, so any data read into it must be copied out with 
+   * {@link #copySharedReadBuffer(ByteBuffer, int)} before the thread does another read.</p>
+   * 
+   * @return a cleared {@link ByteBuffer} limited to {@link ClientOptions#getReadAllocationSize()} bytes.
+   */
+  protected ByteBuffer provideSharedReadByteBuffer() {
+    if(readByteBuffer != IOUtils.EMPTY_BYTEBUFFER) {
+      // this clients own buffer is no longer used, this is on the read thread so it is safe to drop
+      readByteBuffer = IOUtils.EMPTY_BYTEBUFFER;
+    }
+    ByteBuffer bb = SHARED_READ_BUFFER.get();
+    if(bb == null || bb.capacity() < newReadBufferSize) {
+      bb = ByteBuffer.allocateDirect(Math.max(newReadBufferSize, IOUtils.DEFAULT_CLIENT_READ_BUFFER_SIZE));
+      SHARED_READ_BUFFER.set(bb);
+    }
+    bb.clear();
+    bb.limit(newReadBufferSize);
+    return bb;
+  }
+
+  /**
+   * <p>Copies data read into a buffer from {@link #provideSharedReadByteBuffer()} into a new {@link ByteBuffer} 
+   * that is exactly the size of the read.</p>
+   * 
+   * @param sharedBuffer the shared buffer the read was done into.
+   * @param size the number of bytes that were read.
+   * @return a new {@link ByteBuffer} containing only the read bytes.
+   */
+  protected ByteBuffer copySharedReadBuffer(final ByteBuffer sharedBuffer, final int size) {
+    final ByteBuffer result;
+    if(useNativeBuffers) {
+      result = ByteBuffer.allocateDirect(size);
+    } else {
+      result = ByteBuffer.allocate(size);
+    }
+    sharedBuffer.flip();
+    result.put(sharedBuffer);
+    result.flip();
+    return result;
+  }
+
+  /**
+   * <p>Used after a socket read to let adaptive read allocations (if enabled) adjust the size of 
+   * future buffers returned from {@link #provideReadByteBuffer()}.  This should only be called from 
+   * the clients read thread.</p>
+   * 
+   * @param bytesRead the number of bytes read from the socket.
+   * @param readCapacity the number of bytes the buffer had available for the read.
+   */
+  protected void recordReadAllocation(final int bytesRead, final int readCapacity) {
+    final AdaptiveAllocationSizer sizer = readAllocationSizer;
+    if(sizer != null) {
+      sizer.recordRead(bytesRead, readCapacity);
+    }
+  }
+
   protected void callClosers(boolean invokedOnClientThread, Throwable error) {
     runListener(()->{
-      while(!closerListener.isEmpty()) {
+      final ClientCloseListener[] listeners = CLOSE_LISTENERS_UPDATER.getAndSet(this, NO_CLOSE_LISTENERS);
+      for(final ClientCloseListener listener : listeners) {
         if (error == null) {
-          closerListener.poll().onClose(this);
+          listener.onClose(this);
         } else {
-          closerListener.poll().onCloseWithError(this, error);
+          listener.onCloseWithError(this, error);
         }
       }
     }, invokedOnClientThread);
   }
 
   protected void callReader(boolean invokedOnClientThread) {
-    Runnable readerCaller = this.readerCaller;
-    if (readerCaller != null) {
-      runListener(readerCaller, invokedOnClientThread);
+    final Reader reader = this.reader;
+    if (reader != null) {
+      if (invokedOnClientThread) {
+        try {
+          reader.onRead(this);
+        } catch (Throwable t) {
+          ExceptionUtils.handleException(t);
+        }
+      } else {
+        getClientsThreadExecutor().execute(() -> reader.onRead(this));
+      }
     }
   }
 
@@ -315,11 +416,21 @@ public abstract class Client implements Closeable {
     }
     recordReadStats(bb.remaining());
     se.recordReadStats(bb.remaining());
+    final HeavyHitterTracker<Client> topClients = se.topClients;
+    if(topClients != null) {
+      topClients.add(this, bb.remaining());
+    }
     int start;
     // synchronize to ensure readBuffers are not modified by non-client thread getRead call
-    synchronized (readerLock) {
+    synchronized (readBuffers) {
       start = readBuffers.remaining();
       readBuffers.add(bb);
+      if(start < maxBufferSize && readBuffers.remaining() >= maxBufferSize) {
+        final SocketEventRecorder eventRecorder = se.eventRecorder;
+        if(eventRecorder != null) {
+          eventRecorder.readBackpressureStarted(this, readBuffers.remaining());
+        }
+      }
     }
     if(start == 0){
       callReader(true); // we assume all buffers are added from the clients thread
@@ -372,11 +483,19 @@ public abstract class Client implements Closeable {
    * @param closer sets this clients {@link ClientCloseListener} callback.
    */
   public void addCloseListener(final ClientCloseListener closer) {
-    if(closed.get()) {
+    if(isClosed()) {
       getClientsThreadExecutor().execute(()->closer.onClose(Client.this));      
     } else {
-      closerListener.add(closer);
-      if(closed.get() && !closerListener.isEmpty()) {
+      while(true) {
+        final ClientCloseListener[] current = closeListeners;
+        final ClientCloseListener[] updated = new ClientCloseListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = closer;
+        if(CLOSE_LISTENERS_UPDATER.compareAndSet(this, current, updated)) {
+          break;
+        }
+      }
+      if(isClosed() && closeListeners.length > 0) {
         this.callClosers(false, null);
       }
     }
@@ -390,12 +509,12 @@ public abstract class Client implements Closeable {
    * @param reader the {@link Reader} callback to set for this client.
    */
   public void setReader(final Reader reader) {
-    if(! closed.get()) {
+    if(! isClosed()) {
       if (reader == null) {
-        readerCaller = null;
+        this.reader = null;
       } else {
-        synchronized(readerLock) {
-          readerCaller = () -> reader.onRead(this);
+        synchronized(readBuffers) {
+          this.reader = reader;
           if (this.getReadBufferSize() > 0) {
             callReader(false);  // we can't assume this is the reader thread
           }
@@ -411,10 +530,14 @@ public abstract class Client implements Closeable {
    * @return a {@link ReuseableMergedByteBuffers} of the current read data for this client.
    */
   public ReuseableMergedByteBuffers getRead() {
-    synchronized(readerLock) {
+    synchronized(readBuffers) {
       ReuseableMergedByteBuffers mbb = readBuffers.duplicateAndClean();
       if(mbb.remaining() >= maxBufferSize) {
         se.setClientOperations(this);
+        final SocketEventRecorder eventRecorder = se.eventRecorder;
+        if(eventRecorder != null) {
+          eventRecorder.readBackpressureEnded(this, mbb.remaining());
+        }
       }
       return mbb;
     }
@@ -428,11 +551,39 @@ public abstract class Client implements Closeable {
    * @return true if the client is closed, false if the client has not yet been closed.
    */
   public boolean isClosed() {
-    return closed.get();
+    return isStateFlagSet(CLOSED_FLAG);
   }
 
   protected boolean setClose() {
-    return closed.compareAndSet(false, true);
+    return setStateFlag(CLOSED_FLAG);
+  }
+
+  /**
+   * <p>Checks if a state flag (ie {@link #CLOSED_FLAG}) has been set on this client.</p>
+   * 
+   * @param flag the flag bit to check.
+   * @return true if the flag has been set.
+   */
+  protected boolean isStateFlagSet(final int flag) {
+    return (stateFlags & flag) != 0;
+  }
+
+  /**
+   * <p>Atomically sets a state flag on this client.  State flags are packed into a single int so 
+   * clients do not need a separate atomic object for each of them.</p>
+   * 
+   * @param flag the flag bit to set.
+   * @return true if this call set the flag, false if it was already set.
+   */
+  protected boolean setStateFlag(final int flag) {
+    while(true) {
+      final int current = stateFlags;
+      if((current & flag) != 0) {
+        return false;
+      } else if(STATE_FLAGS_UPDATER.compareAndSet(this, current, current | flag)) {
+        return true;
+      }
+    }
   }
 
   /**
@@ -464,9 +615,10 @@ public abstract class Client implements Closeable {
   }
 
   /**
-   * Implementation of the SimpleByteStats.
+   * Implementation of the SimpleByteStats.  Stats are only updated from the clients thread (or while 
+   * holding a lock for multi-threaded writes), so a single writer implementation is used.
    */
-  private static class ClientByteStats extends SimpleByteStats {
+  private static class ClientByteStats extends SingleWriterByteStats {
     public static final ClientByteStats NO_OP_STATS = new ClientByteStats() {
       @Override
       protected void addWrite(final int size) {
@@ -477,6 +629,11 @@ public abstract class Client implements Closeable {
       protected void addRead(final int size) {
         // ignored
       }
+
+      @Override
+      protected void addSyscall() {
+        // ignored
+      }
     };
 
     @Override
@@ -488,6 +645,11 @@ public abstract class Client implements Closeable {
     protected void addRead(final int size) {
       super.addRead(size);
     }
+
+    @Override
+    protected void addSyscall() {
+      super.addSyscall();
+    }
   }
 
   /**
@@ -652,6 +814,45 @@ public abstract class Client implements Closeable {
      */
     public int getReadAllocationSize();
 
+    /**
+     * Sets shared Read buffers.  When enabled reads are done into a large buffer that is shared by all 
+     * clients reading on the same thread, and only the bytes actually received are copied into a 
+     * buffer of the exact size and added to the clients read buffers.  This means memory used for reads 
+     * scales with the data in flight rather than the number of connections, which is useful when there 
+     * are a large number of mostly idle connections.  When enabled this takes precedence over 
+     * {@link #setReducedReadAllocations(boolean)} and {@link #setAdaptiveReadAllocations(boolean)}.
+     * 
+     * @param enabled true for enabled false for disabled.
+     * @return true if this was able to be set.
+     */
+    public boolean setSharedReadBuffer(boolean enabled);
+
+    /**
+     * Returns the current state of SharedReadBuffer.
+     * 
+     * @return true for enabled false for disabled.
+     */
+    public boolean getSharedReadBuffer();
+
+    /**
+     * Sets adaptive Read buffer allocations.  Instead of always allocating 
+     * {@link #getReadAllocationSize()} bytes for reads, the allocation size will grow and shrink 
+     * based off the size of recent reads.  {@link #getReadAllocationSize()} is then used as the 
+     * largest size an allocation can grow to.  This can greatly reduce the memory held by mostly 
+     * idle or small request clients, while still allowing bulk transfers to use large reads.
+     * 
+     * @param enabled true for enabled false for disabled.
+     * @return true if this was able to be set.
+     */
+    public boolean setAdaptiveReadAllocations(boolean enabled);
+
+    /**
+     * Returns the current state of AdaptiveReadAllocations.
+     * 
+     * @return true for enabled false for disabled.
+     */
+    public boolean getAdaptiveReadAllocations();
+
     /**
      * This sets the System level socket send buffer size.  Every OS
      * has its own min and max values for this, if you go over or under that
@@ -747,6 +948,9 @@ public abstract class Client implements Closeable {
     @Override
     public boolean setReadAllocationSize(int size) {
       newReadBufferSize = size;
+      if(readAllocationSizer != null) {
+        readAllocationSizer = new AdaptiveAllocationSizer(size);
+      }
       return true;
     }
 
@@ -755,6 +959,35 @@ public abstract class Client implements Closeable {
       return newReadBufferSize;
     }
 
+    @Override
+    public boolean setSharedReadBuffer(boolean enabled) {
+      // the kept read buffer is released by the read thread, see provideSharedReadByteBuffer()
+      sharedReadBuffer = enabled;
+      return true;
+    }
+
+    @Override
+    public boolean getSharedReadBuffer() {
+      return sharedReadBuffer;
+    }
+
+    @Override
+    public boolean setAdaptiveReadAllocations(boolean enabled) {
+      if(enabled) {
+        if(readAllocationSizer == null) {
+          readAllocationSizer = new AdaptiveAllocationSizer(newReadBufferSize);
+        }
+      } else {
+        readAllocationSizer = null;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean getAdaptiveReadAllocations() {
+      return readAllocationSizer != null;
+    }
+
     @Override
     public boolean setMaxClientReadBuffer(int size) {
       maxBufferSize = size;
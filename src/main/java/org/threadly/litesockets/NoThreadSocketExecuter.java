@@ -6,9 +6,12 @@ import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.List;
 
 import org.threadly.concurrent.NoThreadScheduler;
 import org.threadly.concurrent.SubmitterExecutor;
+import org.threadly.litesockets.SelectorStats.EventType;
 import org.threadly.litesockets.utils.IOUtils;
 import org.threadly.util.ArgumentVerifier;
 import org.threadly.util.Clock;
@@ -33,8 +36,10 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
   public static final int SELECT_TIME_MS = 50;
   
   private final NoThreadScheduler localNoThreadScheduler;
+  private final SelectorStats selectorStats = new SelectorStats("NoThreadSelector");
   private Selector commonSelector;
   private volatile boolean wakeUp = false;
+  private volatile boolean inSelect = false;
 
   /**
    * Constructs a NoThreadSocketExecuter.  {@link #start()} must still be called before using it.
@@ -61,6 +66,7 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
   public void wakeup() {
     if(commonSelector != null && commonSelector.isOpen()) {
       wakeUp = true;
+      recordWakeup();
       commonSelector.wakeup();
 
     }
@@ -73,6 +79,7 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
       return;
     }
     schedulerPool.execute(()->this.doClientOperations(client));
+    selectorStats.recordWakeupRequest();
     wakeup();
   }
 
@@ -88,10 +95,22 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
       } else {
         schedulerPool.execute(()->executeServerOperations(schedulerPool, udpServer, commonSelector, 0));
       }
+      selectorStats.recordWakeupRequest();
+      recordWakeup();
       commonSelector.wakeup();
     }
   }
 
+  /**
+   * Only counts a wakeup if the selector is blocked in select, otherwise the wakeup just causes 
+   * the next select to return early.
+   */
+  private void recordWakeup() {
+    if(inSelect) {
+      selectorStats.recordWakeup();
+    }
+  }
+
   @Override
   protected void startupService() {
     commonSelector = openSelector();
@@ -113,10 +132,23 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
     executeSchedulerTasks();
     clients.clear();
     servers.clear();
+    udpChannelServers.clear();
+  }
+  
+  private int executeSchedulerTasks() {
+    return localNoThreadScheduler.tick(ExceptionUtils::handleException);
   }
   
-  private void executeSchedulerTasks() {
-    localNoThreadScheduler.tick(ExceptionUtils::handleException);
+  private void executeSchedulerTasksWithStats() {
+    final long drainStart = System.nanoTime();
+    final int queueDepth = localNoThreadScheduler.getQueuedTaskCount();
+    final int processed = executeSchedulerTasks();
+    selectorStats.recordProcessQueueDrain(queueDepth, processed, System.nanoTime() - drainStart);
+  }
+
+  @Override
+  public List<SelectorStats> getSelectorStats() {
+    return Collections.singletonList(selectorStats);
   }
 
   private void doClientOperations(final Client client) {
@@ -124,6 +156,7 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
     if(client.isClosed()) {
       clients.remove(client.getChannel());
       if(sk != null) {
+        selectorStats.recordCancelledKey();
         sk.cancel();
       }
       if(client.getChannel().isOpen()) {
@@ -153,7 +186,8 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
 
   /**
    * This will run all ExecuterTasks, check for pending network operations,
-   * then run those operations.  There can be a lot of I/O operations so this
+   * then run those operations.  If there are none this blocks until there are, or
+   * until the next scheduled task is due.  There can be a lot of I/O operations so this
    * could take some time to run.  In general it should not be called from things like
    * GUI threads.
    * 
@@ -185,15 +219,28 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
     while(isRunning() && !wakeUp && (runOnce || Clock.accurateForwardProgressingMillis() - startTime <= delay)) {
       try {
         commonSelector.selectNow();  //We have to do this before we tick for windows
-        executeSchedulerTasks();
+        executeSchedulerTasksWithStats();
         commonSelector.selectedKeys().clear();
-        commonSelector.select(Math.min(delay, SELECT_TIME_MS));
+        final long selectStart = System.nanoTime();
+        final int readyKeys;
+        inSelect = true;
+        try {
+          readyKeys = commonSelector.select(getSelectTimeout(delay));
+        } finally {
+          inSelect = false;
+        }
+        long eventStart = System.nanoTime();
+        selectorStats.recordSelect(readyKeys, eventStart - selectStart);
         if(isRunning()) {
           for(final SelectionKey key: commonSelector.selectedKeys()) {
             try {
               if(key.isAcceptable()) {
                 doServerAccept(servers.get(key.channel()));
+                eventStart = selectorStats.recordEvent(EventType.Accept, eventStart);
               } else {
+                // reads and writes happen inline, if a key is both they are counted as a read
+                final EventType eventType = 
+                    key.isConnectable() ? EventType.Connect : key.isReadable() ? EventType.Read : EventType.Write;
                 final Client tmpClient = clients.get(key.channel());
                 if(tmpClient != null) {
                   if(key.isConnectable()) {
@@ -215,7 +262,7 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
                   }
                   doClientOperations(tmpClient);
                 } else {
-                  final Server server = servers.get(key.channel());
+                  final Server server = getServer(key.channel());
                   if(key.isReadable()) {
                     if(server != null && server.getServerType() == WireProtocol.UDP) {
                       server.acceptChannel((DatagramChannel)server.getSelectableChannel());
@@ -225,21 +272,29 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
                     if(server != null) {
                       if(server instanceof UDPServer) {
                         UDPServer us = (UDPServer) server;
-                        recordWriteStats(us.doWrite());
-                        setUDPServerOperations(us, true);
+                        final int written = us.doWrite();
+                        if(written > 0) {
+                          recordWriteStats(written);
+                        }
+                        // only re-register once drained, otherwise OP_WRITE is still wanted
+                        if(! us.needsWrite()) {
+                          setUDPServerOperations(us, true);
+                        }
                       }
                     }
                   }
                 }
+                eventStart = selectorStats.recordEvent(eventType, eventStart);
               }
             } catch(CancelledKeyException e) {
               //Key could be cancelled at any point, we dont really care about it.
+              selectorStats.recordCancelledKey();
             }
           }
           //Also for windows bug, canceled keys are not removed till we select again.
           //So we just have to at the end of the loop.
           commonSelector.selectNow();
-          executeSchedulerTasks();
+          executeSchedulerTasksWithStats();
         }
       } catch (IOException e) {
         //There is really nothing to do here but try again, usually this is because of shutdown.
@@ -255,6 +310,15 @@ public class NoThreadSocketExecuter extends SocketExecuterCommonBase {
     wakeUp = false;
   }
 
+  private long getSelectTimeout(final int delay) {
+    // wake up for the next scheduled task (ie a paced write) rather than only on network operations
+    final long taskDelay = Math.max(1, localNoThreadScheduler.getDelayTillNextTask());
+    if(delay == 0) {
+      return taskDelay == Long.MAX_VALUE ? 0 : taskDelay;
+    }
+    return Math.min(Math.min(delay, SELECT_TIME_MS), taskDelay);
+  }
+
   @Override
   public SubmitterExecutor getExecutorFor(final Object obj) {
     return localNoThreadScheduler;
@@ -0,0 +1,208 @@
+package org.threadly.litesockets;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and gauges for a single selector loop in a {@link SocketExecuter}.  These are intended to
+ * help figure out why a selector is falling behind (ie too much time in select, too many tasks being
+ * queued to it, or too much time handling a specific type of event).
+ *
+ * <p>Everything except the wakeup counters is only updated by the thread running the selector loop,
+ * so recording is a few volatile writes per loop and a single {@link System#nanoTime()} per handled
+ * key.  All times are in nanoseconds.</p>
+ */
+public class SelectorStats {
+  /**
+   * The types of events a selector loop handles.
+   */
+  public enum EventType {
+    Accept, Connect, Read, Write
+  }
+
+  private final String name;
+  private final AtomicLongArray eventCounts = new AtomicLongArray(EventType.values().length);
+  private final AtomicLongArray eventNanos = new AtomicLongArray(EventType.values().length);
+  private final LongAdder wakeupRequests = new LongAdder();
+  private final LongAdder wakeups = new LongAdder();
+  private volatile long selectCount = 0;
+  private volatile long emptySelectCount = 0;
+  private volatile long selectBlockedNanos = 0;
+  private volatile long selectedKeys = 0;
+  private volatile int maxSelectedKeys = 0;
+  private volatile int processQueueDepth = 0;
+  private volatile long processQueueDrains = 0;
+  private volatile long processedTasks = 0;
+  private volatile long processQueueDrainNanos = 0;
+  private volatile long cancelledKeys = 0;
+
+  protected SelectorStats(final String name) {
+    this.name = name;
+  }
+
+  protected void recordSelect(final int readyKeys, final long blockedNanos) {
+    selectCount++;
+    selectBlockedNanos += blockedNanos;
+    if(readyKeys == 0) {
+      emptySelectCount++;
+    } else {
+      selectedKeys += readyKeys;
+      if(readyKeys > maxSelectedKeys) {
+        maxSelectedKeys = readyKeys;
+      }
+    }
+  }
+
+  protected void recordProcessQueueDrain(final int depth, final int tasks, final long drainNanos) {
+    processQueueDepth = depth;
+    processQueueDrains++;
+    processedTasks += tasks;
+    processQueueDrainNanos += drainNanos;
+  }
+
+  /**
+   * Records an event being handled which started at the provided time.
+   *
+   * @param type the type of event handled
+   * @param startNanos the {@link System#nanoTime()} when handling of the event started
+   * @return the current {@link System#nanoTime()} so the next event can use it as its start time
+   */
+  protected long recordEvent(final EventType type, final long startNanos) {
+    final long now = System.nanoTime();
+    final int i = type.ordinal();
+    eventCounts.lazySet(i, eventCounts.get(i) + 1);
+    eventNanos.lazySet(i, eventNanos.get(i) + (now - startNanos));
+    return now;
+  }
+
+  protected void recordWakeupRequest() {
+    wakeupRequests.increment();
+  }
+
+  protected void recordWakeup() {
+    wakeups.increment();
+  }
+
+  protected void recordCancelledKey() {
+    cancelledKeys++;
+  }
+
+  /**
+   * @return the name of the selector these stats are for
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of times select has been called
+   */
+  public long getSelectCount() {
+    return selectCount;
+  }
+
+  /**
+   * @return the number of selects which returned without any keys being ready (ie from a wakeup)
+   */
+  public long getEmptySelectCount() {
+    return emptySelectCount;
+  }
+
+  /**
+   * @return the total time spent blocked in select
+   */
+  public long getSelectBlockedNanos() {
+    return selectBlockedNanos;
+  }
+
+  /**
+   * @return the average number of ready keys returned from a select, not counting empty selects
+   */
+  public double getAverageSelectedKeys() {
+    final long nonEmpty = selectCount - emptySelectCount;
+    if(nonEmpty <= 0) {
+      return 0;
+    }
+    return selectedKeys / (double)nonEmpty;
+  }
+
+  /**
+   * @return the most ready keys returned from a single select
+   */
+  public int getMaxSelectedKeys() {
+    return maxSelectedKeys;
+  }
+
+  /**
+   * @return the number of tasks which were queued when the selector last started running its tasks
+   */
+  public int getProcessQueueDepth() {
+    return processQueueDepth;
+  }
+
+  /**
+   * @return the number of times the selector has run its queued tasks
+   */
+  public long getProcessQueueDrains() {
+    return processQueueDrains;
+  }
+
+  /**
+   * @return the total number of queued tasks the selector has run
+   */
+  public long getProcessedTasks() {
+    return processedTasks;
+  }
+
+  /**
+   * @return the total time spent running queued tasks
+   */
+  public long getProcessQueueDrainNanos() {
+    return processQueueDrainNanos;
+  }
+
+  /**
+   * @return the number of times work was handed to the selector from another thread
+   */
+  public long getWakeupRequests() {
+    return wakeupRequests.sum();
+  }
+
+  /**
+   * @return the number of times the selector was actually woken up, this is less than
+   *           {@link #getWakeupRequests()} when the selector was already awake
+   */
+  public long getWakeups() {
+    return wakeups.sum();
+  }
+
+  /**
+   * @return the number of keys cancelled by the selector, or found to be cancelled while handling them
+   */
+  public long getCancelledKeys() {
+    return cancelledKeys;
+  }
+
+  /**
+   * @param type the type of event to get the count for
+   * @return the number of events of that type which have been handled
+   */
+  public long getEventCount(final EventType type) {
+    return eventCounts.get(type.ordinal());
+  }
+
+  /**
+   * @param type the type of event to get the time for
+   * @return the total time the selector has spent handling events of that type
+   */
+  public long getEventNanos(final EventType type) {
+    return eventNanos.get(type.ordinal());
+  }
+
+  @Override
+  public String toString() {
+    return "SelectorStats:" + name + ":selects=" + selectCount + ",blockedNanos=" + selectBlockedNanos +
+             ",avgKeys=" + getAverageSelectedKeys() + ",queueDepth=" + processQueueDepth +
+             ",wakeups=" + getWakeups() + "/" + getWakeupRequests() + ",cancelledKeys=" + cancelledKeys;
+  }
+}
@@ -5,6 +5,7 @@ import java.nio.channels.SelectableChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.threadly.concurrent.event.ListenerHelper;
+import org.threadly.litesockets.utils.AddressFilter;
 import org.threadly.util.ExceptionUtils;
 
 /**
@@ -22,6 +23,7 @@ public abstract class Server implements Closeable {
   protected final SocketExecuterCommonBase sei;
   private final AtomicBoolean closed = new AtomicBoolean(false);
   private volatile ClientAcceptor clientAcceptor;
+  private volatile AddressFilter addressFilter;
   private volatile ListenerHelper<ServerCloseListener> closer = 
       new ListenerHelper<>(ServerCloseListener.class);
   
@@ -137,6 +139,27 @@ public abstract class Server implements Closeable {
     clientAcceptor = acceptor;
   }
   
+  /**
+   * <p>Sets an {@link AddressFilter} to check remote addresses against before they reach this Server.
+   * Denied TCP connections are closed as soon as they are accepted, before a {@link Client} is
+   * created for them, and denied UDP packets are dropped before the {@link Client} lookup.  The same
+   * filter can be shared by many Servers.</p>
+   * 
+   * @param filter the {@link AddressFilter} to use, or {@code null} to allow all addresses.
+   */
+  public void setAddressFilter(final AddressFilter filter) {
+    addressFilter = filter;
+  }
+  
+  /**
+   * <p>Gets the {@link AddressFilter} remote addresses are checked against.</p>
+   * 
+   * @return the current {@link AddressFilter}, or {@code null} if all addresses are allowed.
+   */
+  public AddressFilter getAddressFilter() {
+    return addressFilter;
+  }
+  
   /**
    * Tells you if this sever objects Listen port is still open or not.
    * 
@@ -0,0 +1,92 @@
+package org.threadly.litesockets;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * <p>Callback interface for recording socket level events (ie to Java Flight Recorder) as they
+ * happen on a {@link SocketExecuter}.  Set with
+ * {@link SocketExecuter#setSocketEventRecorder(SocketEventRecorder)}, when no recorder is set
+ * no timing or event work is done.</p>
+ *
+ * <p>All functions are called inline on the thread doing the operation (often the selector or the
+ * clients thread), so implementations must be fast and thread safe.  Every function has a no-op
+ * default so only events of interest need to be implemented.</p>
+ */
+public interface SocketEventRecorder {
+  /**
+   * Called when a {@link TCPServer} has accepted a new client.
+   *
+   * @param server the server which accepted the client
+   * @param client the newly accepted client
+   */
+  public default void clientAccepted(Server server, Client client) {
+    // ignored by default
+  }
+
+  /**
+   * Called when an outbound client connect has completed.
+   *
+   * @param client the client which was connecting
+   * @param connectMillis how long the connect took in milliseconds
+   * @param error the error if the connect failed, or {@code null} if it succeeded
+   */
+  public default void clientConnected(Client client, long connectMillis, Throwable error) {
+    // ignored by default
+  }
+
+  /**
+   * Called after data has been read from the socket.
+   *
+   * @param client the client which the data was read for
+   * @param bytes the number of bytes read
+   * @param durationNanos the time the read took in nanoseconds
+   */
+  public default void clientRead(Client client, int bytes, long durationNanos) {
+    // ignored by default
+  }
+
+  /**
+   * Called after queued write data has been written to the socket.
+   *
+   * @param client the client which the data was written for
+   * @param bytes the number of bytes written
+   * @param durationNanos the time the write took in nanoseconds
+   */
+  public default void clientWriteFlushed(Client client, int bytes, long durationNanos) {
+    // ignored by default
+  }
+
+  /**
+   * Called when a client has stopped reading from the socket because its read buffer is full.
+   *
+   * @param client the client which has stopped reading
+   * @param bufferedBytes the number of bytes currently waiting to be read from the client
+   */
+  public default void readBackpressureStarted(Client client, int bufferedBytes) {
+    // ignored by default
+  }
+
+  /**
+   * Called when a client which was not reading because its read buffer was full has had its
+   * buffer consumed so it can resume reading from the socket.
+   *
+   * @param client the client which can read again
+   * @param bufferedBytes the number of bytes which were consumed from the read buffer
+   */
+  public default void readBackpressureEnded(Client client, int bufferedBytes) {
+    // ignored by default
+  }
+
+  /**
+   * Called when an SSL handshake has completed or failed.
+   *
+   * @param client the client which did the handshake
+   * @param durationNanos how long the handshake took in nanoseconds
+   * @param session the resulting session, or {@code null} if the handshake failed
+   * @param error the failure, or {@code null} if the handshake succeeded
+   */
+  public default void sslHandshakeFinished(Client client, long durationNanos,
+                                           SSLSession session, Throwable error) {
+    // ignored by default
+  }
+}
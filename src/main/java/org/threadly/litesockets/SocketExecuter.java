@@ -3,11 +3,15 @@ package org.threadly.litesockets;
 import java.io.IOException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.List;
 
 import org.threadly.concurrent.SubmitterExecutor;
 import org.threadly.concurrent.SubmitterScheduler;
 import org.threadly.concurrent.future.ListenableFuture;
+import org.threadly.litesockets.utils.HeavyHitterTracker;
+import org.threadly.litesockets.utils.LatencyHistogram;
 import org.threadly.litesockets.utils.SimpleByteStats;
+import org.threadly.litesockets.utils.TokenBucket;
 import org.threadly.util.Service;
 
 
@@ -58,6 +62,41 @@ public interface SocketExecuter extends Service {
    */
   public UDPServer createUDPServer(String host, int port) throws IOException;
   
+  /**
+   * This will create a UDPServer on the specified {@link SocketExecuter} which receives on several
+   * channels bound to the same port with SO_REUSEPORT.  The kernel spreads datagrams over the channels
+   * by remote address, and each channel is registered separately so with a {@link ThreadedSocketExecuter}
+   * they are spread over its selector threads.  The returned {@link UDPServer} has a single client table
+   * and write API for all the channels.
+   * 
+   * SO_REUSEPORT needs java 9 or newer and OS support (ie Linux), when it is not available a single
+   * channel is bound, see {@link UDPServer#getChannelCount()}.
+   * 
+   * @param host The local host or IP the UDPServer should listen on.
+   * @param port The local port the UDPServer should listen on.
+   * @param channels The number of channels to bind to the port.
+   * @return A {@link UDPServer}.
+   * @throws IOException This is only thrown if we can not create the UDPServers sockets.
+   */
+  public UDPServer createUDPServer(String host, int port, int channels) throws IOException;
+  
+  /**
+   * This will create a UDPServer on the specified {@link SocketExecuter} the same as 
+   * {@link #createUDPServer(String, int, int)}, but lets port sharing be chosen explicitly.  Port 
+   * sharing sets SO_REUSEPORT on the servers sockets, which is needed to give clients their own 
+   * connected channel with {@link UDPServer#connectClient(UDPClient)}.  It also allows other 
+   * sockets owned by the same user to bind the port, so it is off unless asked for.  With more than 
+   * one channel the port is always shared.
+   * 
+   * @param host The local host or IP the UDPServer should listen on.
+   * @param port The local port the UDPServer should listen on.
+   * @param channels The number of channels to bind to the port.
+   * @param sharePort {@code true} to share the port even with a single channel.
+   * @return A {@link UDPServer}.
+   * @throws IOException This is only thrown if we can not create the UDPServers sockets.
+   */
+  public UDPServer createUDPServer(String host, int port, int channels, boolean sharePort) throws IOException;
+  
   /**
    * This will create a {@link TCPServer} on the specified {@link SocketExecuter}.
    * 
@@ -164,6 +203,109 @@ public interface SocketExecuter extends Service {
    */
   public SimpleByteStats getStats();
   
+  /**
+   * Enables or disables recording of write latencies for the clients of this SocketExecuter.  This 
+   * is disabled by default.  When enabled each write records the time it was queued, so that when 
+   * it is completed the latencies can be recorded into {@link #getWriteFlushLatency()} and 
+   * {@link #getWriteCompletionLatency()}.
+   * 
+   * <p>Only writes queued while this is enabled are recorded.  Disabling does not reset the 
+   * histograms.</p>
+   * 
+   * @param enabled {@code true} to record write latencies
+   */
+  public void setWriteLatencyTrackingEnabled(boolean enabled);
+  
+  /**
+   * Returns a histogram of the time in nanoseconds from when a write was queued on a client till 
+   * all of its data had been written to the socket.  Nothing is recorded unless 
+   * {@link #setWriteLatencyTrackingEnabled(boolean)} has been enabled.
+   * 
+   * @return the {@link LatencyHistogram} of write flush latencies
+   */
+  public LatencyHistogram getWriteFlushLatency();
+  
+  /**
+   * Returns a histogram of the time in nanoseconds from when a write was queued on a client till 
+   * the future returned from the write was completed.  Nothing is recorded unless 
+   * {@link #setWriteLatencyTrackingEnabled(boolean)} has been enabled.
+   * 
+   * @return the {@link LatencyHistogram} of write completion latencies
+   */
+  public LatencyHistogram getWriteCompletionLatency();
+
+  /**
+   * Limits the combined write rate of every {@link TCPClient} and {@link UDPServer} on this
+   * SocketExecuter, on top of any limit set on the client or server itself.  Once the limit is
+   * reached writes are deferred on the {@link #getThreadScheduler()} until the rate allows them,
+   * rather than waiting on the socket to be writable.  Writes done with 
+   * {@link UDPServer#writeDirect(java.nio.ByteBuffer, java.net.InetSocketAddress)} are not limited.
+   * 
+   * @param bytesPerSecond the max rate to write at, or {@code 0} to remove the limit.
+   * @param burstBytes the most bytes which can be written at once after being idle.
+   */
+  public void setWriteRateLimit(long bytesPerSecond, long burstBytes);
+
+  /**
+   * Returns the {@link TokenBucket} writes are paced with, this gives the configured rate and the 
+   * rate writes have been achieving.
+   * 
+   * @return the {@link TokenBucket} for writes or {@code null} if no limit is set.
+   */
+  public TokenBucket getWriteRateLimiter();
+  
+  /**
+   * Returns the {@link SelectorStats} for each selector loop this SocketExecuter runs.  These are 
+   * always collected, and can be used to see why a selector is falling behind.
+   * 
+   * @return an unmodifiable list of the {@link SelectorStats} for each selector
+   */
+  public List<SelectorStats> getSelectorStats();
+  
+  /**
+   * Sets a {@link SocketEventRecorder} to be notified of socket level events (accepts, connects, 
+   * reads, writes, read backpressure and SSL handshakes).  By default no recorder is set, in which 
+   * case no event timing is done.
+   * 
+   * @param recorder the {@link SocketEventRecorder} to use, or {@code null} to stop recording events
+   */
+  public void setSocketEventRecorder(SocketEventRecorder recorder);
+  
+  /**
+   * Returns the currently set {@link SocketEventRecorder}.
+   * 
+   * @return the set {@link SocketEventRecorder} or {@code null} if none is set
+   */
+  public SocketEventRecorder getSocketEventRecorder();
+  
+  /**
+   * Enables tracking of which clients are transferring the most bytes (reads and writes combined, 
+   * including {@link UDPClient} datagrams).  This is disabled by default.  Clients are counted 
+   * over fixed windows of time, and up to {@code trackedClients} clients are tracked at once with a 
+   * {@link HeavyHitterTracker}, so any client which did more than {@code 1/trackedClients} of the 
+   * executers traffic in a window is guaranteed to show up in {@link #getTopClients(int)}.
+   * 
+   * <p>Every read and write updates a single shared tracker while this is enabled, so it adds 
+   * contention between selector threads.</p>
+   * 
+   * <p>Calling this again restarts tracking, setting {@code trackedClients} to 0 disables it.</p>
+   * 
+   * @param trackedClients the maximum number of clients to track at once, or 0 to disable
+   * @param windowMillis the length of each window in milliseconds
+   */
+  public void setTopClientTracking(int trackedClients, long windowMillis);
+  
+  /**
+   * Returns the clients which transferred the most bytes during the most recently completed window, 
+   * largest first.  This will be empty unless {@link #setTopClientTracking(int, long)} has been 
+   * enabled for at least one window.  Usually this just returns the last snapshot, but the first 
+   * call after a window ends sorts the tracked clients to make a new one.
+   * 
+   * @param count the maximum number of clients to return
+   * @return an unmodifiable list of the top clients and their estimated bytes
+   */
+  public List<HeavyHitterTracker.Entry<Client>> getTopClients(int count);
+  
   /**
    * <p>This allows you to put a timer on a {@link ListenableFuture}.  If the timer triggers before the  
    * {@link ListenableFuture} is done it will cancel the {@link ListenableFuture}</p>
@@ -7,6 +7,8 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.logging.Logger;
@@ -14,8 +16,11 @@ import java.util.logging.Logger;
 import org.threadly.concurrent.SubmitterScheduler;
 import org.threadly.concurrent.future.ListenableFuture;
 import org.threadly.concurrent.future.watchdog.MixedTimeWatchdog;
+import org.threadly.litesockets.utils.HeavyHitterTracker;
 import org.threadly.litesockets.utils.IOUtils;
+import org.threadly.litesockets.utils.LatencyHistogram;
 import org.threadly.litesockets.utils.SimpleByteStats;
+import org.threadly.litesockets.utils.TokenBucket;
 import org.threadly.util.AbstractService;
 import org.threadly.util.ArgumentVerifier;
 
@@ -28,9 +33,17 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
   protected final SubmitterScheduler acceptScheduler;
   protected final ConcurrentHashMap<SocketChannel, Client> clients = new ConcurrentHashMap<>();
   protected final ConcurrentHashMap<SelectableChannel, Server> servers = new ConcurrentHashMap<>();
+  // additional channels of a UDPServer, kept apart so they are not counted as servers
+  protected final ConcurrentHashMap<SelectableChannel, UDPServer> udpChannelServers = new ConcurrentHashMap<>();
   protected final SocketExecuterByteStats stats = new SocketExecuterByteStats();
   protected final MixedTimeWatchdog dogCache;
+  protected final LatencyHistogram writeFlushLatency = new LatencyHistogram();
+  protected final LatencyHistogram writeCompletionLatency = new LatencyHistogram();
   protected volatile boolean perConnectionStatsEnabled = true;
+  protected volatile boolean writeLatencyTrackingEnabled = false;
+  protected volatile SocketEventRecorder eventRecorder = null;
+  protected volatile HeavyHitterTracker<Client> topClients = null;
+  protected volatile TokenBucket writeRateLimiter = null;
   protected Selector acceptSelector;
 
   SocketExecuterCommonBase(final SubmitterScheduler scheduler) {
@@ -78,6 +91,10 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
     stats.addWrite(size);
   }
 
+  protected void recordSyscallStats() {
+    stats.addSyscall();
+  }
+
   protected void checkRunning() {
     if(!isRunning()) {
       throw new IllegalStateException("SocketExecuter is not running!");
@@ -120,16 +137,64 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
 
   @Override
   public UDPServer createUDPServer(final String host, final int port) throws IOException {
+    return createUDPServer(host, port, 1);
+  }
+
+  @Override
+  public UDPServer createUDPServer(final String host, final int port, final int channels) throws IOException {
+    return createUDPServer(host, port, channels, channels > 1);
+  }
+
+  @Override
+  public UDPServer createUDPServer(final String host, final int port, final int channels, 
+                                   final boolean sharePort) throws IOException {
     checkRunning();
-    UDPServer us = new UDPServer(this, host, port);
+    UDPServer us = new UDPServer(this, host, port, channels, sharePort);
     servers.put(us.getSelectableChannel(), us);
+    for(final UDPServer channelServer : us.getChannelServers()) {
+      if(channelServer != us) {
+        addUDPServerChannel(channelServer);
+      }
+    }
     return us;
   }
 
+  /**
+   * Adds one of the additional channels of a {@link UDPServer} (a SO_REUSEPORT channel or a 
+   * connected client channel).  These are looked up by {@link #getServer(SelectableChannel)} like 
+   * any other server, but are not included in {@link #getServerCount()}.
+   * 
+   * @param channelServer the {@link UDPServer} for the additional channel
+   */
+  protected void addUDPServerChannel(final UDPServer channelServer) {
+    udpChannelServers.put(channelServer.getSelectableChannel(), channelServer);
+  }
+
+  protected void removeUDPServerChannel(final UDPServer channelServer) {
+    udpChannelServers.remove(channelServer.getSelectableChannel(), channelServer);
+  }
+
+  /**
+   * Gets the {@link Server} registered for a channel, including the additional channels of a 
+   * {@link UDPServer}.
+   * 
+   * @param channel the channel a selector has an event for
+   * @return the {@link Server} for the channel, or {@code null} if there is none
+   */
+  protected Server getServer(final SelectableChannel channel) {
+    final Server server = servers.get(channel);
+    if(server != null) {
+      return server;
+    }
+    return udpChannelServers.get(channel);
+  }
+
   protected boolean checkServer(final Server server) {
+    final SelectableChannel channel = server.getSelectableChannel();
     if(!isRunning() || server.isClosed() || server.getSocketExecuter() != this || 
-       !servers.containsKey(server.getSelectableChannel())) {
-      servers.remove(server.getSelectableChannel());
+       !(servers.containsKey(channel) || udpChannelServers.containsKey(channel))) {
+      servers.remove(channel);
+      udpChannelServers.remove(channel);
       return false;
     }
     return true;
@@ -159,7 +224,9 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
         acceptScheduler.execute(()->executeServerOperations(acceptScheduler, server, acceptSelector, 0));
         acceptSelector.wakeup();
       } else if(server instanceof UDPServer) {
-        this.setUDPServerOperations((UDPServer)server, false);
+        for(final UDPServer us : ((UDPServer)server).getChannelServers()) {
+          this.setUDPServerOperations(us, false);
+        }
       } else {
         throw new UnsupportedOperationException("Unknown Server type!"+ server.getServerType());
       }
@@ -186,6 +253,65 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
     return stats;
   }
 
+  @Override
+  public void setWriteLatencyTrackingEnabled(boolean enabled) {
+    writeLatencyTrackingEnabled = enabled;
+  }
+
+  @Override
+  public LatencyHistogram getWriteFlushLatency() {
+    return writeFlushLatency;
+  }
+
+  @Override
+  public LatencyHistogram getWriteCompletionLatency() {
+    return writeCompletionLatency;
+  }
+
+  @Override
+  public void setWriteRateLimit(final long bytesPerSecond, final long burstBytes) {
+    ArgumentVerifier.assertNotNegative(bytesPerSecond, "bytesPerSecond");
+    if(bytesPerSecond == 0) {
+      writeRateLimiter = null;
+    } else {
+      writeRateLimiter = new TokenBucket(bytesPerSecond, burstBytes);
+    }
+  }
+
+  @Override
+  public TokenBucket getWriteRateLimiter() {
+    return writeRateLimiter;
+  }
+
+  @Override
+  public void setSocketEventRecorder(final SocketEventRecorder recorder) {
+    eventRecorder = recorder;
+  }
+
+  @Override
+  public SocketEventRecorder getSocketEventRecorder() {
+    return eventRecorder;
+  }
+
+  @Override
+  public void setTopClientTracking(final int trackedClients, final long windowMillis) {
+    ArgumentVerifier.assertNotNegative(trackedClients, "trackedClients");
+    if(trackedClients == 0) {
+      topClients = null;
+    } else {
+      topClients = new HeavyHitterTracker<>(trackedClients, windowMillis);
+    }
+  }
+
+  @Override
+  public List<HeavyHitterTracker.Entry<Client>> getTopClients(final int count) {
+    final HeavyHitterTracker<Client> tracker = topClients;
+    if(tracker == null) {
+      return Collections.emptyList();
+    }
+    return tracker.getTopItems(count);
+  }
+
   @Override
   public void watchFuture(final ListenableFuture<?> lf, final long delay) {
     dogCache.watch(delay, lf);
@@ -277,7 +403,8 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
   }
 
   /**
-   * Implementation of the SimpleByteStats.
+   * Implementation of the SimpleByteStats.  These are updated from every client thread so they 
+   * are kept striped.  Like client stats, recent rates are only tracked once requested.
    */
   protected static class SocketExecuterByteStats extends SimpleByteStats {
     @Override
@@ -289,5 +416,10 @@ abstract class SocketExecuterCommonBase extends AbstractService implements Socke
     protected void addRead(final int size) {
       super.addRead(size);
     }
+
+    @Override
+    protected void addSyscall() {
+      super.addSyscall();
+    }
   }
 }
@@ -8,7 +8,6 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
@@ -19,13 +18,14 @@ import org.threadly.concurrent.future.SettableListenableFuture;
 import org.threadly.litesockets.buffers.MergedByteBuffers;
 import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
 import org.threadly.litesockets.buffers.SimpleMergedByteBuffers;
+import org.threadly.litesockets.utils.HeavyHitterTracker;
 import org.threadly.litesockets.utils.IOUtils;
 import org.threadly.litesockets.utils.SSLProcessor;
 import org.threadly.litesockets.utils.SSLProcessor.EncryptionException;
+import org.threadly.litesockets.utils.TokenBucket;
 import org.threadly.util.ArgumentVerifier;
 import org.threadly.util.Clock;
 import org.threadly.util.ExceptionUtils;
-import org.threadly.util.Pair;
 
 
 /**
@@ -37,11 +37,24 @@ public class TCPClient extends Client {
   protected static final int MIN_WRITE_BUFFER_SIZE = 8192;
   protected static final int MAX_COMBINED_WRITE_BUFFER_SIZE = 65536;
 
+  private static final SettableListenableFuture<Boolean> CONNECTED_FUTURE = new SettableListenableFuture<>(false);
+  
+  static {
+    CONNECTED_FUTURE.setResult(true);
+  }
+
+  // writeBuffers is also used as the lock for writer state
   private final ReuseableMergedByteBuffers writeBuffers = new ReuseableMergedByteBuffers();
-  private final Deque<Pair<Long, SettableListenableFuture<Long>>> writeFutures = new ArrayDeque<>(8);
-  private final TCPSocketOptions tso = new TCPSocketOptions();
-  protected final Object writerLock = new Object();
-  protected final AtomicBoolean startedConnection = new AtomicBoolean(false);
+  /**
+   * The lock for writer state, this is the same object as the write buffers.
+   * 
+   * @deprecated kept so extending classes synchronize with the client, it will be removed
+   */
+  @Deprecated
+  protected final Object writerLock = writeBuffers;
+  // lazily created on first write, guarded by writeBuffers
+  private Deque<PendingWrite> writeFutures = null;
+  private TCPSocketOptions tso = null;
   protected final SettableListenableFuture<Boolean> connectionFuture;
   protected final SocketChannel channel;
   protected final InetSocketAddress remoteAddress;
@@ -49,6 +62,9 @@ public class TCPClient extends Client {
   private volatile ListenableFuture<Long> lastWriteFuture = IOUtils.FINISHED_LONG_FUTURE;
   private volatile ByteBuffer currentWriteBuffer = IOUtils.EMPTY_BYTEBUFFER;
   private volatile SSLProcessor sslProcessor;
+  private volatile TokenBucket writeRateLimiter = null;
+  // set while writes are paced, until the deferred write task runs
+  private volatile boolean writeDeferred = false;
 
   protected volatile int maxConnectionTime = DEFAULT_SOCKET_TIMEOUT;
   protected volatile long connectExpiresAt = -1;
@@ -87,14 +103,14 @@ public class TCPClient extends Client {
     if(! channel.isOpen()) {
       throw new ClosedChannelException();
     }
-    connectionFuture = makeClientSettableListenableFuture();
-    connectionFuture.setResult(true);
+    // already connected, so we can share a completed future rather than creating one per client
+    connectionFuture = CONNECTED_FUTURE;
     if(channel.isBlocking()) {
       channel.configureBlocking(false);
     }
     this.channel = channel;
     remoteAddress = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
-    startedConnection.set(true);
+    setStateFlag(CONNECTION_STARTED_FLAG);
   }
 
   @Override
@@ -105,7 +121,7 @@ public class TCPClient extends Client {
 
   @Override
   public ListenableFuture<Boolean> connect(){
-    if(startedConnection.compareAndSet(false, true)) {
+    if(setStateFlag(CONNECTION_STARTED_FLAG)) {
       try {
         channel.connect(remoteAddress);
         connectExpiresAt = maxConnectionTime + Clock.accurateForwardProgressingMillis();
@@ -121,6 +137,11 @@ public class TCPClient extends Client {
 
   @Override
   protected void setConnectionStatus(final Throwable t) {
+    final SocketEventRecorder eventRecorder = se.eventRecorder;
+    if(eventRecorder != null && connectExpiresAt > 0 && ! connectionFuture.isDone()) {
+      eventRecorder.clientConnected(this, Clock.accurateForwardProgressingMillis() - 
+                                            (connectExpiresAt - maxConnectionTime), t);
+    }
     if(t == null) {
       connectionFuture.setResult(true);
     } else {
@@ -132,7 +153,7 @@ public class TCPClient extends Client {
 
   @Override
   public boolean hasConnectionTimedOut() {
-    if(! startedConnection.get() || channel.isConnected()) {
+    if(! isStateFlagSet(CONNECTION_STARTED_FLAG) || channel.isConnected()) {
       return false;
     }
     return Clock.lastKnownForwardProgressingMillis() > connectExpiresAt || 
@@ -155,14 +176,14 @@ public class TCPClient extends Client {
       se.setClientOperations(this);
       this.getClientsThreadExecutor().execute(() -> {
         try {
-          synchronized(writerLock) {
-            if(writeFutures.size() > 0) {
+          synchronized(writeBuffers) {
+            if(writeFutures != null && writeFutures.size() > 0) {
               final ClosedChannelException cce = new ClosedChannelException();
-              for(final Pair<Long, SettableListenableFuture<Long>> p: writeFutures) {
-                p.getRight().setFailure(cce);
+              for(final PendingWrite pw: writeFutures) {
+                pw.future.setFailure(cce);
               }
+              writeFutures.clear();
             }
-            writeFutures.clear();
             writeBuffers.discard(writeBuffers.remaining());
           }
           connectionFuture.setFailure(error);
@@ -183,7 +204,35 @@ public class TCPClient extends Client {
 
   @Override
   public boolean canWrite() {
-    return writeBuffers.remaining() + this.currentWriteBuffer.remaining() > 0 ;
+    return ! writeDeferred && writeBuffers.remaining() + this.currentWriteBuffer.remaining() > 0 ;
+  }
+
+  /**
+   * Limits the rate this client writes to its socket at.  Once the limit is reached, writes are 
+   * deferred on the {@link SocketExecuter#getThreadScheduler()} until the rate allows them, instead 
+   * of waiting for the socket to be writable.  A limit set with 
+   * {@link SocketExecuter#setWriteRateLimit(long, long)} also applies.
+   * 
+   * @param bytesPerSecond the max rate to write at, or {@code 0} to remove the limit.
+   * @param burstBytes the most bytes which can be written at once after being idle.
+   */
+  public void setWriteRateLimit(final long bytesPerSecond, final long burstBytes) {
+    ArgumentVerifier.assertNotNegative(bytesPerSecond, "bytesPerSecond");
+    if(bytesPerSecond == 0) {
+      writeRateLimiter = null;
+    } else {
+      writeRateLimiter = new TokenBucket(bytesPerSecond, burstBytes);
+    }
+  }
+
+  /**
+   * Returns the {@link TokenBucket} this clients writes are paced with, this gives the configured 
+   * rate and the rate writes have been achieving.
+   * 
+   * @return the {@link TokenBucket} for writes or {@code null} if no limit is set.
+   */
+  public TokenBucket getWriteRateLimiter() {
+    return writeRateLimiter;
   }
 
   @Override
@@ -233,7 +282,7 @@ public class TCPClient extends Client {
     if(isClosed()) {
       return FutureUtils.immediateFailureFuture(new IOException("Connection is Closed"));
     }
-    synchronized(writerLock) {
+    synchronized(writeBuffers) {
       final SettableListenableFuture<Long> slf = makeClientSettableListenableFuture();
       lastWriteFuture = slf;
       final boolean needNotify = !canWrite();
@@ -247,7 +296,12 @@ public class TCPClient extends Client {
       } else {
         writeBuffers.add(mbb);
       }
-      writeFutures.add(new Pair<>(writeBuffers.getTotalConsumedBytes()+writeBuffers.remaining(), slf));
+      if(writeFutures == null) {
+        writeFutures = new ArrayDeque<>(8);
+      }
+      final long queuedNanos = se != null && se.writeLatencyTrackingEnabled ? Clock.accurateTimeNanos() : -1;
+      writeFutures.add(new PendingWrite(writeBuffers.getTotalConsumedBytes()+writeBuffers.remaining(), 
+                                        queuedNanos, slf));
       if(needNotify && se != null && channel.isConnected()) {
         se.setClientOperations(this);
       }
@@ -264,7 +318,7 @@ public class TCPClient extends Client {
     if(currentWriteBuffer.remaining() != 0) {
       return currentWriteBuffer;
     }
-    synchronized(writerLock) {
+    synchronized(writeBuffers) {
       //This is to keep from doing a ton of little writes if we can.  We will try to 
       //do at least 8k at a time, and up to 65k if we are already having to combine buffers
       if(writeBuffers.nextBufferSize() < MIN_WRITE_BUFFER_SIZE && writeBuffers.remaining() > writeBuffers.nextBufferSize()) {
@@ -282,12 +336,22 @@ public class TCPClient extends Client {
 
   @Override
   protected void reduceWrite(final int size) {
-    synchronized(writerLock) {
+    synchronized(writeBuffers) {
       recordWriteStats(size);
-      if(currentWriteBuffer.remaining() == 0) {
-        while(this.writeFutures.peekFirst() != null && writeFutures.peekFirst().getLeft() <= writeBuffers.getTotalConsumedBytes()) {
-          final Pair<Long, SettableListenableFuture<Long>> p = writeFutures.pollFirst();
-          p.getRight().setResult(p.getLeft());
+      final HeavyHitterTracker<Client> topClients = se.topClients;
+      if(topClients != null) {
+        topClients.add(this, size);
+      }
+      if(currentWriteBuffer.remaining() == 0 && writeFutures != null) {
+        while(this.writeFutures.peekFirst() != null && writeFutures.peekFirst().endPosition <= writeBuffers.getTotalConsumedBytes()) {
+          final PendingWrite pw = writeFutures.pollFirst();
+          if(pw.queuedNanos < 0) {
+            pw.future.setResult(pw.endPosition);
+          } else {
+            se.writeFlushLatency.recordValue(Clock.accurateTimeNanos() - pw.queuedNanos);
+            pw.future.setResult(pw.endPosition);
+            se.writeCompletionLatency.recordValue(Clock.accurateTimeNanos() - pw.queuedNanos);
+          }
         }
       }
     }
@@ -310,6 +374,12 @@ public class TCPClient extends Client {
 
   @Override
   public ClientOptions clientOptions() {
+    TCPSocketOptions tso = this.tso;
+    if(tso == null) {
+      // options are stateless, so a racing thread creating its own instance is harmless
+      tso = new TCPSocketOptions();
+      this.tso = tso;
+    }
     return tso;
   }
 
@@ -335,10 +405,38 @@ public class TCPClient extends Client {
     if(isClosed()) {
       return;
     }
+    final SocketEventRecorder eventRecorder = se.eventRecorder;
+    final long startNanos = eventRecorder == null ? 0 : System.nanoTime();
     int wrote = 0;
     try {
-      wrote = channel.write(getWriteBuffer());
+      final ByteBuffer writeBuffer = getWriteBuffer();
+      final int allowed = acquireWriteTokens(writeBuffer.remaining());
+      if(allowed == 0 && writeBuffer.hasRemaining()) {
+        // paced, the deferred write task will set the write interest again
+        if(!doLocal) {
+          se.setClientOperations(TCPClient.this);
+        }
+        return;
+      } else if(allowed < writeBuffer.remaining()) {
+        final int limit = writeBuffer.limit();
+        writeBuffer.limit(writeBuffer.position() + allowed);
+        try {
+          wrote = channel.write(writeBuffer);
+        } finally {
+          writeBuffer.limit(limit);
+        }
+      } else {
+        wrote = channel.write(writeBuffer);
+      }
+      if(wrote < allowed) {
+        releaseWriteTokens(allowed - wrote);
+      }
+      recordSyscallStats();
+      se.recordSyscallStats();
       if(wrote > 0) {
+        if(eventRecorder != null) {
+          eventRecorder.clientWriteFlushed(this, wrote, System.nanoTime() - startNanos);
+        }
         reduceWrite(wrote);
         se.recordWriteStats(wrote);
       }
@@ -346,25 +444,102 @@ public class TCPClient extends Client {
         se.setClientOperations(TCPClient.this);
       }
     } catch(Exception e) {
-      ExceptionUtils.handleException(e);
+      if(!isClosed()) {
+        // the channel may be closed under us once the client is closed (ie executer shutdown)
+        ExceptionUtils.handleException(e);
+      }
       close();
     }
   }
 
+  /**
+   * Takes tokens for a write from this clients and the executers {@link TokenBucket}s.  If either
+   * is empty the write is deferred until it has refilled.
+   * 
+   * @param wanted the number of bytes waiting to be written.
+   * @return the number of bytes which can be written now.
+   */
+  private int acquireWriteTokens(final int wanted) {
+    final TokenBucket clientLimiter = writeRateLimiter;
+    final TokenBucket executerLimiter = se.writeRateLimiter;
+    if(wanted == 0 || (clientLimiter == null && executerLimiter == null)) {
+      return wanted;
+    }
+    // wait for a reasonably sized write rather than writing each few bytes as they refill
+    final int min = Math.min(wanted, MIN_WRITE_BUFFER_SIZE);
+    long allowed = wanted;
+    if(clientLimiter != null) {
+      allowed = clientLimiter.acquire(min, allowed);
+    }
+    if(allowed > 0 && executerLimiter != null) {
+      final long executerAllowed = executerLimiter.acquire(Math.min(min, allowed), allowed);
+      if(clientLimiter != null && executerAllowed < allowed) {
+        clientLimiter.release(allowed - executerAllowed);
+      }
+      allowed = executerAllowed;
+    }
+    if(allowed == 0) {
+      long delay = 0;
+      if(clientLimiter != null) {
+        delay = clientLimiter.getDelayMillis(min);
+      }
+      if(executerLimiter != null) {
+        delay = Math.max(delay, executerLimiter.getDelayMillis(min));
+      }
+      writeDeferred = true;
+      se.getThreadScheduler().schedule(() -> {
+        writeDeferred = false;
+        se.setClientOperations(this);
+      }, delay);
+    }
+    return (int)allowed;
+  }
+
+  private void releaseWriteTokens(final int unused) {
+    final TokenBucket clientLimiter = writeRateLimiter;
+    final TokenBucket executerLimiter = se.writeRateLimiter;
+    if(clientLimiter != null) {
+      clientLimiter.release(unused);
+    }
+    if(executerLimiter != null) {
+      executerLimiter.release(unused);
+    }
+  }
+
   private void doClientRead(boolean doLocal) {
     if(isClosed()) {
       return;
     }
-    ByteBuffer readByteBuffer = provideReadByteBuffer();
+    final boolean useSharedBuffer = sharedReadBuffer;
+    final ByteBuffer readByteBuffer;
+    if(useSharedBuffer) {
+      readByteBuffer = provideSharedReadByteBuffer();
+    } else {
+      readByteBuffer = provideReadByteBuffer();
+    }
     final int origPos = readByteBuffer.position();
+    final int readCapacity = readByteBuffer.remaining();
+    final SocketEventRecorder eventRecorder = se.eventRecorder;
+    final long startNanos = eventRecorder == null ? 0 : System.nanoTime();
     int size = 0;
     try {
       size = channel.read(readByteBuffer);
+      recordSyscallStats();
+      se.recordSyscallStats();
       if(size > 0) {
-        readByteBuffer.position(origPos);
-        final ByteBuffer resultBuffer = readByteBuffer.duplicate();
-        readByteBuffer.position(origPos+size);
-        resultBuffer.limit(resultBuffer.position()+size);
+        if(eventRecorder != null) {
+          eventRecorder.clientRead(this, size, System.nanoTime() - startNanos);
+        }
+        final ByteBuffer resultBuffer;
+        if(useSharedBuffer) {
+          resultBuffer = copySharedReadBuffer(readByteBuffer, size);
+        } else {
+          recordReadAllocation(size, readCapacity);
+          readByteBuffer.position(origPos);
+          resultBuffer = readByteBuffer.duplicate();
+          readByteBuffer.position(origPos+size);
+          resultBuffer.limit(resultBuffer.position()+size);
+        }
         addReadBuffer(resultBuffer);
         if(!doLocal) {
           se.setClientOperations(TCPClient.this);
@@ -375,11 +550,30 @@ public class TCPClient extends Client {
       } 
 
     } catch (IOException e) {
-      ExceptionUtils.handleException(e);
+      if(!isClosed()) {
+        // the channel may be closed under us once the client is closed (ie executer shutdown)
+        ExceptionUtils.handleException(e);
+      }
       close();
     } 
   }
 
+  /**
+   * A write which has been queued but not yet fully written to the socket.
+   */
+  private static class PendingWrite {
+    private final long endPosition;
+    private final long queuedNanos;
+    private final SettableListenableFuture<Long> future;
+
+    private PendingWrite(final long endPosition, final long queuedNanos, 
+                         final SettableListenableFuture<Long> future) {
+      this.endPosition = endPosition;
+      this.queuedNanos = queuedNanos;
+      this.future = future;
+    }
+  }
+
   /**
    * 
    * @author lwahlmeier
@@ -9,6 +9,7 @@ import java.nio.channels.SocketChannel;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 
+import org.threadly.litesockets.utils.AddressFilter;
 import org.threadly.litesockets.utils.IOUtils;
 
 /**
@@ -70,10 +71,20 @@ public class TCPServer extends Server {
 
   @Override
   public void acceptChannel(final SelectableChannel c) {
+    final AddressFilter filter = getAddressFilter();
+    if(filter != null && ! isAllowed(filter, (SocketChannel)c)) {
+      // dropped on the accepting thread so no client or task is created for it
+      IOUtils.closeQuietly(c);
+      return;
+    }
     this.getSocketExecuter().getThreadScheduler().execute(new Runnable() {
       public void run() {
         try {
           final TCPClient client = getSocketExecuter().createTCPClient((SocketChannel)c);
+          final SocketEventRecorder eventRecorder = sei.eventRecorder;
+          if(eventRecorder != null) {
+            eventRecorder.clientAccepted(TCPServer.this, client);
+          }
           if(sslCtx != null) {
             SSLEngine ssle;
             if(hostName == null) {
@@ -97,6 +108,15 @@ public class TCPServer extends Server {
     });
   }
   
+  private static boolean isAllowed(final AddressFilter filter, final SocketChannel c) {
+    try {
+      return filter.isAllowed((InetSocketAddress)c.getRemoteAddress());
+    } catch (IOException e) {
+      // the channel has already closed
+      return false;
+    }
+  }
+  
   public void setSSLContext(final SSLContext sslctx) {
     this.sslCtx = sslctx;
   }
@@ -6,6 +6,9 @@ import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -15,6 +18,7 @@ import org.threadly.concurrent.SubmitterExecutor;
 import org.threadly.concurrent.SubmitterScheduler;
 import org.threadly.concurrent.wrapper.KeyDistributedExecutor;
 import org.threadly.concurrent.wrapper.compatibility.ScheduledExecutorServiceWrapper;
+import org.threadly.litesockets.SelectorStats.EventType;
 import org.threadly.litesockets.utils.IOUtils;
 import org.threadly.util.ArgumentVerifier;
 import org.threadly.util.ExceptionUtils;
@@ -26,7 +30,10 @@ import org.threadly.util.ExceptionUtils;
  * 
  */
 public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
+  public static final String SELECTOR_THREAD_NAME = "HashedSelector-";
+  
   private final SelectorThread[] clientSelectors;
+  private final List<SelectorStats> selectorStats;
   private final KeyDistributedExecutor clientDistributer;
   
   /**
@@ -86,13 +93,23 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
       ps = numberOfSelectors;
     }
     clientSelectors = new SelectorThread[ps];
+    final SelectorStats[] loopStats = new SelectorStats[ps];
+    for(int i = 0; i < ps; i++) {
+      loopStats[i] = new SelectorStats(SELECTOR_THREAD_NAME + i);
+    }
+    selectorStats = Collections.unmodifiableList(Arrays.asList(loopStats));
     clientDistributer = new KeyDistributedExecutor(schedulerPool, maxTasksPerCycle);
   }
   
   private SelectorThread getSelectorFor(Object obj) {
     if(clientSelectors.length == 1) {
       return clientSelectors[0];
-    } 
+    } else if(obj instanceof UDPServer) {
+      // the channels of a UDPServer go on consecutive selectors so they are spread evenly
+      final UDPServer us = (UDPServer)obj;
+      return clientSelectors[(us.getPrimary().hashCode() % clientSelectors.length + us.getChannelIndex()) 
+                             % clientSelectors.length];
+    }
     return clientSelectors[obj.hashCode() % clientSelectors.length];
   }
 
@@ -113,7 +130,11 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
   
   @Override
   public void startListening(final Server server) {
-    if(checkServer(server)) {
+    if(server instanceof UDPServer) {
+      for(final UDPServer us : ((UDPServer)server).getChannelServers()) {
+        setUDPServerOperations(us, true);
+      }
+    } else if(checkServer(server)) {
       final SelectorThread st = getSelectorFor(server);
       st.addServer(server);
     }
@@ -121,7 +142,11 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
 
   @Override
   public void stopListening(final Server server) {
-    if(checkServer(server)) {
+    if(server instanceof UDPServer) {
+      for(final UDPServer us : ((UDPServer)server).getChannelServers()) {
+        setUDPServerOperations(us, false);
+      }
+    } else if(checkServer(server)) {
       final SelectorThread st = getSelectorFor(server);
       st.removeServer(server);
     }
@@ -139,10 +164,15 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
     }
   }
 
+  @Override
+  public List<SelectorStats> getSelectorStats() {
+    return selectorStats;
+  }
+
   @Override
   protected void startupService() {
     for(int i=0; i < clientSelectors.length; i++) {
-      clientSelectors[i] = new SelectorThread(i);
+      clientSelectors[i] = new SelectorThread(i, selectorStats.get(i));
     }
   }
 
@@ -150,7 +180,12 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
   protected void shutdownService() {
     for(final Client client: clients.values()) {
       IOUtils.closeQuietly(client);
+      // the selector threads normally close the channel, but they are stopping so close it here
+      if(client.getChannel() != null) {
+        IOUtils.closeQuietly(client.getChannel());
+      }
     }
+    clients.clear();
     for(final Server server: servers.values()) {
       IOUtils.closeQuietly(server);
     }
@@ -169,35 +204,43 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
     private final Selector selector;
     private final Thread thread;
     private final ConcurrentLinkedQueue<Runnable> processQueue = new ConcurrentLinkedQueue<>();
+    private final SelectorStats loopStats;
     private volatile boolean isAwake = true;
     
-    public SelectorThread(int id) {
+    public SelectorThread(int id, SelectorStats loopStats) {
+      this.loopStats = loopStats;
       selector = openSelector();
-      thread = new Thread(()->doSelect(), "HashedSelector-"+id);
+      thread = new Thread(()->doSelect(), SELECTOR_THREAD_NAME+id);
       thread.setDaemon(true);
       thread.start();
     }
     
     public void addClient(Client client) {
       processQueue.add(()->processClient(client));
+      loopStats.recordWakeupRequest();
       if(!isAwake) {
         isAwake = true;
+        loopStats.recordWakeup();
         selector.wakeup();
       }
     }
     
     public void addServer(Server server) {
       processQueue.add(()->processServerAdd(server));
+      loopStats.recordWakeupRequest();
       if(!isAwake) {
         isAwake = true;
+        loopStats.recordWakeup();
         selector.wakeup();
       }
     }
     
     public void removeServer(Server server) {
       processQueue.add(()->processServerRemove(server));
+      loopStats.recordWakeupRequest();
       if(!isAwake) {
         isAwake = true;
+        loopStats.recordWakeup();
         selector.wakeup();
       }
     }
@@ -222,6 +265,7 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
     private void processServerRemove(final Server server) {
       SelectionKey sk = server.getSelectableChannel().keyFor(selector);
       if(sk != null) {
+        loopStats.recordCancelledKey();
         sk.cancel();
       }
     }
@@ -233,6 +277,7 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
         if(client.isClosed()) {
           clients.remove(client.getChannel());
           if(sk != null) {
+            loopStats.recordCancelledKey();
             sk.cancel();
           }
           if(client.getChannel().isOpen()) {
@@ -255,6 +300,7 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
           }
         }
       } catch (CancelledKeyException e) {
+        loopStats.recordCancelledKey();
         addClient(fc);
       } catch (Exception e) {
         ExceptionUtils.handleException(e);
@@ -266,16 +312,24 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
       while(isRunning()) {
       try {
         isAwake = false;
+        final long drainStart = System.nanoTime();
+        final int queueDepth = (int)(loopStats.getWakeupRequests() - loopStats.getProcessedTasks());
+        int processed = 0;
         while(!processQueue.isEmpty()) {
+          processed++;
           try {
             processQueue.poll().run();
           } catch(Exception e) {
             
           }
         }
+        final long selectStart = System.nanoTime();
+        loopStats.recordProcessQueueDrain(queueDepth, processed, selectStart - drainStart);
         selector.selectedKeys().clear();
-        selector.select();
+        final int readyKeys = selector.select();
         isAwake = true;
+        long eventStart = System.nanoTime();
+        loopStats.recordSelect(readyKeys, eventStart - selectStart);
         for(final SelectionKey key: selector.selectedKeys()) {
           try {
             if(key.isAcceptable()) {
@@ -285,40 +339,52 @@ public class ThreadedSocketExecuter extends SocketExecuterCommonBase {
                 doServerAccept(s);
                 addServer(s);
               });
+              eventStart = loopStats.recordEvent(EventType.Accept, eventStart);
             } else {
               final Client tmpClient = clients.get(key.channel());
               if(key.isConnectable() && tmpClient != null) {
+                loopStats.recordCancelledKey();
                 key.cancel(); //Stupid windows bug here.
                 doClientConnect(tmpClient, selector);
+                eventStart = loopStats.recordEvent(EventType.Connect, eventStart);
               } else {
                 if (key.isReadable()) {
                   if(tmpClient != null){
                     doClientRead(tmpClient, selector);
                   } else {
-                    final Server server = servers.get(key.channel());
+                    final Server server = getServer(key.channel());
                     if(server != null && server.getServerType() == WireProtocol.UDP) {
                       server.acceptChannel((DatagramChannel)server.getSelectableChannel());
                     }
                   }
+                  eventStart = loopStats.recordEvent(EventType.Read, eventStart);
                 } 
                 if(key.isWritable()) {
                   if(tmpClient != null){
                     doClientWrite(tmpClient, selector);
                   } else {
-                    final Server server = servers.get(key.channel());
+                    final Server server = getServer(key.channel());
                     if(server != null) {
                       if(server instanceof UDPServer) {
                         UDPServer us = (UDPServer) server;
-                        recordWriteStats(us.doWrite());
-                        setUDPServerOperations(us, true);
+                        final int written = us.doWrite();
+                        if(written > 0) {
+                          recordWriteStats(written);
+                        }
+                        // only re-register once drained, otherwise OP_WRITE is still wanted
+                        if(! us.needsWrite()) {
+                          setUDPServerOperations(us, true);
+                        }
                       }
                     }
                   }
+                  eventStart = loopStats.recordEvent(EventType.Write, eventStart);
                 }
               }
             }
           } catch(CancelledKeyException e) {
             //Key could be cancelled at any point, we dont really care about it.
+            loopStats.recordCancelledKey();
           }
         }
         //Also for windows bug, canceled keys are not removed till we select again.
@@ -10,6 +10,7 @@ import org.threadly.concurrent.future.ListenableFuture;
 import org.threadly.litesockets.buffers.MergedByteBuffers;
 import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
 import org.threadly.litesockets.buffers.SimpleMergedByteBuffers;
+import org.threadly.litesockets.utils.HeavyHitterTracker;
 import org.threadly.litesockets.utils.IOUtils;
 import org.threadly.util.Clock;
 
@@ -30,11 +31,12 @@ public class UDPClient extends Client {
   protected static final ListenableFuture<Boolean> COMPLETED_FUTURE = FutureUtils.immediateResultFuture(true);
   
   private final UDPSocketOptions uso = new UDPSocketOptions();
-  protected final long startTime = Clock.lastKnownForwardProgressingMillis();
+  private final Object writeStatsLock = new Object();
   protected final InetSocketAddress remoteAddress;
   protected final UDPServer udpServer;
   
   private volatile ListenableFuture<Long> lastWriteFuture = IOUtils.FINISHED_LONG_FUTURE;
+  private volatile long lastActivity = Clock.accurateForwardProgressingMillis();
 
   protected UDPClient(final InetSocketAddress sa, final UDPServer server, 
                       final boolean statsEnabled) {
@@ -69,10 +71,19 @@ public class UDPClient extends Client {
     //UDPClient does not have pending writes to reduce
   }
   
+  @Override
+  protected void recordWriteStats(final int size) {
+    // writes can come from any thread, so synchronize to keep the single writer stats correct
+    synchronized(writeStatsLock) {
+      super.recordWriteStats(size);
+    }
+  }
+  
   @Override
   protected void addReadBuffer(final ByteBuffer bb) {
+    lastActivity = Clock.lastKnownForwardProgressingMillis();
     recordReadStats(bb.remaining());
-    synchronized(readerLock) {
+    synchronized(readBuffers) {
       readBuffers.add(bb);
     }
     callReader(true); // buffers should be added from client thread
@@ -101,12 +112,13 @@ public class UDPClient extends Client {
 
   @Override
   public boolean isClosed() {
-    return this.closed.get();
+    return isStateFlagSet(CLOSED_FLAG);
   }
 
   @Override
   public void close(Throwable error) {
     if(this.setClose()) {
+      udpServer.removeClient(this);
       callClosers(false, error);
     }
   }
@@ -163,8 +175,13 @@ public class UDPClient extends Client {
   
   @Override
   public ListenableFuture<?> write(final MergedByteBuffers mbb) {
-    if(!closed.get()) {
+    if(!isClosed()) {
+      lastActivity = Clock.lastKnownForwardProgressingMillis();
       recordWriteStats(mbb.remaining());
+      final HeavyHitterTracker<Client> topClients = se.topClients;
+      if(topClients != null) {
+        topClients.add(this, mbb.remaining());
+      }
       if(this.clientOptions().directUdpWrites()) {
         lastWriteFuture = udpServer.writeDirect(mbb.pullBuffer(mbb.remaining()), remoteAddress);
         return lastWriteFuture;
@@ -180,6 +197,18 @@ public class UDPClient extends Client {
     return lastWriteFuture;
   }
 
+  /**
+   * Gets the last time data was read from or written to this client, used by the {@link UDPServer}
+   * to find idle and least recently used clients.  This is set from 
+   * {@link Clock#lastKnownForwardProgressingMillis()} to keep it cheap per datagram, so it may be 
+   * slightly behind the actual time.
+   * 
+   * @return the forward progressing time in milliseconds of the last read or write.
+   */
+  protected long getLastActivity() {
+    return lastActivity;
+  }
+
   @Override
   public void setConnectionTimeout(final int timeout) {
     //No connection to Timeout
@@ -195,7 +224,7 @@ public class UDPClient extends Client {
     ReuseableMergedByteBuffers mbb = new ReuseableMergedByteBuffers();
     int start = 0;
     int finished = 0;
-    synchronized(readerLock) {
+    synchronized(readBuffers) {
       start = getReadBufferSize();
       mbb.add(readBuffers.popBuffer());
       finished = start - getReadBufferSize();
@@ -1,18 +1,38 @@
 package org.threadly.litesockets;
 
 import java.io.IOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
 import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.threadly.concurrent.future.FutureUtils;
 import org.threadly.concurrent.future.ListenableFuture;
 import org.threadly.concurrent.future.SettableListenableFuture;
+import org.threadly.litesockets.utils.AddressFilter;
+import org.threadly.litesockets.utils.AddressFilter.FilterAction;
 import org.threadly.litesockets.utils.IOUtils;
+import org.threadly.litesockets.utils.TokenBucket;
+import org.threadly.util.ArgumentVerifier;
+import org.threadly.util.Clock;
+import org.threadly.util.ExceptionUtils;
 
 
 /**
@@ -25,9 +45,30 @@ import org.threadly.litesockets.utils.IOUtils;
  * 
  * You can also just create a {@link UDPClient} from a server to initiate a connection to another UDP server, if
  * that server sends data back from that same port/ip pair it will show up as a read in the created client.
+ * 
+ * A UDPServer can also be made from several channels bound to the same port with SO_REUSEPORT, see
+ * {@link SocketExecuter#createUDPServer(String, int, int)}.  The kernel spreads datagrams over the channels
+ * by remote address, and each channel is handled by its own selector, while the UDPServer still has a
+ * single client table and write API.
+ * 
+ * Long lived peers can also be given their own connected channel with {@link #connectClient(UDPClient)},
+ * when the server was created with port sharing.
+ * 
+ * <p>Multicast groups can be joined with {@link #joinGroup(InetAddress, NetworkInterface)}, datagrams
+ * sent to the group are then received like any other, and writes to a group address are sent like
+ * writes to any other address.</p>
  */
 public class UDPServer extends Server {
   public static final int DEFAULT_FRAME_SIZE = 1500;
+  public static final int DEFAULT_RECEIVE_BATCH_SIZE = 32;
+  public static final int DEFAULT_WRITE_BATCH_SIZE = 64;
+  protected static final int RECEIVE_SLAB_FRAMES = 32;
+  // when over the max clients, this fraction of the limit is evicted beyond the overflow so the
+  // table scan is not repeated for every new address
+  protected static final int CLIENT_EVICTION_FRACTION = 16;
+  protected static final long MIN_IDLE_SWEEP_MILLIS = 10;
+  // SO_REUSEPORT was only added to StandardSocketOptions in java 9, null if it is not available
+  protected static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
 
   /**
    * UDPFilter enum.
@@ -35,52 +76,495 @@ public class UDPServer extends Server {
    */
   public static enum UDPFilterMode {WhiteList, BlackList};
 
-  private final ConcurrentHashMap<InetSocketAddress, UDPClient> clients = new ConcurrentHashMap<>();
+  /**
+   * How datagrams received by the {@link UDPServer} are handed to the {@link UDPReader} and
+   * {@link UDPClient}s.
+   * <p>
+   * Copy - each datagram is received into a reused buffer then copied into a new heap buffer of its
+   * exact size.  The buffers handed out are owned by the receiver and can be held as long as needed.
+   * <p>
+   * Slice - datagrams are received directly into large shared direct buffers, and each one is handed
+   * out as a read only slice of that buffer with no copy.  The contract is that readers should copy
+   * any data they hold onto long term, since any slice still referenced keeps the whole shared
+   * buffer from being released.
+   * <p>
+   * Inline - datagrams are received into a reused buffer and the {@link UDPReader} is called with
+   * it directly on the thread handling the socket (ie the selector thread), with no allocation or
+   * executor task.  The buffer is only valid for the duration of the call, and the reader must be
+   * fast since it holds up all other sockets on that thread.  Only datagrams the reader returns
+   * {@code true} for are copied and passed to a {@link UDPClient}, so clients are only created for
+   * addresses the reader opts in to.  With no reader set this behaves like Copy.
+   */
+  public static enum UDPReceiveMode {Copy, Slice, Inline};
+
+  private final UDPServer primary;
+  private final int channelIndex;
+  private final UDPServer[] channelServers;
+  private final InetSocketAddress connectedAddress;
+  private final boolean portShared;
+  private final ConcurrentHashMap<InetSocketAddress, UDPClient> clients;
+  private final ConcurrentHashMap<InetSocketAddress, UDPServer> connectedChannels;
+  private final CopyOnWriteArrayList<MembershipKey> memberships = new CopyOnWriteArrayList<>();
   private final ConcurrentLinkedQueue<WriteData> writeQueue = new ConcurrentLinkedQueue<>();
-  private final ConcurrentHashMap<InetAddress, Integer> filter = new ConcurrentHashMap<>();
   private final DatagramChannel channel;
   private volatile UDPFilterMode filterMode = UDPFilterMode.BlackList;
+  private AddressFilter modeFilter = null; // only changed while synchronized on this
   private volatile UDPReader setUDPReader = null;
   private volatile int frameSize = DEFAULT_FRAME_SIZE;
+  private volatile int receiveBatchSize = DEFAULT_RECEIVE_BATCH_SIZE;
+  private volatile int writeBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+  private volatile TokenBucket writeRateLimiter = null;
+  // set while this channels writes are paced, until the deferred write task runs
+  private volatile boolean writeDeferred = false;
+  private volatile UDPReceiveMode receiveMode = UDPReceiveMode.Copy;
+  private volatile int maxClients = 0;
+  private volatile long clientIdleTimeout = 0;
+  private final AtomicBoolean idleSweepScheduled = new AtomicBoolean(false);
+  private final AtomicBoolean evictingClients = new AtomicBoolean(false);
+  private final LongAdder idleEvictions = new LongAdder();
+  private final LongAdder overflowEvictions = new LongAdder();
+  // receive stats from connected channels which have since been closed
+  private final LongAdder closedChannelBatches = new LongAdder();
+  private final LongAdder closedChannelPackets = new LongAdder();
   private volatile ClientAcceptor clientAcceptor;
+  // only used from the thread handling this servers read events
+  private ByteBuffer receiveBuffer = IOUtils.EMPTY_BYTEBUFFER;
+  // set on a connected channel until the datagrams queued before it was connected are received
+  private boolean drainingConnect;
+  // only used from the thread handling this servers write events
+  private final ArrayList<WriteData> completedWrites = new ArrayList<>();
+  private volatile long receiveBatches = 0;
+  private volatile long receivedPackets = 0;
+  private volatile int maxReceiveBatch = 0;
 
   protected UDPServer(final SocketExecuterCommonBase sei, final String host, final int port) throws IOException {
+    this(sei, host, port, 1);
+  }
+
+  protected UDPServer(final SocketExecuterCommonBase sei, final String host, final int port, 
+                      final int channels) throws IOException {
+    this(sei, host, port, channels, channels > 1);
+  }
+
+  protected UDPServer(final SocketExecuterCommonBase sei, final String host, final int port, 
+                      final int channels, final boolean sharePort) throws IOException {
     super(sei);
-    channel = DatagramChannel.open();
-    channel.socket().bind(new InetSocketAddress(host, port));
-    channel.configureBlocking(false);
+    ArgumentVerifier.assertGreaterThanZero(channels, "channels");
+    primary = this;
+    channelIndex = 0;
+    connectedAddress = null;
+    clients = new ConcurrentHashMap<>();
+    connectedChannels = new ConcurrentHashMap<>();
+    final InetSocketAddress bindAddress = new InetSocketAddress(host, port);
+    channel = openChannel(bindAddress);
+    final boolean reusePort = (sharePort || channels > 1) && SO_REUSEPORT != null && 
+                                channel.supportedOptions().contains(SO_REUSEPORT);
+    portShared = reusePort;
+    try {
+      if(reusePort) {
+        channel.setOption(SO_REUSEPORT, true);
+      }
+      channel.socket().bind(bindAddress);
+      channel.configureBlocking(false);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(channel);
+      throw e;
+    }
+    channelServers = new UDPServer[reusePort ? channels : 1];
+    channelServers[0] = this;
+    for(int i = 1; i < channelServers.length; i++) {
+      try {
+        channelServers[i] = new UDPServer(this, i, (InetSocketAddress)channel.getLocalAddress(), null);
+      } catch (IOException e) {
+        for(int j = 0; j < i; j++) {
+          IOUtils.closeQuietly(channelServers[j].channel);
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Creates one of the additional channels for a UDPServer using SO_REUSEPORT, either another
+   * channel receiving from any address or one connected to a single {@link UDPClient}s address.
+   * These are registered with the {@link SocketExecuter} like any other UDPServer, but hand
+   * everything they receive to the primary UDPServer and share its client table and settings.
+   */
+  private UDPServer(final UDPServer primary, final int channelIndex, final InetSocketAddress bindAddress, 
+                    final InetSocketAddress connectAddress) throws IOException {
+    super(primary.sei);
+    this.primary = primary;
+    this.channelIndex = channelIndex;
+    this.channelServers = null;
+    this.connectedAddress = connectAddress;
+    this.portShared = true;
+    this.drainingConnect = connectAddress != null;
+    this.clients = primary.clients;
+    this.connectedChannels = primary.connectedChannels;
+    channel = openChannel(bindAddress);
+    try {
+      channel.setOption(SO_REUSEPORT, true);
+      channel.socket().bind(bindAddress);
+      if(connectAddress != null) {
+        // a socket can not be connected from this port before it is bound, so until this the 
+        // kernel may hand it datagrams from other addresses, see connectClient()
+        channel.connect(connectAddress);
+      }
+      channel.configureBlocking(false);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(channel);
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a channel for the family of the address it will be bound to.  The default channel is 
+   * IPv6 on dual stack systems, and on some JVMs (ie java 8) IPv4 multicast options set on an 
+   * IPv6 channel do not take effect.
+   */
+  private static DatagramChannel openChannel(final InetSocketAddress bindAddress) throws IOException {
+    if(bindAddress.getAddress() instanceof Inet4Address) {
+      return DatagramChannel.open(StandardProtocolFamily.INET);
+    }
+    return DatagramChannel.open();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> findReusePortOption() {
+    try {
+      return (SocketOption<Boolean>)StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+    } catch (Exception e) {
+      return null;
+    }
   }
 
   @Override
   public void start() {
-    getSocketExecuter().setUDPServerOperations(this, true);
+    for(final UDPServer us : getChannelServers()) {
+      getSocketExecuter().setUDPServerOperations(us, true);
+    }
   }
 
   @Override
   public void stop() {
-    getSocketExecuter().setUDPServerOperations(this, false);
+    for(final UDPServer us : getChannelServers()) {
+      getSocketExecuter().setUDPServerOperations(us, false);
+    }
+  }
+
+  /**
+   * Gives a {@link UDPClient} of this server its own {@link DatagramChannel}, bound to this servers
+   * port with SO_REUSEPORT and connected to the clients remote address.  The kernel then hands
+   * datagrams from that address straight to the connected channel, and reads and writes on it skip
+   * the per packet address handling of the shared channel, the {@link AddressFilter} and the client
+   * table lookup.  The channel is registered with the {@link SocketExecuter} on its own, and is
+   * closed when the client or this server is closed.
+   * 
+   * <p>The server must have been created with port sharing (see 
+   * {@link SocketExecuter#createUDPServer(String, int, int, boolean)}), the options of a bound 
+   * socket are never changed.</p>
+   * 
+   * <p>This is intended for a small number of long lived peers, each one uses a file descriptor.
+   * Datagrams already queued on the shared channel are still delivered to the client, so a few may
+   * arrive out of order while it switches.  The new channel has to be bound before it can be 
+   * connected, so datagrams from other addresses which the kernel hands it in that short gap are 
+   * dropped (depending on the JVM, when the channel is connected).  Datagrams from other addresses 
+   * which are still queued once it is connected are handed to their own clients as usual.</p>
+   * 
+   * @param client the {@link UDPClient} from this server to connect.
+   * @return {@code true} if the client is using a connected channel, {@code false} if the channel 
+   *         could not be opened, in which case the client keeps using the shared channel.
+   * @throws IllegalStateException if this server was not created with port sharing, or SO_REUSEPORT 
+   *         was not available, see {@link #isPortShared()}.
+   */
+  public boolean connectClient(final UDPClient client) {
+    final UDPServer p = primary;
+    if(client.udpServer != p) {
+      throw new IllegalArgumentException("UDPClient is not from this UDPServer");
+    } else if(! p.portShared) {
+      throw new IllegalStateException("UDPServer was not created with port sharing");
+    }
+    final InetSocketAddress remote = client.getRemoteSocketAddress();
+    if(p.connectedChannels.containsKey(remote)) {
+      return true;
+    } else if(p.isClosed() || client.isClosed()) {
+      return false;
+    }
+    final UDPServer cs;
+    try {
+      cs = new UDPServer(p, remote.hashCode() & 0xffff, (InetSocketAddress)p.channel.getLocalAddress(), remote);
+    } catch (IOException e) {
+      return false;
+    }
+    sei.addUDPServerChannel(cs);
+    if(p.connectedChannels.putIfAbsent(remote, cs) != null) {
+      sei.removeUDPServerChannel(cs);
+      IOUtils.closeQuietly(cs.channel);
+      return true;
+    } else if(p.isClosed() || client.isClosed()) {
+      // raced with a close, which may have missed this channel
+      p.closeConnectedChannel(cs);
+      return false;
+    }
+    getSocketExecuter().setUDPServerOperations(cs, true);
+    return true;
+  }
+
+  /**
+   * @return the number of {@link UDPClient}s which currently have their own connected channel
+   */
+  public int getConnectedClientCount() {
+    return primary.connectedChannels.size();
+  }
+
+  private void closeConnectedChannel(final UDPServer cs) {
+    if(connectedChannels.remove(cs.connectedAddress, cs)) {
+      IOUtils.closeQuietly(cs.channel);
+      // the socket is only released once the selector deregisters the channel, until then it
+      // would keep receiving the clients datagrams, so wake the selector up to do that now
+      getSocketExecuter().setUDPServerOperations(cs, false);
+      cs.setClosed();
+      sei.removeUDPServerChannel(cs);
+      closedChannelBatches.add(cs.receiveBatches);
+      closedChannelPackets.add(cs.receivedPackets);
+    }
+  }
+
+  /**
+   * Joins a multicast group on a network interface, after which datagrams sent to the group from
+   * any source are received by this server.  They are handed to the {@link UDPReader} or a
+   * {@link UDPClient} for the source address like any other datagram.  To receive them the server
+   * must be bound to the wildcard address (ie {@code 0.0.0.0}) and the groups port.
+   * 
+   * @param group the multicast address to join.
+   * @param ni the {@link NetworkInterface} to join the group on.
+   * @return the {@link MembershipKey} for the membership.
+   * @throws IOException if the group could not be joined.
+   * @throws IllegalStateException if the server has more than one channel, the OS would deliver
+   *         every group datagram to each of them.
+   */
+  public MembershipKey joinGroup(final InetAddress group, final NetworkInterface ni) throws IOException {
+    return joinGroup(group, ni, null);
+  }
+
+  /**
+   * Joins a multicast group on a network interface, only receiving datagrams sent to the group by
+   * a single source address (source specific multicast).  This can be called for each source to
+   * receive from.  Otherwise this is the same as {@link #joinGroup(InetAddress, NetworkInterface)}.
+   * 
+   * @param group the multicast address to join.
+   * @param ni the {@link NetworkInterface} to join the group on.
+   * @param source the source address to receive the groups datagrams from, or {@code null} for any.
+   * @return the {@link MembershipKey} for the membership.
+   * @throws IOException if the group could not be joined.
+   * @throws IllegalStateException if the server has more than one channel, the OS would deliver
+   *         every group datagram to each of them.
+   */
+  public MembershipKey joinGroup(final InetAddress group, final NetworkInterface ni, 
+                                 final InetAddress source) throws IOException {
+    ArgumentVerifier.assertNotNull(group, "group");
+    ArgumentVerifier.assertNotNull(ni, "NetworkInterface");
+    final UDPServer p = primary;
+    if(p.channelServers.length > 1) {
+      throw new IllegalStateException("Multicast groups can only be joined with a single channel UDPServer");
+    }
+    final MembershipKey key = source == null ? p.channel.join(group, ni) : p.channel.join(group, ni, source);
+    p.memberships.addIfAbsent(key);
+    return key;
+  }
+
+  /**
+   * Leaves a multicast group on a network interface, dropping every membership for the group on
+   * that interface including source specific ones.
+   * 
+   * @param group the multicast address to leave.
+   * @param ni the {@link NetworkInterface} the group was joined on.
+   * @return {@code true} if any membership was dropped.
+   */
+  public boolean leaveGroup(final InetAddress group, final NetworkInterface ni) {
+    return primary.dropMemberships(group, ni, null, true);
+  }
+
+  /**
+   * Leaves the source specific membership of a multicast group on a network interface, other
+   * sources joined for the group are kept.
+   * 
+   * @param group the multicast address to leave.
+   * @param ni the {@link NetworkInterface} the group was joined on.
+   * @param source the source address joined for, or {@code null} for the membership of any source.
+   * @return {@code true} if the membership was dropped.
+   */
+  public boolean leaveGroup(final InetAddress group, final NetworkInterface ni, final InetAddress source) {
+    return primary.dropMemberships(group, ni, source, false);
+  }
+
+  private boolean dropMemberships(final InetAddress group, final NetworkInterface ni, 
+                                  final InetAddress source, final boolean anySource) {
+    boolean dropped = false;
+    for(final MembershipKey key : memberships) {
+      if(key.group().equals(group) && key.networkInterface().equals(ni) && 
+          (anySource || Objects.equals(source, key.sourceAddress()))) {
+        key.drop();
+        memberships.remove(key);
+        dropped = true;
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * @return the multicast groups currently joined by this server.
+   */
+  public List<MembershipKey> getGroupMemberships() {
+    return Collections.unmodifiableList(new ArrayList<>(primary.memberships));
+  }
+
+  /**
+   * Sets the {@link NetworkInterface} datagrams written to multicast addresses are sent out of,
+   * otherwise the OS picks one from its routing table.
+   * 
+   * @param ni the {@link NetworkInterface} to send multicast datagrams out of.
+   * @throws IOException if the option could not be set.
+   */
+  public void setMulticastInterface(final NetworkInterface ni) throws IOException {
+    ArgumentVerifier.assertNotNull(ni, "NetworkInterface");
+    setChannelOption(StandardSocketOptions.IP_MULTICAST_IF, ni);
+  }
+
+  /**
+   * Sets the time to live of datagrams written to multicast addresses, the default of 1 keeps them
+   * on the local network.
+   * 
+   * @param ttl the time to live, from 0 to 255.
+   * @throws IOException if the option could not be set.
+   */
+  public void setMulticastTimeToLive(final int ttl) throws IOException {
+    setChannelOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+  }
+
+  /**
+   * Sets if datagrams written to multicast addresses are looped back to groups joined on this host,
+   * this is enabled by default.
+   * 
+   * @param enabled {@code true} to loop back multicast datagrams.
+   * @throws IOException if the option could not be set.
+   */
+  public void setMulticastLoopback(final boolean enabled) throws IOException {
+    setChannelOption(StandardSocketOptions.IP_MULTICAST_LOOP, enabled);
+  }
+
+  private <T> void setChannelOption(final SocketOption<T> option, final T value) throws IOException {
+    // writes are sent from every channel
+    for(final UDPServer us : primary.channelServers) {
+      us.channel.setOption(option, value);
+    }
+  }
+
+  /**
+   * Gets the number of channels bound for this server.  This is 1 unless more channels were asked
+   * for when it was created, and SO_REUSEPORT is supported by the JVM and OS.  Channels connected
+   * to a single client with {@link #connectClient(UDPClient)} are not included.
+   * 
+   * @return the number of channels receiving from any address for this server.
+   */
+  public int getChannelCount() {
+    return primary.channelServers.length;
+  }
+
+  /**
+   * Checks if this servers port is shared with SO_REUSEPORT, which is needed for 
+   * {@link #connectClient(UDPClient)}.  This is the case when it was created with more than one 
+   * channel or with port sharing, and SO_REUSEPORT is available (java 9 or newer and OS support).  
+   * While shared, other sockets owned by the same user can also bind the port.
+   * 
+   * @return {@code true} if the port is shared.
+   */
+  public boolean isPortShared() {
+    return primary.portShared;
+  }
+
+  /**
+   * Gets the {@link UDPServer} for each channel of this server, the first being this server,
+   * followed by any connected client channels.  These are what is registered with the
+   * {@link SocketExecuter}.
+   * 
+   * @return the {@link UDPServer} for each channel.
+   */
+  protected UDPServer[] getChannelServers() {
+    final UDPServer p = primary;
+    if(p.connectedChannels.isEmpty()) {
+      return p.channelServers;
+    }
+    final ArrayList<UDPServer> servers = new ArrayList<>(p.channelServers.length + p.connectedChannels.size());
+    servers.addAll(Arrays.asList(p.channelServers));
+    servers.addAll(p.connectedChannels.values());
+    return servers.toArray(new UDPServer[servers.size()]);
+  }
+
+  /**
+   * Gets the index of this servers channel, 0 unless it is one of the additional SO_REUSEPORT
+   * channels.  Connected client channels use an index from their remote address.
+   * 
+   * @return the index of this servers channel.
+   */
+  protected int getChannelIndex() {
+    return channelIndex;
+  }
+
+  /**
+   * Gets the primary {@link UDPServer}, which is this server unless this is one of the additional
+   * SO_REUSEPORT channels.
+   * 
+   * @return the {@link UDPServer} which was returned when this server was created.
+   */
+  protected UDPServer getPrimary() {
+    return primary;
   }
 
   /**
    * Sets the UDPfilterMode for the server.  This allows us to white or black list IP/ports from being accepted.
    * 
-   * NOTE: calling set on this also resets any hosts currently already in the filter!
+   * NOTE: calling set on this also resets any hosts currently already in the filter!  This replaces
+   * the {@link AddressFilter} for this server with a new one, use {@link #setAddressFilter(AddressFilter)}
+   * for CIDR blocks and port ranges.
    * 
    * @param fm the UDPFilterMode to use.
    */
-  public void setFilterMode(UDPFilterMode fm) {
+  public synchronized void setFilterMode(UDPFilterMode fm) {
     filterMode = fm;
-    filter.clear();
+    modeFilter = new AddressFilter(fm == UDPFilterMode.WhiteList ? FilterAction.Deny : FilterAction.Allow);
+    setAddressFilter(modeFilter);
   }
 
   /**
    * Adds a host to the filter.  How this filter will apply depends on what the UDPFilterMode is set to in the UDPServer.
    * A port number of 0 means we block/accept all ports for that host. 
    * 
+   * <p>If the current {@link AddressFilter} was set with {@link #setAddressFilter(AddressFilter)} it 
+   * may be shared with other servers, so it is copied and the host is added to the copy which then 
+   * replaces it for this server only.  The host gets the opposite of that filter's default action, 
+   * so it is allowed when unmatched addresses are denied, and denied when they are allowed.</p>
+   * 
    * @param isa the InetSocketAddress to use for the filter.
    */
-  public void filterHost(InetSocketAddress isa) {
-    filter.put(isa.getAddress(), isa.getPort());
+  public synchronized void filterHost(InetSocketAddress isa) {
+    final AddressFilter current = getAddressFilter();
+    final AddressFilter af;
+    if(current == null) {
+      af = new AddressFilter(filterMode == UDPFilterMode.WhiteList ? FilterAction.Deny : FilterAction.Allow);
+    } else if(current != modeFilter) {
+      af = new AddressFilter(current);
+    } else {
+      af = current;
+    }
+    final int lowPort = isa.getPort() == 0 ? AddressFilter.MIN_PORT : isa.getPort();
+    final int highPort = isa.getPort() == 0 ? AddressFilter.MAX_PORT : isa.getPort();
+    af.addRule(af.getDefaultAction() == FilterAction.Allow ? FilterAction.Deny : FilterAction.Allow, 
+               isa.getAddress(), isa.getAddress().getAddress().length * 8, lowPort, highPort);
+    if(af != current) {
+      modeFilter = af;
+      setAddressFilter(af);
+    }
   }
 
   /**
@@ -101,31 +585,330 @@ public class UDPServer extends Server {
     return frameSize;
   }
 
+  /**
+   * Sets the maximum number of datagrams which will be received each time the socket is ready to
+   * be read.  Receiving many datagrams per readiness event avoids going back through the selector
+   * for every packet, while the limit keeps one busy {@link UDPServer} from starving the other
+   * sockets on its selector.  The default is {@value #DEFAULT_RECEIVE_BATCH_SIZE}.
+   * 
+   * @param size the maximum datagrams to receive per read event, must be at least 1.
+   */
+  public void setReceiveBatchSize(final int size) {
+    ArgumentVerifier.assertGreaterThanZero(size, "size");
+    receiveBatchSize = size;
+  }
+
+  /**
+   * Gets the maximum number of datagrams received each time the socket is ready to be read.
+   * 
+   * @return the maximum datagrams received per read event.
+   */
+  public int getReceiveBatchSize() {
+    return receiveBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of queued datagrams which will be sent each time the socket is ready
+   * to be written to.  Sending stops early if the socket would block, the remaining datagrams are
+   * sent on the next write event.  The default is {@value #DEFAULT_WRITE_BATCH_SIZE}.
+   * 
+   * @param size the maximum datagrams to send per write event, must be at least 1.
+   */
+  public void setWriteBatchSize(final int size) {
+    ArgumentVerifier.assertGreaterThanZero(size, "size");
+    writeBatchSize = size;
+  }
+
+  /**
+   * Gets the maximum number of queued datagrams sent each time the socket is ready to be written to.
+   * 
+   * @return the maximum datagrams sent per write event.
+   */
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  /**
+   * Limits the rate datagrams are sent from this servers write queue, across all of its channels.
+   * Since the {@link UDPClient}s of a server share its write queue this is the limit for all of
+   * them.  Once the limit is reached the write queue is left until the rate allows the next
+   * datagram, this is deferred on the {@link SocketExecuter#getThreadScheduler()} instead of 
+   * waiting for the socket to be writable.  Datagrams are never split, so one larger than the burst
+   * size is sent once the full burst is available.  A limit set with 
+   * {@link SocketExecuter#setWriteRateLimit(long, long)} also applies.  Writes done with 
+   * {@link #writeDirect(ByteBuffer, InetSocketAddress)} are not limited.
+   * 
+   * @param bytesPerSecond the max rate to write at, or {@code 0} to remove the limit.
+   * @param burstBytes the most bytes which can be written at once after being idle.
+   */
+  public void setWriteRateLimit(final long bytesPerSecond, final long burstBytes) {
+    ArgumentVerifier.assertNotNegative(bytesPerSecond, "bytesPerSecond");
+    if(bytesPerSecond == 0) {
+      primary.writeRateLimiter = null;
+    } else {
+      primary.writeRateLimiter = new TokenBucket(bytesPerSecond, burstBytes);
+    }
+  }
+
+  /**
+   * Returns the {@link TokenBucket} this servers writes are paced with, this gives the configured 
+   * rate and the rate writes have been achieving.
+   * 
+   * @return the {@link TokenBucket} for writes or {@code null} if no limit is set.
+   */
+  public TokenBucket getWriteRateLimiter() {
+    return primary.writeRateLimiter;
+  }
+
+  /**
+   * Sets how received datagrams are handed to readers, see {@link UDPReceiveMode} for the contract
+   * of each mode.  The default is {@link UDPReceiveMode#Copy}.
+   * 
+   * @param mode the {@link UDPReceiveMode} to use.
+   */
+  public void setReceiveMode(final UDPReceiveMode mode) {
+    ArgumentVerifier.assertNotNull(mode, "mode");
+    receiveMode = mode;
+  }
+
+  /**
+   * Gets how received datagrams are handed to readers.
+   * 
+   * @return the current {@link UDPReceiveMode}.
+   */
+  public UDPReceiveMode getReceiveMode() {
+    return receiveMode;
+  }
+
+  /**
+   * Sets the maximum number of {@link UDPClient}s this server will track.  When a new remote
+   * address would go over the limit the least recently active clients are closed and removed, in
+   * batches of a small fraction of the limit so the table is not scanned for every new address.
+   * Evicted clients are closed like any other, so their close listeners are called.  If the same
+   * address sends again a new client is created and passed to the {@link ClientAcceptor}.
+   * 
+   * <p>The default is 0, meaning there is no limit.</p>
+   * 
+   * @param max the maximum clients to track, or 0 for no limit.
+   */
+  public void setMaxClients(final int max) {
+    ArgumentVerifier.assertNotNegative(max, "max");
+    maxClients = max;
+    if(max > 0 && clients.size() > max) {
+      evictOverflowClients(null);
+    }
+  }
+
+  /**
+   * Gets the maximum number of {@link UDPClient}s this server will track.
+   * 
+   * @return the maximum clients, or 0 if there is no limit.
+   */
+  public int getMaxClients() {
+    return maxClients;
+  }
+
+  /**
+   * Sets how long a {@link UDPClient} can go without reading or writing any data before it is closed
+   * and removed from this server.  Idle clients are checked for every half of the timeout on the
+   * {@link SocketExecuter}s thread scheduler, so a client may be idle for up to about 1.5 times the
+   * timeout before it is evicted.  Evicted clients are closed like any other, so their close
+   * listeners are called.
+   * 
+   * <p>The default is 0, meaning clients are never closed for being idle.</p>
+   * 
+   * @param millis the idle time in milliseconds before a client is closed, or 0 to disable.
+   */
+  public void setClientIdleTimeout(final long millis) {
+    ArgumentVerifier.assertNotNegative(millis, "millis");
+    clientIdleTimeout = millis;
+    scheduleIdleSweep();
+  }
+
+  /**
+   * Gets how long a {@link UDPClient} can be idle before it is closed.
+   * 
+   * @return the idle timeout in milliseconds, or 0 if disabled.
+   */
+  public long getClientIdleTimeout() {
+    return clientIdleTimeout;
+  }
+
+  /**
+   * @return the number of {@link UDPClient}s currently tracked by this server
+   */
+  public int getClientCount() {
+    return clients.size();
+  }
+
+  /**
+   * @return the number of clients which have been closed for going over the idle timeout
+   */
+  public long getIdleEvictionCount() {
+    return idleEvictions.sum();
+  }
+
+  /**
+   * @return the number of clients which have been closed for going over the max clients
+   */
+  public long getOverflowEvictionCount() {
+    return overflowEvictions.sum();
+  }
+
+  /**
+   * @return the number of read events which have been handled for this server
+   */
+  public long getReceiveBatchCount() {
+    long total = primary.closedChannelBatches.sum();
+    for(final UDPServer us : getChannelServers()) {
+      total += us.receiveBatches;
+    }
+    return total;
+  }
+
+  /**
+   * @return the number of datagrams received from the socket, including ones dropped by the filter
+   */
+  public long getReceivedPacketCount() {
+    long total = primary.closedChannelPackets.sum();
+    for(final UDPServer us : getChannelServers()) {
+      total += us.receivedPackets;
+    }
+    return total;
+  }
+
+  /**
+   * @return the average number of datagrams received per read event
+   */
+  public double getAverageReceiveBatchSize() {
+    final long batches = getReceiveBatchCount();
+    if(batches == 0) {
+      return 0;
+    }
+    return getReceivedPacketCount() / (double)batches;
+  }
+
+  /**
+   * @return the most datagrams which have been received in a single read event
+   */
+  public int getMaxReceiveBatchSize() {
+    int max = 0;
+    for(final UDPServer us : getChannelServers()) {
+      max = Math.max(max, us.maxReceiveBatch);
+    }
+    return max;
+  }
+
   @Override
   public void acceptChannel(final SelectableChannel c) {
     if(c.equals(channel)) {
-      final ByteBuffer bb = ByteBuffer.allocate(frameSize);
+      // settings, filtering and clients all come from the primary server when there are many channels
+      final UDPServer p = primary;
+      final int batchSize = p.receiveBatchSize;
+      final UDPReceiveMode mode = p.receiveMode;
+      int received = 0;
       try {
-        final InetSocketAddress isa = (InetSocketAddress)channel.receive(bb);
-        if(filterMode == UDPFilterMode.BlackList && filter.size() > 0) {
-          Integer port = filter.get(isa.getAddress());
-          if(port != null && (port == 0 || port == isa.getPort())) {
-            return;
+        while(received < batchSize) {
+          final ByteBuffer bb = provideReceiveBuffer(mode);
+          final int start = bb.position();
+          final InetSocketAddress isa;
+          if(connectedAddress == null || drainingConnect) {
+            isa = (InetSocketAddress)channel.receive(bb);
+            if(isa == null) {
+              // anything received from now on is from the connected address
+              drainingConnect = false;
+            }
+          } else {
+            // only datagrams from the connected address are received, empty datagrams are dropped
+            isa = channel.read(bb) > 0 ? connectedAddress : null;
+          }
+          sei.recordSyscallStats();
+          if(isa == null) {
+            break;
+          }
+          received++;
+          if(! isa.equals(connectedAddress) && p.isFiltered(isa)) {
+            bb.position(start);
+            continue;
           }
-        } else if (filterMode == UDPFilterMode.WhiteList) {
-          Integer port = filter.get(isa.getAddress());
-          if(port == null || (port != 0 && port != isa.getPort())) {
-            return;
+          final ByteBuffer packet;
+          if(mode == UDPReceiveMode.Inline) {
+            bb.flip();
+            if(! p.readInline(bb, isa)) {
+              continue;
+            }
+            packet = ByteBuffer.allocate(bb.remaining());
+            packet.put(bb).flip();
+            getSocketExecuter().getExecutorFor(isa).execute(new NewDataRunnable(p, isa, packet, false));
+            continue;
+          } else if(mode == UDPReceiveMode.Slice) {
+            packet = bb.asReadOnlyBuffer();
+            packet.limit(packet.position()).position(start);
+            bb.limit(bb.capacity());
+          } else {
+            bb.flip();
+            packet = ByteBuffer.allocate(bb.remaining());
+            packet.put(bb).flip();
           }
+          getSocketExecuter().getExecutorFor(isa).execute(new NewDataRunnable(p, isa, packet, true));
         }
-        bb.flip();
-        getSocketExecuter().getExecutorFor(isa).execute(new NewDataRunnable(this, isa, bb));
       } catch (IOException e) {
 
+      } finally {
+        // only the thread handling this servers read events updates these
+        receiveBatches++;
+        receivedPackets += received;
+        if(received > maxReceiveBatch) {
+          maxReceiveBatch = received;
+        }
       }
     }
   }
 
+  private ByteBuffer provideReceiveBuffer(final UDPReceiveMode mode) {
+    final int size = primary.frameSize;
+    if(mode == UDPReceiveMode.Slice) {
+      if(receiveBuffer.capacity() < size * RECEIVE_SLAB_FRAMES || 
+          receiveBuffer.capacity() - receiveBuffer.position() < size) {
+        receiveBuffer = ByteBuffer.allocateDirect(size * RECEIVE_SLAB_FRAMES);
+      }
+      // frames larger than the frame size are truncated, same as in copy mode
+      receiveBuffer.limit(receiveBuffer.position() + size);
+    } else {
+      if(receiveBuffer.capacity() != size) {
+        receiveBuffer = ByteBuffer.allocateDirect(size);
+      } else {
+        receiveBuffer.clear();
+      }
+    }
+    return receiveBuffer;
+  }
+
+  private boolean readInline(final ByteBuffer bb, final InetSocketAddress isa) {
+    final UDPReader reader = setUDPReader;
+    if(reader == null) {
+      return true;
+    }
+    final int position = bb.position();
+    final int limit = bb.limit();
+    try {
+      if(! reader.onUDPRead(bb, isa)) {
+        return false;
+      }
+    } catch (Throwable t) {
+      ExceptionUtils.handleException(t);
+      return false;
+    }
+    // the reader may have consumed the buffer, reset it to copy the full datagram
+    bb.limit(limit).position(position);
+    return true;
+  }
+
+  private boolean isFiltered(final InetSocketAddress isa) {
+    final AddressFilter af = getAddressFilter();
+    return af != null && ! af.isAllowed(isa.getAddress(), isa.getPort());
+  }
+
   @Override
   public WireProtocol getServerType() {
     return WireProtocol.UDP;
@@ -148,30 +931,234 @@ public class UDPServer extends Server {
 
   @Override
   public void close(Throwable error) {
-    if(setClosed()) {
+    if(connectedAddress != null) {
+      // the client goes back to using the shared channels
+      primary.closeConnectedChannel(this);
+    } else if(primary != this) {
+      // closing any other channel closes the whole server
+      primary.close(error);
+    } else if(setClosed()) {
+      for(int i = 1; i < channelServers.length; i++) {
+        channelServers[i].closeChannel();
+      }
+      for(final UDPServer cs : connectedChannels.values()) {
+        closeConnectedChannel(cs);
+      }
+      // closing the channel drops its memberships
+      memberships.clear();
       IOUtils.closeQuietly(channel);
       this.callClosers(error);
     }
   }
 
+  private void closeChannel() {
+    if(setClosed()) {
+      IOUtils.closeQuietly(channel);
+    }
+  }
+
+  /**
+   * Gets the {@link UDPServer} whose channel writes to a remote address are sent from.  Writes to
+   * the same address always use the same channel so they stay in order.
+   */
+  private UDPServer getChannelServerFor(final InetSocketAddress remoteAddress) {
+    if(! primary.connectedChannels.isEmpty()) {
+      final UDPServer cs = primary.connectedChannels.get(remoteAddress);
+      if(cs != null) {
+        return cs;
+      }
+    }
+    final UDPServer[] servers = primary.channelServers;
+    if(servers.length == 1) {
+      return servers[0];
+    }
+    return servers[(remoteAddress.hashCode() & Integer.MAX_VALUE) % servers.length];
+  }
+
+  /**
+   * Adds a newly created client to the client table, evicting the least recently active clients if
+   * that puts the table over the max clients.
+   * 
+   * @param client the client to add.
+   * @return the client already in the table for that address, or {@code null} if this one was added.
+   */
+  private UDPClient addClient(final UDPClient client) {
+    final UDPClient existing = clients.putIfAbsent(client.getRemoteSocketAddress(), client);
+    if(existing == null) {
+      final int max = maxClients;
+      if(max > 0 && clients.size() > max) {
+        evictOverflowClients(client);
+      }
+    }
+    return existing;
+  }
+
+  /**
+   * Removes a client from the client table, called once the client has been closed.
+   * 
+   * @param client the client to remove.
+   */
+  protected void removeClient(final UDPClient client) {
+    clients.remove(client.getRemoteSocketAddress(), client);
+    if(! connectedChannels.isEmpty()) {
+      final UDPServer cs = connectedChannels.get(client.getRemoteSocketAddress());
+      if(cs != null) {
+        closeConnectedChannel(cs);
+      }
+    }
+  }
+
+  private void evictOverflowClients(final UDPClient keep) {
+    if(! evictingClients.compareAndSet(false, true)) {
+      // another thread is already evicting, it will get the table back under the limit
+      return;
+    }
+    try {
+      final int max = maxClients;
+      final UDPClient[] candidates = clients.values().toArray(new UDPClient[0]);
+      if(max == 0 || candidates.length <= max) {
+        return;
+      }
+      final int toEvict = candidates.length - max + (max / CLIENT_EVICTION_FRACTION);
+      final long[] lastActivity = new long[candidates.length];
+      final Integer[] order = new Integer[candidates.length];
+      for(int i = 0; i < candidates.length; i++) {
+        // read once, activity can update while sorting
+        lastActivity[i] = candidates[i].getLastActivity();
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(lastActivity[a], lastActivity[b]));
+      int evicted = 0;
+      for(int i = 0; i < order.length && evicted < toEvict; i++) {
+        final UDPClient c = candidates[order[i]];
+        if(c != keep && clients.remove(c.getRemoteSocketAddress(), c)) {
+          evicted++;
+          overflowEvictions.increment();
+          c.close();
+        }
+      }
+    } finally {
+      evictingClients.set(false);
+    }
+  }
+
+  private void scheduleIdleSweep() {
+    final long timeout = clientIdleTimeout;
+    if(timeout > 0 && ! isClosed() && idleSweepScheduled.compareAndSet(false, true)) {
+      getSocketExecuter().getThreadScheduler().schedule(this::idleSweep, 
+                                                        Math.max(MIN_IDLE_SWEEP_MILLIS, timeout / 2));
+    }
+  }
+
+  private void idleSweep() {
+    final long timeout = clientIdleTimeout;
+    if(timeout > 0) {
+      final long now = Clock.accurateForwardProgressingMillis();
+      for(final UDPClient c : clients.values()) {
+        if(now - c.getLastActivity() >= timeout && clients.remove(c.getRemoteSocketAddress(), c)) {
+          idleEvictions.increment();
+          c.close();
+        }
+      }
+    }
+    idleSweepScheduled.set(false);
+    // reschedules unless the timeout was disabled or the server closed
+    scheduleIdleSweep();
+  }
+
   protected int doWrite() {
-    WriteData wd = writeQueue.poll();
-    if(wd != null) {
-      int size = 0;
-      try {
-        size = channel.send(wd.getBuffer(), wd.getAddress());
-        wd.getSlf().setResult((long)size);
-        return size;
-      } catch (Exception e) {
-        wd.getSlf().setFailure(e);
-        return 0;
+    final int batchSize = primary.writeBatchSize;
+    int totalSize = 0;
+    try {
+      while(completedWrites.size() < batchSize) {
+        final WriteData wd = writeQueue.peek();
+        if(wd == null) {
+          break;
+        }
+        final int packetSize = wd.getBuffer().remaining();
+        if(! acquireWriteTokens(packetSize)) {
+          // paced, the deferred write task will set the write interest again
+          break;
+        }
+        try {
+          final int size = connectedAddress == null ? 
+              channel.send(wd.getBuffer(), wd.getAddress()) : channel.write(wd.getBuffer());
+          sei.recordSyscallStats();
+          if(size == 0 && wd.getBuffer().hasRemaining()) {
+            // socket buffer is full, leave it queued for the next write event
+            releaseWriteTokens(packetSize);
+            break;
+          }
+          wd.written = size;
+          totalSize += size;
+        } catch (Exception e) {
+          wd.error = e;
+        }
+        writeQueue.poll();
+        completedWrites.add(wd);
+      }
+    } finally {
+      // futures are completed after the sends so listeners do not hold up the socket
+      for(int i = 0; i < completedWrites.size(); i++) {
+        final WriteData wd = completedWrites.get(i);
+        if(wd.error == null) {
+          wd.getSlf().setResult((long)wd.written);
+        } else {
+          wd.getSlf().setFailure(wd.error);
+        }
       }
+      completedWrites.clear();
     }
-    return 0;
+    return totalSize;
   }
 
   protected boolean needsWrite() {
-    return !writeQueue.isEmpty();
+    return !writeDeferred && !writeQueue.isEmpty();
+  }
+
+  /**
+   * Takes tokens for a datagram from this servers and the executers {@link TokenBucket}s.  If either
+   * does not have enough this channels writes are deferred until it has refilled.
+   * 
+   * @param size the size of the datagram.
+   * @return {@code true} if the datagram can be sent now.
+   */
+  private boolean acquireWriteTokens(final int size) {
+    final TokenBucket serverLimiter = primary.writeRateLimiter;
+    final TokenBucket executerLimiter = sei.writeRateLimiter;
+    if(serverLimiter == null && executerLimiter == null) {
+      return true;
+    } else if(serverLimiter == null || serverLimiter.tryAcquire(size)) {
+      if(executerLimiter == null || executerLimiter.tryAcquire(size)) {
+        return true;
+      } else if(serverLimiter != null) {
+        serverLimiter.release(size);
+      }
+    }
+    long delay = 0;
+    if(serverLimiter != null) {
+      delay = serverLimiter.getDelayMillis(size);
+    }
+    if(executerLimiter != null) {
+      delay = Math.max(delay, executerLimiter.getDelayMillis(size));
+    }
+    writeDeferred = true;
+    getSocketExecuter().getThreadScheduler().schedule(() -> {
+      writeDeferred = false;
+      getSocketExecuter().setUDPServerOperations(this, true);
+    }, delay);
+    return false;
+  }
+
+  private void releaseWriteTokens(final int size) {
+    final TokenBucket serverLimiter = primary.writeRateLimiter;
+    final TokenBucket executerLimiter = sei.writeRateLimiter;
+    if(serverLimiter != null) {
+      serverLimiter.release(size);
+    }
+    if(executerLimiter != null) {
+      executerLimiter.release(size);
+    }
   }
 
   protected SocketExecuterCommonBase getSocketExecuterCommonBase() {
@@ -189,8 +1176,9 @@ public class UDPServer extends Server {
   public ListenableFuture<Long> write(final ByteBuffer bb, final InetSocketAddress remoteAddress) {
     SettableListenableFuture<Long> slf = new SettableListenableFuture<Long>(false);
     WriteData wd = new WriteData(slf, remoteAddress, bb);
-    this.writeQueue.add(wd);
-    getSocketExecuter().setUDPServerOperations(this, true);
+    final UDPServer us = getChannelServerFor(remoteAddress);
+    us.writeQueue.add(wd);
+    getSocketExecuter().setUDPServerOperations(us, true);
     return slf;
   }
 
@@ -207,7 +1195,9 @@ public class UDPServer extends Server {
   public ListenableFuture<Long> writeDirect(final ByteBuffer bb, final InetSocketAddress remoteAddress) {
     long size = 0;
     try {
-      size = channel.send(bb, remoteAddress);
+      final UDPServer us = getChannelServerFor(remoteAddress);
+      size = us.connectedAddress == null ? us.channel.send(bb, remoteAddress) : us.channel.write(bb);
+      sei.recordSyscallStats();
     } catch (Exception e) {
       return FutureUtils.immediateFailureFuture(e);
     }
@@ -217,6 +1207,8 @@ public class UDPServer extends Server {
   /**
    * Sets a {@link UDPReader} for this server.  This can be used to intercept reads before they create/call on a UDPClient.
    * 
+   * With {@link UDPReceiveMode#Inline} the reader is called on the thread handling the socket.
+   * 
    * Set to null to remove it.
    * 
    * @param udpReader the {@link UDPReader} to use for this UDPServer.
@@ -235,12 +1227,13 @@ public class UDPServer extends Server {
    */
   public UDPClient createUDPClient(final String host, final int port) {
     final InetSocketAddress sa = new InetSocketAddress(host,port);
-    if(! clients.containsKey(sa)) {
-      final UDPClient c = new UDPClient(new InetSocketAddress(host, port), this, 
-                                        sei.perConnectionStatsEnabled);
-      clients.putIfAbsent(sa, c);
+    final UDPClient existing = clients.get(sa);
+    if(existing != null) {
+      return existing;
     }
-    return clients.get(sa);
+    final UDPClient c = new UDPClient(sa, this, sei.perConnectionStatsEnabled);
+    final UDPClient raced = addClient(c);
+    return raced == null ? c : raced;
   }
 
   /**
@@ -253,27 +1246,30 @@ public class UDPServer extends Server {
     private final InetSocketAddress isa;
     private final ByteBuffer bb;
     private final UDPServer us;
+    private final boolean callReader;
 
-    public NewDataRunnable(final UDPServer us, final InetSocketAddress isa, final ByteBuffer bb) {
+    public NewDataRunnable(final UDPServer us, final InetSocketAddress isa, final ByteBuffer bb, 
+                           final boolean callReader) {
       this.us = us;
       this.isa = isa;
       this.bb = bb;
+      this.callReader = callReader;
     }
 
     @SuppressWarnings("resource")
     @Override
     public void run() {
-      UDPReader reader = us.setUDPReader;
+      UDPReader reader = callReader ? us.setUDPReader : null;
       if(reader == null || reader.onUDPRead(bb.duplicate(), isa)) {
-        if(! us.clients.containsKey(isa)) {
-          UDPClient udpc = new UDPClient(isa, us, us.sei.perConnectionStatsEnabled);
-          udpc = us.clients.putIfAbsent(isa, udpc);
+        UDPClient udpc = us.clients.get(isa);
+        if(udpc == null) {
+          final UDPClient newClient = new UDPClient(isa, us, us.sei.perConnectionStatsEnabled);
+          udpc = us.addClient(newClient);
           if(udpc == null) {
-            udpc = us.clients.get(isa);
+            udpc = newClient;
             us.clientAcceptor.accept(udpc);
           }
         }
-        final UDPClient udpc = us.clients.get(isa);
         if(udpc.canRead()) {
           udpc.addReadBuffer(bb);
         }
@@ -307,6 +1303,8 @@ public class UDPServer extends Server {
     private final SettableListenableFuture<Long> slf;
     private final InetSocketAddress address;
     private final ByteBuffer buffer;
+    private int written = 0;
+    private Throwable error = null;
 
     public WriteData(SettableListenableFuture<Long> slf, InetSocketAddress address, ByteBuffer buffer) {
       this.slf = slf;
@@ -0,0 +1,462 @@
+package org.threadly.litesockets.networkutils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.threadly.litesockets.Client;
+import org.threadly.litesockets.SelectorStats;
+import org.threadly.litesockets.Server;
+import org.threadly.litesockets.SocketExecuter;
+import org.threadly.litesockets.utils.SimpleByteStats.RateWindow;
+import org.threadly.util.ArgumentVerifier;
+import org.threadly.util.Clock;
+import org.threadly.util.ExceptionUtils;
+
+/**
+ * <p>Optionally registers JMX MBeans for {@link SocketExecuter}'s, {@link Server}'s and specific
+ * {@link Client}'s so their stats can be watched (and some basic operations done) from any JMX
+ * console.  Nothing is registered unless one of the register functions are called.</p>
+ *
+ * <p>Attribute reads never iterate all the clients of an executer, the pending read / write byte
+ * totals (which require that) are cached and refreshed at most once every
+ * {@link #PENDING_BYTES_REFRESH_MILLIS}.  Clients are not registered automatically since there
+ * can be a lot of them, only register clients of interest (ie the top clients by throughput).</p>
+ *
+ * <p>Servers and clients are unregistered automatically when they are closed.</p>
+ */
+public class MBeanRegistrar {
+  public static final String DEFAULT_DOMAIN = "org.threadly.litesockets";
+  public static final int PENDING_BYTES_REFRESH_MILLIS = 1000;
+
+  private final MBeanServer mbeanServer;
+  private final String domain;
+  private final ConcurrentHashMap<ObjectName, Boolean> registered = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs a registrar which registers with the platform {@link MBeanServer} using the
+   * {@link #DEFAULT_DOMAIN}.
+   */
+  public MBeanRegistrar() {
+    this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+  }
+
+  /**
+   * Constructs a registrar for the provided {@link MBeanServer} and domain.
+   *
+   * @param mbeanServer the {@link MBeanServer} to register with
+   * @param domain the domain to use in the registered {@link ObjectName}'s
+   */
+  public MBeanRegistrar(final MBeanServer mbeanServer, final String domain) {
+    ArgumentVerifier.assertNotNull(mbeanServer, "mbeanServer");
+    ArgumentVerifier.assertNotNull(domain, "domain");
+    this.mbeanServer = mbeanServer;
+    this.domain = domain;
+  }
+
+  /**
+   * Registers an MBean for the provided {@link SocketExecuter}.
+   *
+   * @param se the {@link SocketExecuter} to register
+   * @param name a unique name for this executer
+   * @return the {@link ObjectName} the MBean was registered with
+   * @throws JMException if the MBean could not be registered (ie the name is already in use)
+   */
+  public ObjectName register(final SocketExecuter se, final String name) throws JMException {
+    ArgumentVerifier.assertNotNull(se, "SocketExecuter");
+    return register(new StandardMBean(new SocketExecuterMonitor(se), SocketExecuterMBean.class),
+                    "SocketExecuter", name);
+  }
+
+  /**
+   * Registers an MBean for the provided {@link Server}.  The MBean will be unregistered once the
+   * server is closed.
+   *
+   * @param server the {@link Server} to register
+   * @param name a unique name for this server
+   * @return the {@link ObjectName} the MBean was registered with
+   * @throws JMException if the MBean could not be registered (ie the name is already in use)
+   */
+  public ObjectName register(final Server server, final String name) throws JMException {
+    ArgumentVerifier.assertNotNull(server, "Server");
+    final ObjectName on = register(new StandardMBean(new ServerMonitor(server), ServerMBean.class),
+                                   "Server", name);
+    server.addCloseListener((s) -> unregister(on));
+    return on;
+  }
+
+  /**
+   * Registers an MBean for the provided {@link Client}.  The MBean will be unregistered once the
+   * client is closed.
+   *
+   * @param client the {@link Client} to register
+   * @return the {@link ObjectName} the MBean was registered with
+   * @throws JMException if the MBean could not be registered (ie the client is already registered)
+   */
+  public ObjectName register(final Client client) throws JMException {
+    ArgumentVerifier.assertNotNull(client, "Client");
+    final ObjectName on = register(new StandardMBean(new ClientMonitor(client), ClientMBean.class),
+                                   "Client", client.getProtocol() + "-" + client.getRemoteSocketAddress());
+    client.addCloseListener((c) -> unregister(on));
+    return on;
+  }
+
+  private ObjectName register(final StandardMBean mbean, final String type,
+                              final String name) throws JMException {
+    final ObjectName on = new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+    mbeanServer.registerMBean(mbean, on);
+    registered.put(on, Boolean.TRUE);
+    return on;
+  }
+
+  /**
+   * Unregisters an MBean previously registered by this registrar.  This is a no-op if it is not
+   * currently registered.
+   *
+   * @param on the {@link ObjectName} returned when the MBean was registered
+   */
+  public void unregister(final ObjectName on) {
+    if(registered.remove(on) != null) {
+      try {
+        mbeanServer.unregisterMBean(on);
+      } catch(JMException e) {
+        ExceptionUtils.handleException(e);
+      }
+    }
+  }
+
+  /**
+   * Unregisters all MBeans registered by this registrar.
+   */
+  public void unregisterAll() {
+    for(final ObjectName on : registered.keySet()) {
+      unregister(on);
+    }
+  }
+
+  /**
+   * Management interface for a {@link SocketExecuter}.  Rates are in bytes per second.
+   */
+  public interface SocketExecuterMBean {
+    public boolean isRunning();
+    public int getClientCount();
+    public int getServerCount();
+    public long getTotalRead();
+    public long getTotalWrite();
+    public long getTotalSyscalls();
+    public double getReadRateOneSecond();
+    public double getWriteRateOneSecond();
+    public double getReadRateOneMinute();
+    public double getWriteRateOneMinute();
+    public double getEwmaReadRate();
+    public double getEwmaWriteRate();
+    public long getPendingReadBytes();
+    public long getPendingWriteBytes();
+    public int getSelectorCount();
+    public long getSelectCount();
+    public long getSelectBlockedMillis();
+    public int getMaxProcessQueueDepth();
+    public long getWakeups();
+    public long getCancelledKeys();
+    public long getWriteFlushLatencyP99Micros();
+    public void resetStats();
+  }
+
+  /**
+   * Management interface for a {@link Server}.
+   */
+  public interface ServerMBean {
+    public String getServerType();
+    public boolean isClosed();
+    public boolean isAcceptPaused();
+    public void pauseAccept();
+    public void resumeAccept();
+    public void close();
+  }
+
+  /**
+   * Management interface for a {@link Client}.  Rates are in bytes per second over the last 10
+   * seconds.
+   */
+  public interface ClientMBean {
+    public String getProtocol();
+    public String getRemoteAddress();
+    public boolean isClosed();
+    public long getTotalRead();
+    public long getTotalWrite();
+    public double getReadRate();
+    public double getWriteRate();
+    public int getReadBufferSize();
+    public int getWriteBufferSize();
+    public void close();
+  }
+
+  /**
+   * {@link SocketExecuterMBean} implementation.
+   */
+  private static class SocketExecuterMonitor implements SocketExecuterMBean {
+    private final SocketExecuter se;
+    private long pendingBytesTime = Long.MIN_VALUE;
+    private long pendingReadBytes = 0;
+    private long pendingWriteBytes = 0;
+
+    private SocketExecuterMonitor(final SocketExecuter se) {
+      this.se = se;
+      // the recent rates are reported, so start tracking them now rather than on the first query
+      se.getStats().trackRecentRates();
+    }
+
+    private synchronized void refreshPendingBytes() {
+      final long now = Clock.lastKnownForwardProgressingMillis();
+      if(now - pendingBytesTime >= PENDING_BYTES_REFRESH_MILLIS) {
+        pendingBytesTime = now;
+        pendingReadBytes = se.getTotalPendingReadBytes();
+        pendingWriteBytes = se.getTotalPendingWriteBytes();
+      }
+    }
+
+    @Override
+    public boolean isRunning() {
+      return se.isRunning();
+    }
+
+    @Override
+    public int getClientCount() {
+      return se.getClientCount();
+    }
+
+    @Override
+    public int getServerCount() {
+      return se.getServerCount();
+    }
+
+    @Override
+    public long getTotalRead() {
+      return se.getStats().getTotalRead();
+    }
+
+    @Override
+    public long getTotalWrite() {
+      return se.getStats().getTotalWrite();
+    }
+
+    @Override
+    public long getTotalSyscalls() {
+      return se.getStats().getTotalSyscalls();
+    }
+
+    @Override
+    public double getReadRateOneSecond() {
+      return se.getStats().getReadRate(RateWindow.OneSecond);
+    }
+
+    @Override
+    public double getWriteRateOneSecond() {
+      return se.getStats().getWriteRate(RateWindow.OneSecond);
+    }
+
+    @Override
+    public double getReadRateOneMinute() {
+      return se.getStats().getReadRate(RateWindow.OneMinute);
+    }
+
+    @Override
+    public double getWriteRateOneMinute() {
+      return se.getStats().getWriteRate(RateWindow.OneMinute);
+    }
+
+    @Override
+    public double getEwmaReadRate() {
+      return se.getStats().getEwmaReadRate();
+    }
+
+    @Override
+    public double getEwmaWriteRate() {
+      return se.getStats().getEwmaWriteRate();
+    }
+
+    @Override
+    public synchronized long getPendingReadBytes() {
+      refreshPendingBytes();
+      return pendingReadBytes;
+    }
+
+    @Override
+    public synchronized long getPendingWriteBytes() {
+      refreshPendingBytes();
+      return pendingWriteBytes;
+    }
+
+    @Override
+    public int getSelectorCount() {
+      return se.getSelectorStats().size();
+    }
+
+    @Override
+    public long getSelectCount() {
+      long result = 0;
+      for(final SelectorStats ss : se.getSelectorStats()) {
+        result += ss.getSelectCount();
+      }
+      return result;
+    }
+
+    @Override
+    public long getSelectBlockedMillis() {
+      long result = 0;
+      for(final SelectorStats ss : se.getSelectorStats()) {
+        result += ss.getSelectBlockedNanos();
+      }
+      return result / Clock.NANOS_IN_MILLISECOND;
+    }
+
+    @Override
+    public int getMaxProcessQueueDepth() {
+      int result = 0;
+      for(final SelectorStats ss : se.getSelectorStats()) {
+        result = Math.max(result, ss.getProcessQueueDepth());
+      }
+      return result;
+    }
+
+    @Override
+    public long getWakeups() {
+      long result = 0;
+      for(final SelectorStats ss : se.getSelectorStats()) {
+        result += ss.getWakeups();
+      }
+      return result;
+    }
+
+    @Override
+    public long getCancelledKeys() {
+      long result = 0;
+      for(final SelectorStats ss : se.getSelectorStats()) {
+        result += ss.getCancelledKeys();
+      }
+      return result;
+    }
+
+    @Override
+    public long getWriteFlushLatencyP99Micros() {
+      return se.getWriteFlushLatency().getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public void resetStats() {
+      se.getStats().resetStats();
+      se.getWriteFlushLatency().reset();
+      se.getWriteCompletionLatency().reset();
+    }
+  }
+
+  /**
+   * {@link ServerMBean} implementation.
+   */
+  private static class ServerMonitor implements ServerMBean {
+    private final Server server;
+    private volatile boolean acceptPaused = false;
+
+    private ServerMonitor(final Server server) {
+      this.server = server;
+    }
+
+    @Override
+    public String getServerType() {
+      return server.getServerType().toString();
+    }
+
+    @Override
+    public boolean isClosed() {
+      return server.isClosed();
+    }
+
+    @Override
+    public boolean isAcceptPaused() {
+      return acceptPaused;
+    }
+
+    @Override
+    public void pauseAccept() {
+      acceptPaused = true;
+      server.stop();
+    }
+
+    @Override
+    public void resumeAccept() {
+      acceptPaused = false;
+      server.start();
+    }
+
+    @Override
+    public void close() {
+      server.close();
+    }
+  }
+
+  /**
+   * {@link ClientMBean} implementation.
+   */
+  private static class ClientMonitor implements ClientMBean {
+    private final Client client;
+
+    private ClientMonitor(final Client client) {
+      this.client = client;
+      client.getStats().trackRecentRates();
+    }
+
+    @Override
+    public String getProtocol() {
+      return client.getProtocol().toString();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+      return String.valueOf(client.getRemoteSocketAddress());
+    }
+
+    @Override
+    public boolean isClosed() {
+      return client.isClosed();
+    }
+
+    @Override
+    public long getTotalRead() {
+      return client.getStats().getTotalRead();
+    }
+
+    @Override
+    public long getTotalWrite() {
+      return client.getStats().getTotalWrite();
+    }
+
+    @Override
+    public double getReadRate() {
+      return client.getStats().getReadRate(RateWindow.TenSeconds);
+    }
+
+    @Override
+    public double getWriteRate() {
+      return client.getStats().getWriteRate(RateWindow.TenSeconds);
+    }
+
+    @Override
+    public int getReadBufferSize() {
+      return client.getReadBufferSize();
+    }
+
+    @Override
+    public int getWriteBufferSize() {
+      return client.getWriteBufferSize();
+    }
+
+    @Override
+    public void close() {
+      client.close();
+    }
+  }
+}
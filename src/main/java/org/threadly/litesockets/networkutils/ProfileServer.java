@@ -1,12 +1,17 @@
 package org.threadly.litesockets.networkutils;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.threadly.concurrent.SubmitterScheduler;
 import org.threadly.litesockets.Client;
@@ -15,6 +20,7 @@ import org.threadly.litesockets.Client.Reader;
 import org.threadly.litesockets.Server.ClientAcceptor;
 import org.threadly.litesockets.SocketExecuter;
 import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.ThreadedSocketExecuter;
 import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
 import org.threadly.util.AbstractService;
 import org.threadly.util.ExceptionUtils;
@@ -33,9 +39,18 @@ import org.threadly.util.debug.Profiler;
  * stop - Stops the profiler (Profile is maintained)
  * reset - Resets the profilers data
  * dump - dumps the profiler current data
+ * collapsed - dumps the profiler current data as collapsed stacks (one line per unique stack, with its
+ *   sample count), which can be used directly to generate a flame graph
+ * filter [all|selectors|litesockets] - only profile threads matching the filter, selectors is the
+ *   {@link ThreadedSocketExecuter} selector threads, litesockets is any thread running litesockets code
+ *   (ie the selectors and threads running client callbacks).  Reset after changing the filter.
  * 
  * Commands must end with a newline.
  * 
+ * Dumps are sent in chunks of {@value #DUMP_CHUNK_SIZE} bytes.  Collapsed dumps only build the next
+ * chunk once the previous one has been written to the socket, so a large profile is never held in
+ * memory as one huge response.
+ * 
  * NOTE: the profiler should only be used when needed and stopped and reset when not in use.  The longer it
  * runs the more CPU and Memory it will consume, to the point where it could eat up an entire CPU core and over fill
  * memory.
@@ -43,6 +58,7 @@ import org.threadly.util.debug.Profiler;
  */
 public class ProfileServer extends AbstractService implements ClientAcceptor, Reader, ClientCloseListener{
   public static final int DISCONNECT_DELAY = 500;
+  public static final int DUMP_CHUNK_SIZE = 64 * 1024;
   private static final Charset DEFAULT_CHARSET = Charset.forName("US-ASCII");
   protected static final ByteBuffer DUMP_EXCEPTION = ByteBuffer.wrap("Got Exception doing Dump!\n\n".getBytes(DEFAULT_CHARSET)).asReadOnlyBuffer();
   protected static final ByteBuffer BAD_DATA = ByteBuffer.wrap("Got Bad Data from you, closing!!\n\n".getBytes(DEFAULT_CHARSET)).asReadOnlyBuffer();
@@ -57,6 +73,10 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
   protected static final String STOP_PROFILE = "stop";
   protected static final String RESET_PROFILE = "reset";
   protected static final String DUMP_PROFILE = "dump";
+  protected static final String COLLAPSED_PROFILE = "collapsed";
+  protected static final String FILTER_PROFILE = "filter";
+  protected static final String FILTER_RESPONSE = "Thread filter set to: ";
+  protected static final String LITESOCKETS_PACKAGE = "org.threadly.litesockets.";
   protected static final ByteBuffer HELP;
   
   static {
@@ -66,13 +86,15 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
     sb.append(STOP_PROFILE).append(" - Stops the profiler (Profile is maintained)\n");
     sb.append(RESET_PROFILE).append(" - Resets the profilers data\n");
     sb.append(DUMP_PROFILE).append(" - dumps the profiler current data\n");
+    sb.append(COLLAPSED_PROFILE).append(" - dumps the profiler current data as collapsed stacks\n");
+    sb.append(FILTER_PROFILE).append(" [all|selectors|litesockets] - sets which threads are profiled\n");
     HELP = ByteBuffer.wrap(sb.toString().getBytes(DEFAULT_CHARSET)).asReadOnlyBuffer();
   }
 
   private final SubmitterScheduler scheduler;
   private final SocketExecuter socketEx;
   private final ConcurrentHashMap<Client, ReuseableMergedByteBuffers> clients = new ConcurrentHashMap<>();
-  private final Profiler profiler;
+  private final FilteredProfiler profiler;
   private final String host;
   private final int port;
   private TCPServer server;
@@ -89,7 +111,7 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
     socketEx.startIfNotStarted();
     scheduler = socketEx.getThreadScheduler();
     this.socketEx = socketEx;
-    profiler = new Profiler(frequency);
+    profiler = new FilteredProfiler(frequency);
     this.host = host;
     this.port = port;
   }
@@ -131,6 +153,10 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
         client.write(RESET_RESPONSE.duplicate());
       } else if(DUMP_PROFILE.equals(cmd)) {
         dumpProfile(client);
+      } else if(COLLAPSED_PROFILE.equals(cmd)) {
+        dumpCollapsedProfile(client);
+      } else if(cmd.startsWith(FILTER_PROFILE)) {
+        setThreadFilter(client, cmd.substring(FILTER_PROFILE.length()).trim());
       } else {
         sendHelp(client);
       }
@@ -159,12 +185,23 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
     });
   }
   
+  private void setThreadFilter(final Client client, final String filterName) {
+    for(final ThreadFilter tf : ThreadFilter.values()) {
+      if(tf.name().equalsIgnoreCase(filterName)) {
+        profiler.threadFilter = tf;
+        client.write(ByteBuffer.wrap((FILTER_RESPONSE + tf.name() + "\n\n").getBytes(DEFAULT_CHARSET)));
+        return;
+      }
+    }
+    sendHelp(client);
+  }
+  
   private void dumpProfile(final Client client) {
     scheduler.execute(new Runnable() {
       @Override
       public void run() {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream(0);
-        final OutputStream os = new BufferedOutputStream(baos);
+        // profiler.dump() pushes all its output at once, so it can only be chunked, not paused
+        final OutputStream os = new ChunkedClientOutputStream(client);
         try {
           os.write(START_DUMP.getBytes(DEFAULT_CHARSET));
           profiler.dump(os);
@@ -179,11 +216,14 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
           } catch (IOException e) {
           }
         }
-        client.write(ByteBuffer.wrap(baos.toByteArray()));
       }
       
     });
   }
+  
+  private void dumpCollapsedProfile(final Client client) {
+    scheduler.execute(new CollapsedDumpWriter(client, new ArrayList<>(profiler.collapsedStacks.entrySet())));
+  }
 
   @Override
   protected void startupService() {
@@ -202,4 +242,264 @@ public class ProfileServer extends AbstractService implements ClientAcceptor, Re
     profiler.reset();
     server.close();
   }
+  
+  /**
+   * Which threads should be profiled.
+   */
+  public enum ThreadFilter {
+    All, Selectors, LiteSockets
+  }
+  
+  /**
+   * {@link Profiler} which only samples threads matching its {@link ThreadFilter}, and also keeps
+   * the count of each unique stack so it can be dumped in a collapsed form.
+   */
+  private static class FilteredProfiler extends Profiler {
+    private final ConcurrentHashMap<CollapsedStack, LongAdder> collapsedStacks = new ConcurrentHashMap<>();
+    private volatile ThreadFilter threadFilter = ThreadFilter.All;
+    
+    private FilteredProfiler(final int frequency) {
+      this(new FilteredProfileStorage(frequency));
+    }
+    
+    private FilteredProfiler(final FilteredProfileStorage storage) {
+      super(storage);
+      storage.profiler = this;
+    }
+    
+    @Override
+    public void reset() {
+      super.reset();
+      collapsedStacks.clear();
+    }
+    
+    private boolean matches(final Thread thread, final StackTraceElement[] stack) {
+      switch(threadFilter) {
+        case Selectors:
+          return thread.getName().startsWith(ThreadedSocketExecuter.SELECTOR_THREAD_NAME);
+        case LiteSockets:
+          for(final StackTraceElement ste : stack) {
+            if(ste.getClassName().startsWith(LITESOCKETS_PACKAGE)) {
+              return true;
+            }
+          }
+          return false;
+        default:
+          return true;
+      }
+    }
+    
+    /**
+     * Storage which provides the filtered threads to sample, recording each sample returned into the
+     * collapsed stacks of its {@link FilteredProfiler}.
+     */
+    private static class FilteredProfileStorage extends Profiler.ProfileStorage {
+      private FilteredProfiler profiler;
+    
+      private FilteredProfileStorage(final int pollIntervalInMs) {
+        super(pollIntervalInMs);
+      }
+    
+      @Override
+      protected Iterator<? extends ThreadSample> getProfileThreadsIterator() {
+        final Iterator<Map.Entry<Thread, StackTraceElement[]>> it = Thread.getAllStackTraces().entrySet().iterator();
+        final Thread collector = Thread.currentThread();
+        return new Iterator<ThreadSample>() {
+          private ThreadSample next = findNext();
+        
+          private ThreadSample findNext() {
+            while(it.hasNext()) {
+              final Map.Entry<Thread, StackTraceElement[]> e = it.next();
+              final Thread thread = e.getKey();
+              final StackTraceElement[] stack = e.getValue();
+              if(thread != collector && thread != dumpingThread && stack.length > 0 && 
+                  profiler.matches(thread, stack)) {
+                profiler.collapsedStacks.computeIfAbsent(new CollapsedStack(thread.getName(), stack), 
+                                                         (cs) -> new LongAdder()).increment();
+                return new ThreadSample() {
+                  @Override
+                  public Thread getThread() {
+                    return thread;
+                  }
+
+                  @Override
+                  public StackTraceElement[] getStackTrace() {
+                    return stack;
+                  }
+                };
+              }
+            }
+            return null;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next != null;
+          }
+
+          @Override
+          public ThreadSample next() {
+            if(next == null) {
+              throw new NoSuchElementException();
+            }
+            final ThreadSample result = next;
+            next = findNext();
+            return result;
+          }
+        };
+      }
+    }
+  }
+  
+  /**
+   * A sampled stack, only the thread name, class and method of each frame are used so samples at
+   * different lines of the same methods are counted together.
+   */
+  private static class CollapsedStack {
+    private final String threadName;
+    private final StackTraceElement[] stack;
+    private final int hash;
+    
+    private CollapsedStack(final String threadName, final StackTraceElement[] stack) {
+      this.threadName = threadName;
+      this.stack = stack;
+      int h = threadName.hashCode();
+      for(final StackTraceElement ste : stack) {
+        h = (31 * h + ste.getClassName().hashCode()) * 31 + ste.getMethodName().hashCode();
+      }
+      this.hash = h;
+    }
+    
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+      if(o == this) {
+        return true;
+      } else if(! (o instanceof CollapsedStack)) {
+        return false;
+      }
+      final CollapsedStack cs = (CollapsedStack)o;
+      if(hash != cs.hash || stack.length != cs.stack.length || ! threadName.equals(cs.threadName)) {
+        return false;
+      }
+      for(int i = 0; i < stack.length; i++) {
+        if(! stack[i].getClassName().equals(cs.stack[i].getClassName()) || 
+            ! stack[i].getMethodName().equals(cs.stack[i].getMethodName())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    
+    /**
+     * Appends this stack in the collapsed format, root frame first with each frame separated by ';'.
+     */
+    private void appendTo(final StringBuilder sb) {
+      appendFrame(sb, threadName);
+      for(int i = stack.length - 1; i >= 0; i--) {
+        sb.append(';');
+        appendFrame(sb, stack[i].getClassName());
+        sb.append('.');
+        appendFrame(sb, stack[i].getMethodName());
+      }
+    }
+    
+    private static void appendFrame(final StringBuilder sb, final String frame) {
+      for(int i = 0; i < frame.length(); i++) {
+        final char c = frame.charAt(i);
+        sb.append(c == ';' || Character.isWhitespace(c) ? '_' : c);
+      }
+    }
+  }
+  
+  /**
+   * Writes a snapshot of the collapsed stacks to a client, only building the next chunk once the
+   * previous chunk has finished writing.
+   */
+  private class CollapsedDumpWriter implements Runnable {
+    private final Client client;
+    private final List<Map.Entry<CollapsedStack, LongAdder>> stacks;
+    private final StringBuilder sb = new StringBuilder(DUMP_CHUNK_SIZE);
+    private int position = -1;
+    
+    private CollapsedDumpWriter(final Client client, final List<Map.Entry<CollapsedStack, LongAdder>> stacks) {
+      this.client = client;
+      this.stacks = stacks;
+    }
+    
+    @Override
+    public void run() {
+      if(client.isClosed() || position > stacks.size()) {
+        return;
+      }
+      sb.setLength(0);
+      if(position < 0) {
+        sb.append(START_DUMP);
+        position = 0;
+      }
+      while(position < stacks.size() && sb.length() < DUMP_CHUNK_SIZE) {
+        final Map.Entry<CollapsedStack, LongAdder> e = stacks.get(position++);
+        e.getKey().appendTo(sb);
+        sb.append(' ').append(e.getValue().sum()).append('\n');
+      }
+      if(position == stacks.size()) {
+        sb.append(END_DUMP).append('\n');
+        position++;
+      }
+      client.write(ByteBuffer.wrap(sb.toString().getBytes(DEFAULT_CHARSET))).listener(this, scheduler);
+    }
+  }
+  
+  /**
+   * {@link OutputStream} which writes to a client in chunks of {@link #DUMP_CHUNK_SIZE}.
+   */
+  private static class ChunkedClientOutputStream extends OutputStream {
+    private final Client client;
+    private byte[] chunk = new byte[DUMP_CHUNK_SIZE];
+    private int size = 0;
+    
+    private ChunkedClientOutputStream(final Client client) {
+      this.client = client;
+    }
+    
+    @Override
+    public void write(final int b) {
+      chunk[size++] = (byte)b;
+      if(size == chunk.length) {
+        flush();
+      }
+    }
+    
+    @Override
+    public void write(final byte[] b, int off, int len) {
+      while(len > 0) {
+        final int toCopy = Math.min(len, chunk.length - size);
+        System.arraycopy(b, off, chunk, size, toCopy);
+        size += toCopy;
+        off += toCopy;
+        len -= toCopy;
+        if(size == chunk.length) {
+          flush();
+        }
+      }
+    }
+    
+    @Override
+    public void flush() {
+      if(size > 0) {
+        client.write(ByteBuffer.wrap(chunk, 0, size));
+        chunk = new byte[DUMP_CHUNK_SIZE];
+        size = 0;
+      }
+    }
+    
+    @Override
+    public void close() {
+      flush();
+    }
+  }
 }
@@ -0,0 +1,527 @@
+package org.threadly.litesockets.networkutils;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.threadly.litesockets.Client;
+import org.threadly.litesockets.Client.ClientCloseListener;
+import org.threadly.litesockets.Client.Reader;
+import org.threadly.litesockets.SelectorStats;
+import org.threadly.litesockets.SelectorStats.EventType;
+import org.threadly.litesockets.Server;
+import org.threadly.litesockets.Server.ClientAcceptor;
+import org.threadly.litesockets.SocketExecuter;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
+import org.threadly.litesockets.utils.LatencyHistogram;
+import org.threadly.litesockets.utils.SimpleByteStats;
+import org.threadly.util.AbstractService;
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * <p>The StatsServer opens a listen port on the specified ip/port and serves the stats of a
+ * {@link SocketExecuter} in the Prometheus text exposition format, so they can be scraped like any
+ * other Prometheus target.</p>
+ *
+ * <p>It only understands a minimal HTTP/1.0 request: {@code GET /metrics} (or {@code GET /}), every
+ * response closes the connection.  Included are the executers byte stats, pending read/write
+ * buffer sizes, write latencies, {@link SelectorStats} for each selector, the JVM's NIO buffer pool
+ * usage and the open state of any servers added with {@link #addServer(Server, String)}.</p>
+ *
+ * <p>Responses are written directly as ASCII bytes into buffers which are reused across scrapes, so
+ * scraping often (ie every second) creates very little garbage.  Gathering the pending buffer sizes
+ * does iterate all the clients of the executer.</p>
+ */
+public class StatsServer extends AbstractService implements ClientAcceptor, Reader, ClientCloseListener {
+  public static final int MAX_REQUEST_SIZE = 8192;
+  public static final int INITIAL_RESPONSE_SIZE = 16 * 1024;
+  public static final int MAX_POOLED_BUFFERS = 4;
+  private static final Charset DEFAULT_CHARSET = Charset.forName("US-ASCII");
+  private static final int HEADER_RESERVE = 128;
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final double[] QUANTILES = new double[] {.5, .9, .99, .999};
+  protected static final String METRICS_PATH = "/metrics";
+  protected static final ByteBuffer BAD_REQUEST = httpResponse("400 Bad Request");
+  protected static final ByteBuffer NOT_FOUND = httpResponse("404 Not Found");
+  protected static final ByteBuffer METHOD_NOT_ALLOWED = httpResponse("405 Method Not Allowed");
+  private static final byte[] HEADER_END = ascii("\r\n\r\n");
+  private static final byte[] OK_HEADER_START =
+      ascii("HTTP/1.0 200 OK\r\nContent-Type: text/plain; version=0.0.4; charset=utf-8\r\nContent-Length: ");
+  private static final byte[] GET = ascii("GET ");
+  private static final byte[] ROOT_PATH = ascii("/");
+  private static final byte[] METRICS_PATH_BYTES = ascii(METRICS_PATH);
+  private static final byte[] TYPE = ascii("# TYPE ");
+  private static final byte[] COUNTER = ascii(" counter\n");
+  private static final byte[] GAUGE = ascii(" gauge\n");
+  private static final byte[] SUMMARY = ascii(" summary\n");
+  private static final byte[] SUM_SUFFIX = ascii("_sum");
+  private static final byte[] COUNT_SUFFIX = ascii("_count");
+  private static final byte[] NAN = ascii("NaN");
+  private static final byte[] POSITIVE_INFINITY = ascii("+Inf");
+  private static final byte[] NEGATIVE_INFINITY = ascii("-Inf");
+  private static final byte[] CLIENTS = ascii("litesockets_clients");
+  private static final byte[] SERVERS = ascii("litesockets_servers");
+  private static final byte[] READ_BYTES = ascii("litesockets_read_bytes_total");
+  private static final byte[] WRITE_BYTES = ascii("litesockets_write_bytes_total");
+  private static final byte[] READ_OPERATIONS = ascii("litesockets_read_operations_total");
+  private static final byte[] WRITE_OPERATIONS = ascii("litesockets_write_operations_total");
+  private static final byte[] SYSCALLS = ascii("litesockets_syscalls_total");
+  private static final byte[] PENDING_READ_BYTES = ascii("litesockets_pending_read_bytes");
+  private static final byte[] PENDING_WRITE_BYTES = ascii("litesockets_pending_write_bytes");
+  private static final byte[] WRITE_FLUSH_LATENCY = ascii("litesockets_write_flush_latency_seconds");
+  private static final byte[] WRITE_COMPLETION_LATENCY = ascii("litesockets_write_completion_latency_seconds");
+  private static final byte[] SELECTS = ascii("litesockets_selector_selects_total");
+  private static final byte[] EMPTY_SELECTS = ascii("litesockets_selector_empty_selects_total");
+  private static final byte[] SELECT_BLOCKED = ascii("litesockets_selector_blocked_seconds_total");
+  private static final byte[] SELECTED_KEYS_MAX = ascii("litesockets_selector_selected_keys_max");
+  private static final byte[] QUEUE_DEPTH = ascii("litesockets_selector_process_queue_depth");
+  private static final byte[] PROCESSED_TASKS = ascii("litesockets_selector_processed_tasks_total");
+  private static final byte[] QUEUE_DRAIN = ascii("litesockets_selector_process_queue_seconds_total");
+  private static final byte[] WAKEUP_REQUESTS = ascii("litesockets_selector_wakeup_requests_total");
+  private static final byte[] WAKEUPS = ascii("litesockets_selector_wakeups_total");
+  private static final byte[] CANCELLED_KEYS = ascii("litesockets_selector_cancelled_keys_total");
+  private static final byte[] EVENTS = ascii("litesockets_selector_events_total");
+  private static final byte[] EVENT_SECONDS = ascii("litesockets_selector_event_seconds_total");
+  private static final byte[] BUFFER_POOL_USED = ascii("litesockets_jvm_buffer_pool_used_bytes");
+  private static final byte[] BUFFER_POOL_CAPACITY = ascii("litesockets_jvm_buffer_pool_capacity_bytes");
+  private static final byte[] BUFFER_POOL_COUNT = ascii("litesockets_jvm_buffer_pool_buffers");
+  private static final byte[] SERVER_OPEN = ascii("litesockets_server_open");
+  private static final byte[] QUANTILE_LABEL = ascii("quantile");
+  private static final byte[] SELECTOR_LABEL = ascii("selector");
+  private static final byte[] TYPE_LABEL = ascii("type");
+  private static final byte[] POOL_LABEL = ascii("pool");
+  private static final byte[] SERVER_LABEL = ascii("server");
+  private static final byte[] PROTOCOL_LABEL = ascii("protocol");
+  private static final byte[][] QUANTILE_VALUES;
+  private static final byte[][] EVENT_TYPE_VALUES;
+
+  static {
+    QUANTILE_VALUES = new byte[QUANTILES.length][];
+    for(int i = 0; i < QUANTILES.length; i++) {
+      QUANTILE_VALUES[i] = ascii(Double.toString(QUANTILES[i]));
+    }
+    EventType[] types = EventType.values();
+    EVENT_TYPE_VALUES = new byte[types.length][];
+    for(EventType type : types) {
+      EVENT_TYPE_VALUES[type.ordinal()] = ascii(type.name());
+    }
+  }
+
+  private final SocketExecuter socketEx;
+  private final String host;
+  private final int port;
+  private final ConcurrentHashMap<Client, ReuseableMergedByteBuffers> clients = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Server, byte[]> monitoredServers = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, byte[]> labelValueCache = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+  private final List<BufferPoolMXBean> bufferPoolBeans =
+      ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+  private TCPServer server;
+
+  /**
+   * Constructs a StatsServer.
+   *
+   * @param socketEx the {@link SocketExecuter} to serve stats for, the listen port is also opened on it
+   * @param host the host to create the servers listen port on
+   * @param port the port to use
+   */
+  public StatsServer(final SocketExecuter socketEx, final String host, final int port) {
+    ArgumentVerifier.assertNotNull(socketEx, "SocketExecuter");
+    socketEx.startIfNotStarted();
+    this.socketEx = socketEx;
+    this.host = host;
+    this.port = port;
+  }
+
+  /**
+   * Adds a {@link Server} whose open state should be reported.  The server is removed once it is
+   * closed.
+   *
+   * @param server the {@link Server} to report
+   * @param name the name to label the server with
+   */
+  public void addServer(final Server server, final String name) {
+    ArgumentVerifier.assertNotNull(server, "Server");
+    ArgumentVerifier.assertNotNull(name, "name");
+    monitoredServers.put(server, ascii(escapeLabelValue(name)));
+    server.addCloseListener(monitoredServers::remove);
+  }
+
+  /**
+   * Stops reporting a {@link Server} previously added with {@link #addServer(Server, String)}.
+   *
+   * @param server the {@link Server} to stop reporting
+   */
+  public void removeServer(final Server server) {
+    monitoredServers.remove(server);
+  }
+
+  @Override
+  public void onClose(final Client client) {
+    clients.remove(client);
+  }
+
+  @Override
+  public void onCloseWithError(final Client client, final Throwable error) {
+    clients.remove(client);
+  }
+
+  @Override
+  public void accept(final Client client) {
+    clients.put(client, new ReuseableMergedByteBuffers());
+    client.setReader(this);
+    client.addCloseListener(this);
+  }
+
+  @Override
+  public void onRead(final Client client) {
+    final ReuseableMergedByteBuffers mbb = clients.get(client);
+    if(mbb == null) {
+      return;
+    }
+    mbb.add(client.getRead());
+    final int headerEnd = mbb.indexOf(HEADER_END);
+    if(headerEnd < 0) {
+      if(mbb.remaining() > MAX_REQUEST_SIZE) {
+        respond(client, BAD_REQUEST.duplicate(), false);
+      }
+      return;
+    }
+    if(! startsWith(mbb, 0, GET)) {
+      respond(client, METHOD_NOT_ALLOWED.duplicate(), false);
+    } else if(isPath(mbb, METRICS_PATH_BYTES) || isPath(mbb, ROOT_PATH)) {
+      final ByteBuffer response = buildResponse();
+      respond(client, response, true);
+    } else {
+      respond(client, NOT_FOUND.duplicate(), false);
+    }
+    mbb.discard(mbb.remaining());
+  }
+
+  private void respond(final Client client, final ByteBuffer response, final boolean pooled) {
+    client.setReader(null);
+    client.write(response).listener(() -> {
+      if(pooled) {
+        releaseBuffer(response);
+      }
+      client.close();
+    });
+  }
+
+  private static boolean startsWith(final ReuseableMergedByteBuffers mbb, final int from, final byte[] prefix) {
+    return mbb.indexOf(prefix, from) == from;
+  }
+
+  private static boolean isPath(final ReuseableMergedByteBuffers mbb, final byte[] path) {
+    if(! startsWith(mbb, GET.length, path)) {
+      return false;
+    }
+    final int afterPath = GET.length + path.length;
+    return mbb.indexOf(" ", afterPath) == afterPath || mbb.indexOf("?", afterPath) == afterPath;
+  }
+
+  protected ByteBuffer buildResponse() {
+    final ResponseBuffer rb = new ResponseBuffer(acquireBuffer());
+    rb.position(HEADER_RESERVE);
+    writeMetrics(rb);
+    final ByteBuffer bb = rb.buffer;
+    final int bodyLength = bb.position() - HEADER_RESERVE;
+    // the header is written into the reserved space so it ends where the body starts
+    final int headerLength = OK_HEADER_START.length + digitCount(bodyLength) + HEADER_END.length;
+    final int start = HEADER_RESERVE - headerLength;
+    final int end = bb.position();
+    bb.position(start);
+    rb.write(OK_HEADER_START).write(bodyLength).write(HEADER_END);
+    bb.position(start);
+    bb.limit(end);
+    return bb;
+  }
+
+  private void writeMetrics(final ResponseBuffer rb) {
+    rb.type(CLIENTS, GAUGE).sample(CLIENTS).value(socketEx.getClientCount());
+    rb.type(SERVERS, GAUGE).sample(SERVERS).value(socketEx.getServerCount());
+
+    final SimpleByteStats stats = socketEx.getStats();
+    rb.type(READ_BYTES, COUNTER).sample(READ_BYTES).value(stats.getTotalRead());
+    rb.type(WRITE_BYTES, COUNTER).sample(WRITE_BYTES).value(stats.getTotalWrite());
+    rb.type(READ_OPERATIONS, COUNTER).sample(READ_OPERATIONS).value(stats.getTotalReadOperations());
+    rb.type(WRITE_OPERATIONS, COUNTER).sample(WRITE_OPERATIONS).value(stats.getTotalWriteOperations());
+    rb.type(SYSCALLS, COUNTER).sample(SYSCALLS).value(stats.getTotalSyscalls());
+    rb.type(PENDING_READ_BYTES, GAUGE).sample(PENDING_READ_BYTES).value(socketEx.getTotalPendingReadBytes());
+    rb.type(PENDING_WRITE_BYTES, GAUGE).sample(PENDING_WRITE_BYTES).value(socketEx.getTotalPendingWriteBytes());
+
+    writeLatency(rb, WRITE_FLUSH_LATENCY, socketEx.getWriteFlushLatency());
+    writeLatency(rb, WRITE_COMPLETION_LATENCY, socketEx.getWriteCompletionLatency());
+
+    final List<SelectorStats> selectors = socketEx.getSelectorStats();
+    rb.type(SELECTS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(SELECTS).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getSelectCount());
+    }
+    rb.type(EMPTY_SELECTS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(EMPTY_SELECTS).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getEmptySelectCount());
+    }
+    rb.type(SELECT_BLOCKED, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(SELECT_BLOCKED).label(SELECTOR_LABEL, labelValue(ss.getName()))
+        .value(ss.getSelectBlockedNanos() / NANOS_PER_SECOND);
+    }
+    rb.type(SELECTED_KEYS_MAX, GAUGE);
+    for(SelectorStats ss : selectors) {
+      rb.sample(SELECTED_KEYS_MAX).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getMaxSelectedKeys());
+    }
+    rb.type(QUEUE_DEPTH, GAUGE);
+    for(SelectorStats ss : selectors) {
+      rb.sample(QUEUE_DEPTH).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getProcessQueueDepth());
+    }
+    rb.type(PROCESSED_TASKS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(PROCESSED_TASKS).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getProcessedTasks());
+    }
+    rb.type(QUEUE_DRAIN, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(QUEUE_DRAIN).label(SELECTOR_LABEL, labelValue(ss.getName()))
+        .value(ss.getProcessQueueDrainNanos() / NANOS_PER_SECOND);
+    }
+    rb.type(WAKEUP_REQUESTS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(WAKEUP_REQUESTS).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getWakeupRequests());
+    }
+    rb.type(WAKEUPS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(WAKEUPS).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getWakeups());
+    }
+    rb.type(CANCELLED_KEYS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      rb.sample(CANCELLED_KEYS).label(SELECTOR_LABEL, labelValue(ss.getName())).value(ss.getCancelledKeys());
+    }
+    rb.type(EVENTS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      for(EventType type : EventType.values()) {
+        rb.sample(EVENTS).label(SELECTOR_LABEL, labelValue(ss.getName()),
+                                TYPE_LABEL, EVENT_TYPE_VALUES[type.ordinal()]).value(ss.getEventCount(type));
+      }
+    }
+    rb.type(EVENT_SECONDS, COUNTER);
+    for(SelectorStats ss : selectors) {
+      for(EventType type : EventType.values()) {
+        rb.sample(EVENT_SECONDS).label(SELECTOR_LABEL, labelValue(ss.getName()),
+                                       TYPE_LABEL, EVENT_TYPE_VALUES[type.ordinal()])
+          .value(ss.getEventNanos(type) / NANOS_PER_SECOND);
+      }
+    }
+
+    rb.type(BUFFER_POOL_USED, GAUGE);
+    for(BufferPoolMXBean bp : bufferPoolBeans) {
+      rb.sample(BUFFER_POOL_USED).label(POOL_LABEL, labelValue(bp.getName())).value(bp.getMemoryUsed());
+    }
+    rb.type(BUFFER_POOL_CAPACITY, GAUGE);
+    for(BufferPoolMXBean bp : bufferPoolBeans) {
+      rb.sample(BUFFER_POOL_CAPACITY).label(POOL_LABEL, labelValue(bp.getName())).value(bp.getTotalCapacity());
+    }
+    rb.type(BUFFER_POOL_COUNT, GAUGE);
+    for(BufferPoolMXBean bp : bufferPoolBeans) {
+      rb.sample(BUFFER_POOL_COUNT).label(POOL_LABEL, labelValue(bp.getName())).value(bp.getCount());
+    }
+
+    if(! monitoredServers.isEmpty()) {
+      rb.type(SERVER_OPEN, GAUGE);
+      for(Map.Entry<Server, byte[]> e : monitoredServers.entrySet()) {
+        rb.sample(SERVER_OPEN).label(SERVER_LABEL, e.getValue(),
+                                     PROTOCOL_LABEL, labelValue(e.getKey().getServerType().name()))
+          .value(e.getKey().isClosed() ? 0 : 1);
+      }
+    }
+  }
+
+  private static void writeLatency(final ResponseBuffer rb, final byte[] name, final LatencyHistogram lh) {
+    rb.type(name, SUMMARY);
+    for(int i = 0; i < QUANTILES.length; i++) {
+      rb.sample(name).label(QUANTILE_LABEL, QUANTILE_VALUES[i])
+        .value(lh.getValueAtPercentile(QUANTILES[i] * 100) / NANOS_PER_SECOND);
+    }
+    final long count = lh.getCount();
+    rb.write(name).write(SUM_SUFFIX).value(lh.getMean() * count / NANOS_PER_SECOND);
+    rb.write(name).write(COUNT_SUFFIX).value(count);
+  }
+
+  private byte[] labelValue(final String value) {
+    return labelValueCache.computeIfAbsent(value, (v) -> ascii(escapeLabelValue(v)));
+  }
+
+  private ByteBuffer acquireBuffer() {
+    final ByteBuffer bb = bufferPool.poll();
+    if(bb == null) {
+      return ByteBuffer.allocate(INITIAL_RESPONSE_SIZE);
+    }
+    bb.clear();
+    return bb;
+  }
+
+  private void releaseBuffer(final ByteBuffer bb) {
+    if(bufferPool.size() < MAX_POOLED_BUFFERS) {
+      bufferPool.offer(bb);
+    }
+  }
+
+  @Override
+  protected void startupService() {
+    try {
+      server = socketEx.createTCPServer(host, port);
+      server.setClientAcceptor(this);
+      server.start();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  protected void shutdownService() {
+    server.close();
+    bufferPool.clear();
+  }
+
+  private static String escapeLabelValue(final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static byte[] ascii(final String str) {
+    return str.getBytes(DEFAULT_CHARSET);
+  }
+
+  private static ByteBuffer httpResponse(final String status) {
+    return ByteBuffer.wrap(ascii("HTTP/1.0 " + status + "\r\nContent-Length: 0\r\n\r\n")).asReadOnlyBuffer();
+  }
+
+  private static int digitCount(long value) {
+    int digits = 1;
+    while(value >= 10) {
+      value /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  /**
+   * Writes the exposition format directly into a {@link ByteBuffer}, growing it as needed.
+   */
+  private static class ResponseBuffer {
+    private static final int MAX_LINE_SIZE = 256;
+    private static final long DECIMAL_SCALE = 1_000_000;
+    private static final double MAX_DECIMAL_VALUE = Long.MAX_VALUE / DECIMAL_SCALE;
+
+    private ByteBuffer buffer;
+
+    private ResponseBuffer(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    private void position(final int position) {
+      buffer.position(position);
+    }
+
+    private void ensureRemaining(final int size) {
+      if(buffer.remaining() < size) {
+        final ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+      }
+    }
+
+    private ResponseBuffer type(final byte[] name, final byte[] type) {
+      ensureRemaining(MAX_LINE_SIZE + name.length);
+      buffer.put(TYPE).put(name).put(type);
+      return this;
+    }
+
+    private ResponseBuffer sample(final byte[] name) {
+      ensureRemaining(MAX_LINE_SIZE + name.length);
+      buffer.put(name);
+      return this;
+    }
+
+    private ResponseBuffer label(final byte[] key, final byte[] value) {
+      ensureRemaining(key.length + value.length + 5);
+      buffer.put((byte)'{').put(key).put((byte)'=').put((byte)'"').put(value).put((byte)'"').put((byte)'}');
+      return this;
+    }
+
+    private ResponseBuffer label(final byte[] key1, final byte[] value1,
+                                 final byte[] key2, final byte[] value2) {
+      ensureRemaining(key1.length + value1.length + key2.length + value2.length + 11);
+      buffer.put((byte)'{').put(key1).put((byte)'=').put((byte)'"').put(value1).put((byte)'"');
+      buffer.put((byte)',').put(key2).put((byte)'=').put((byte)'"').put(value2).put((byte)'"').put((byte)'}');
+      return this;
+    }
+
+    private ResponseBuffer write(final byte[] bytes) {
+      ensureRemaining(bytes.length);
+      buffer.put(bytes);
+      return this;
+    }
+
+    private ResponseBuffer write(final long value) {
+      ensureRemaining(20);
+      long remaining = value;
+      if(remaining < 0) {
+        buffer.put((byte)'-');
+      } else {
+        // digits are calculated from the negative value so Long.MIN_VALUE does not overflow
+        remaining = -remaining;
+      }
+      int digits = 1;
+      for(long v = remaining; v <= -10; v /= 10) {
+        digits++;
+      }
+      final int end = buffer.position() + digits;
+      for(int i = end - 1; i >= buffer.position(); i--) {
+        buffer.put(i, (byte)('0' - (remaining % 10)));
+        remaining /= 10;
+      }
+      buffer.position(end);
+      return this;
+    }
+
+    private void value(final long value) {
+      ensureRemaining(22);
+      buffer.put((byte)' ');
+      write(value);
+      buffer.put((byte)'\n');
+    }
+
+    private void value(final double value) {
+      ensureRemaining(30);
+      buffer.put((byte)' ');
+      if(Double.isNaN(value)) {
+        buffer.put(NAN);
+      } else if(Double.isInfinite(value)) {
+        buffer.put(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+      } else if(Math.abs(value) >= MAX_DECIMAL_VALUE) {
+        write(Math.round(value));
+      } else {
+        final long scaled = Math.round(Math.abs(value) * DECIMAL_SCALE);
+        if(value < 0 && scaled != 0) {
+          buffer.put((byte)'-');
+        }
+        write(scaled / DECIMAL_SCALE);
+        buffer.put((byte)'.');
+        final long fraction = scaled % DECIMAL_SCALE;
+        for(long pad = DECIMAL_SCALE / 10; pad > 1 && fraction < pad; pad /= 10) {
+          buffer.put((byte)'0');
+        }
+        write(fraction);
+      }
+      buffer.put((byte)'\n');
+    }
+  }
+}
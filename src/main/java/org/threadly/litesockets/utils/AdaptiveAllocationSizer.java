@@ -0,0 +1,101 @@
+package org.threadly.litesockets.utils;
+
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * Tracks the size of recent reads to decide how large the next read allocation should be.
+ *
+ * <p>Sizes move through power of 2 buckets between a min and max size.  If a read fills the current
+ * allocation size we jump up 2 buckets right away, since there is likely more data pending on the
+ * socket.  If 2 reads in a row would have fit into the bucket below the current one we step down a
+ * single bucket.  This lets bulk transfers grow quickly while letting mostly idle or small request
+ * clients slowly settle into a small footprint.</p>
+ *
+ * <p>NOTE: This is not threadsafe.  It should only be accessed by the clients read thread.</p>
+ */
+public class AdaptiveAllocationSizer {
+  /**
+   * The smallest size we will shrink the allocation down too (512 bytes).
+   */
+  public static final int DEFAULT_MIN_ALLOCATION_SIZE = 512;
+
+  /**
+   * The size we will use for the first allocation (2k).
+   */
+  public static final int DEFAULT_INITIAL_ALLOCATION_SIZE = 2048;
+
+  private final int minSize;
+  private final int maxSize;
+  private int nextSize;
+  private boolean decreasePending = false;
+
+  /**
+   * Constructs a sizer using {@link #DEFAULT_MIN_ALLOCATION_SIZE} and
+   * {@link #DEFAULT_INITIAL_ALLOCATION_SIZE} with the provided max size.
+   *
+   * @param maxSize the largest size that will be returned from {@link #nextAllocationSize()}.
+   */
+  public AdaptiveAllocationSizer(final int maxSize) {
+    this(Math.min(DEFAULT_MIN_ALLOCATION_SIZE, maxSize),
+         Math.min(DEFAULT_INITIAL_ALLOCATION_SIZE, maxSize), maxSize);
+  }
+
+  /**
+   * Constructs a sizer with the provided limits.  The min and initial sizes are rounded up to the next
+   * power of 2, the max size is used as provided.
+   *
+   * @param minSize the smallest size that will be returned from {@link #nextAllocationSize()}.
+   * @param initialSize the size to return until some reads have been recorded.
+   * @param maxSize the largest size that will be returned from {@link #nextAllocationSize()}.
+   */
+  public AdaptiveAllocationSizer(final int minSize, final int initialSize, final int maxSize) {
+    ArgumentVerifier.assertGreaterThanZero(minSize, "minSize");
+    if(initialSize < minSize || maxSize < initialSize) {
+      throw new IllegalArgumentException("Sizes must be min <= initial <= max");
+    }
+    this.minSize = Math.min(roundToPowerOf2(minSize), maxSize);
+    this.maxSize = maxSize;
+    this.nextSize = Math.min(roundToPowerOf2(initialSize), maxSize);
+  }
+
+  /**
+   * Returns the size the next read allocation should be.
+   *
+   * @return the size in bytes the next read allocation should be.
+   */
+  public int nextAllocationSize() {
+    return nextSize;
+  }
+
+  /**
+   * Records the result of a read so the next allocation size can be adjusted.  If the read filled 
+   * all the space it was given, but that space was less than {@link #nextAllocationSize()} (ie a 
+   * partially used buffer was reused) the read is not considered a reason to shrink.
+   *
+   * @param bytesRead the number of bytes returned from the read.
+   * @param readCapacity the number of bytes that were available in the buffer for the read.
+   */
+  public void recordRead(final int bytesRead, final int readCapacity) {
+    if(bytesRead >= nextSize) {
+      decreasePending = false;
+      nextSize = (int)Math.min(maxSize, nextSize * 4L);
+    } else if(bytesRead < readCapacity && bytesRead <= nextSize / 2 && nextSize > minSize) {
+      if(decreasePending) {
+        decreasePending = false;
+        nextSize = Math.max(minSize, nextSize / 2);
+      } else {
+        decreasePending = true;
+      }
+    } else {
+      decreasePending = false;
+    }
+  }
+
+  private static int roundToPowerOf2(final int value) {
+    final int high = Integer.highestOneBit(value);
+    if(high == value || high == 1 << 30) {
+      return high;
+    }
+    return high << 1;
+  }
+}
@@ -0,0 +1,415 @@
+package org.threadly.litesockets.utils;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.threadly.util.ArgumentVerifier;
+
+/**
+ * Allow and deny rules for remote addresses, matching IPv4 and IPv6 CIDR blocks (ie
+ * {@code 10.0.0.0/8} or {@code 2001:db8::/32}) and optionally a range of remote ports.
+ *
+ * <p>The longest prefix which has a rule matching the port decides if an address is allowed, so
+ * a {@code 10.1.0.0/16} allow inside of a {@code 10.0.0.0/8} deny lets that subnet through.  If
+ * both an allow and a deny match the port for the same prefix the deny wins.  Addresses which no
+ * rule matches get the default action.</p>
+ *
+ * <p>Rules are kept in a path compressed binary trie per address family, so a check only visits
+ * the prefix lengths which actually have rules along the path of the address.  Checks are lock
+ * free, changing the rules rebuilds the tries and swaps them in atomically, so this is intended
+ * for rules which change far less often than they are checked.</p>
+ */
+public class AddressFilter {
+  public static final int MIN_PORT = 0;
+  public static final int MAX_PORT = 65535;
+  private static final Rule[] NO_RULES = new Rule[0];
+
+  /**
+   * What to do with an address matched by a rule, or matched by no rule.
+   */
+  public static enum FilterAction {Allow, Deny};
+
+  private final FilterAction defaultAction;
+  private final ArrayList<Rule> rules = new ArrayList<>();
+  private volatile Tries tries = new Tries(null, null);
+
+  /**
+   * Constructs a new filter which allows any address not matched by a rule.
+   */
+  public AddressFilter() {
+    this(FilterAction.Allow);
+  }
+
+  /**
+   * Constructs a new filter.
+   *
+   * @param defaultAction the action for addresses not matched by any rule
+   */
+  public AddressFilter(final FilterAction defaultAction) {
+    ArgumentVerifier.assertNotNull(defaultAction, "defaultAction");
+    this.defaultAction = defaultAction;
+  }
+
+  /**
+   * Constructs a new filter with the same default action and rules as another filter.  Later
+   * changes to either filter do not affect the other.
+   *
+   * @param other the filter to copy
+   */
+  public AddressFilter(final AddressFilter other) {
+    ArgumentVerifier.assertNotNull(other, "other");
+    this.defaultAction = other.defaultAction;
+    synchronized(other) {
+      rules.addAll(other.rules);
+    }
+    rebuild();
+  }
+
+  /**
+   * @return the action for addresses not matched by any rule
+   */
+  public FilterAction getDefaultAction() {
+    return defaultAction;
+  }
+
+  /**
+   * Allows all ports for the addresses in a CIDR block.
+   *
+   * @param cidr the address or CIDR block, ie {@code 10.0.0.0/8}, without a prefix length this is a
+   *        single address
+   */
+  public void allow(final String cidr) {
+    allow(cidr, MIN_PORT, MAX_PORT);
+  }
+
+  /**
+   * Allows a range of ports for the addresses in a CIDR block.
+   *
+   * @param cidr the address or CIDR block, ie {@code 10.0.0.0/8}, without a prefix length this is a
+   *        single address
+   * @param lowPort the lowest remote port to match
+   * @param highPort the highest remote port to match
+   */
+  public void allow(final String cidr, final int lowPort, final int highPort) {
+    addRule(parseRule(FilterAction.Allow, cidr, lowPort, highPort));
+  }
+
+  /**
+   * Denies all ports for the addresses in a CIDR block.
+   *
+   * @param cidr the address or CIDR block, ie {@code 10.0.0.0/8}, without a prefix length this is a
+   *        single address
+   */
+  public void deny(final String cidr) {
+    deny(cidr, MIN_PORT, MAX_PORT);
+  }
+
+  /**
+   * Denies a range of ports for the addresses in a CIDR block.
+   *
+   * @param cidr the address or CIDR block, ie {@code 10.0.0.0/8}, without a prefix length this is a
+   *        single address
+   * @param lowPort the lowest remote port to match
+   * @param highPort the highest remote port to match
+   */
+  public void deny(final String cidr, final int lowPort, final int highPort) {
+    addRule(parseRule(FilterAction.Deny, cidr, lowPort, highPort));
+  }
+
+  /**
+   * Adds a rule for a range of ports on the addresses in a CIDR block.
+   *
+   * @param action the action for addresses matched by this rule
+   * @param address an address in the block, bits past the prefix length are ignored
+   * @param prefixLength the number of leading bits of the address to match
+   * @param lowPort the lowest remote port to match
+   * @param highPort the highest remote port to match
+   */
+  public void addRule(final FilterAction action, final InetAddress address, final int prefixLength,
+                      final int lowPort, final int highPort) {
+    ArgumentVerifier.assertNotNull(address, "address");
+    addRule(new Rule(action, address.getAddress(), prefixLength, lowPort, highPort));
+  }
+
+  private synchronized void addRule(final Rule rule) {
+    rules.add(rule);
+    rebuild();
+  }
+
+  /**
+   * Removes all rules, allow and deny, which were added for a CIDR block.
+   *
+   * @param cidr the address or CIDR block, in the same form the rules were added with
+   * @return {@code true} if any rules were removed
+   */
+  public synchronized boolean remove(final String cidr) {
+    final Rule match = parseRule(FilterAction.Deny, cidr, MIN_PORT, MAX_PORT);
+    boolean removed = false;
+    final Iterator<Rule> it = rules.iterator();
+    while(it.hasNext()) {
+      final Rule r = it.next();
+      if(r.prefixLength == match.prefixLength && Arrays.equals(r.address, match.address)) {
+        it.remove();
+        removed = true;
+      }
+    }
+    if(removed) {
+      rebuild();
+    }
+    return removed;
+  }
+
+  /**
+   * Removes all rules, leaving only the default action.
+   */
+  public synchronized void clear() {
+    rules.clear();
+    rebuild();
+  }
+
+  /**
+   * @return the number of rules in this filter
+   */
+  public synchronized int getRuleCount() {
+    return rules.size();
+  }
+
+  /**
+   * Checks if a remote address is allowed.  An unresolved address gets the default action.
+   *
+   * @param isa the remote address and port to check
+   * @return {@code true} if the address is allowed
+   */
+  public boolean isAllowed(final InetSocketAddress isa) {
+    return isAllowed(isa.getAddress(), isa.getPort());
+  }
+
+  /**
+   * Checks if a remote address is allowed.
+   *
+   * @param address the remote address to check, or {@code null} for the default action
+   * @param port the remote port to check
+   * @return {@code true} if the address is allowed
+   */
+  public boolean isAllowed(final InetAddress address, final int port) {
+    return getAction(address, port) == FilterAction.Allow;
+  }
+
+  /**
+   * Gets the action for a remote address.
+   *
+   * @param address the remote address to check, or {@code null} for the default action
+   * @param port the remote port to check
+   * @return the {@link FilterAction} of the longest matching rule, or the default action
+   */
+  public FilterAction getAction(final InetAddress address, final int port) {
+    if(address == null) {
+      return defaultAction;
+    }
+    final Tries t = tries;
+    final byte[] addr = address.getAddress();
+    final Node root = addr.length == 4 ? t.ipv4 : t.ipv6;
+    if(root == null) {
+      return defaultAction;
+    }
+    final FilterAction action = root.lookup(addr, port);
+    return action == null ? defaultAction : action;
+  }
+
+  private void rebuild() {
+    Node ipv4 = null;
+    Node ipv6 = null;
+    for(final Rule r : rules) {
+      if(r.address.length == 4) {
+        if(ipv4 == null) {
+          ipv4 = new Node(new byte[4], 0);
+        }
+        ipv4.insert(r);
+      } else {
+        if(ipv6 == null) {
+          ipv6 = new Node(new byte[16], 0);
+        }
+        ipv6.insert(r);
+      }
+    }
+    tries = new Tries(ipv4, ipv6);
+  }
+
+  private static Rule parseRule(final FilterAction action, final String cidr,
+                                final int lowPort, final int highPort) {
+    ArgumentVerifier.assertNotNull(cidr, "cidr");
+    final int slash = cidr.indexOf('/');
+    final String host = slash < 0 ? cidr : cidr.substring(0, slash);
+    final byte[] address;
+    try {
+      address = InetAddress.getByName(host).getAddress();
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException("Invalid address: " + cidr, e);
+    }
+    final int prefixLength;
+    if(slash < 0) {
+      prefixLength = address.length * 8;
+    } else {
+      try {
+        prefixLength = Integer.parseInt(cidr.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid prefix length: " + cidr, e);
+      }
+    }
+    return new Rule(action, address, prefixLength, lowPort, highPort);
+  }
+
+  private static int bitAt(final byte[] addr, final int bit) {
+    return (addr[bit >> 3] >> (7 - (bit & 7))) & 1;
+  }
+
+  private static int commonPrefixLength(final byte[] a, final byte[] b, final int max) {
+    for(int i = 0; i * 8 < max; i++) {
+      final int diff = (a[i] ^ b[i]) & 0xff;
+      if(diff != 0) {
+        return Math.min(max, i * 8 + Integer.numberOfLeadingZeros(diff) - 24);
+      }
+    }
+    return max;
+  }
+
+  private static byte[] mask(final byte[] addr, final int prefixLength) {
+    final byte[] masked = new byte[addr.length];
+    final int fullBytes = prefixLength >> 3;
+    System.arraycopy(addr, 0, masked, 0, fullBytes);
+    if((prefixLength & 7) != 0) {
+      masked[fullBytes] = (byte)(addr[fullBytes] & (0xff << (8 - (prefixLength & 7))));
+    }
+    return masked;
+  }
+
+  /**
+   * The tries for each address family, swapped together when the rules change.
+   */
+  private static class Tries {
+    private final Node ipv4;
+    private final Node ipv6;
+
+    private Tries(final Node ipv4, final Node ipv6) {
+      this.ipv4 = ipv4;
+      this.ipv6 = ipv6;
+    }
+  }
+
+  /**
+   * A single allow or deny rule.
+   */
+  private static class Rule {
+    private final FilterAction action;
+    private final byte[] address;
+    private final int prefixLength;
+    private final int lowPort;
+    private final int highPort;
+
+    private Rule(final FilterAction action, final byte[] address, final int prefixLength,
+                 final int lowPort, final int highPort) {
+      ArgumentVerifier.assertNotNull(action, "action");
+      if(address.length != 4 && address.length != 16) {
+        throw new IllegalArgumentException("Unknown address length: " + address.length);
+      }
+      if(prefixLength < 0 || prefixLength > address.length * 8) {
+        throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+      }
+      if(lowPort < MIN_PORT || highPort > MAX_PORT || lowPort > highPort) {
+        throw new IllegalArgumentException("Invalid port range: " + lowPort + "-" + highPort);
+      }
+      this.action = action;
+      this.address = mask(address, prefixLength);
+      this.prefixLength = prefixLength;
+      this.lowPort = lowPort;
+      this.highPort = highPort;
+    }
+  }
+
+  /**
+   * A node in the trie, for a prefix which either has rules or where two branches split.  Nodes
+   * are only modified while the trie is being built, before it is published.
+   */
+  private static class Node {
+    private final byte[] prefix;
+    private final int length;
+    private final Node[] children = new Node[2];
+    private Rule[] rules = NO_RULES;
+
+    private Node(final byte[] prefix, final int length) {
+      this.prefix = prefix;
+      this.length = length;
+    }
+
+    private void insert(final Rule rule) {
+      Node parent = this;
+      while(parent.length != rule.prefixLength) {
+        final int bit = bitAt(rule.address, parent.length);
+        final Node child = parent.children[bit];
+        if(child == null) {
+          final Node leaf = new Node(rule.address, rule.prefixLength);
+          leaf.addRule(rule);
+          parent.children[bit] = leaf;
+          return;
+        }
+        final int common = commonPrefixLength(rule.address, child.prefix,
+                                              Math.min(rule.prefixLength, child.length));
+        if(common == child.length) {
+          parent = child;
+          continue;
+        }
+        // the new prefix diverges from the child, or is a prefix of it, so split the edge
+        final Node split = new Node(mask(rule.address, common), common);
+        split.children[bitAt(child.prefix, common)] = child;
+        parent.children[bit] = split;
+        if(common == rule.prefixLength) {
+          split.addRule(rule);
+        } else {
+          final Node leaf = new Node(rule.address, rule.prefixLength);
+          leaf.addRule(rule);
+          split.children[bitAt(rule.address, common)] = leaf;
+        }
+        return;
+      }
+      parent.addRule(rule);
+    }
+
+    private void addRule(final Rule rule) {
+      rules = Arrays.copyOf(rules, rules.length + 1);
+      rules[rules.length - 1] = rule;
+    }
+
+    private FilterAction lookup(final byte[] addr, final int port) {
+      FilterAction result = null;
+      Node node = this;
+      while(node != null && commonPrefixLength(addr, node.prefix, node.length) == node.length) {
+        final FilterAction action = node.match(port);
+        if(action != null) {
+          result = action;
+        }
+        if(node.length == addr.length * 8) {
+          break;
+        }
+        node = node.children[bitAt(addr, node.length)];
+      }
+      return result;
+    }
+
+    private FilterAction match(final int port) {
+      FilterAction result = null;
+      for(final Rule r : rules) {
+        if(port >= r.lowPort && port <= r.highPort) {
+          if(r.action == FilterAction.Deny) {
+            return FilterAction.Deny;
+          }
+          result = FilterAction.Allow;
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package org.threadly.litesockets.utils;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage for the counters of a {@link SimpleByteStats}.  How the counters are stored depends on 
+ * how many threads update them, see {@link Striped} and {@link SingleWriter}.
+ */
+abstract class ByteStatsCounters {
+  /**
+   * Record that a syscall was made against the socket (read, write, send or receive).
+   */
+  protected abstract void addSyscall();
+  
+  /**
+   * Increment the bytes written by the provided size, and the write operations by one.
+   * 
+   * @param size the number of bytes written, will not be negative
+   */
+  protected abstract void addWrite(int size);
+  
+  /**
+   * Increment the bytes read by the provided size, and the read operations by one.
+   * 
+   * @param size the number of bytes read, will not be negative
+   */
+  protected abstract void addRead(int size);
+  
+  /**
+   * Reset all counters back to zero.
+   */
+  protected abstract void reset();
+  
+  protected abstract long getBytesRead();
+  
+  protected abstract long getBytesWritten();
+  
+  protected abstract long getReadOperations();
+  
+  protected abstract long getWriteOperations();
+  
+  protected abstract long getSyscalls();
+  
+  /**
+   * Counters using {@link LongAdder}'s so that they can be updated from many threads at once with 
+   * minimal contention.
+   */
+  protected static final class Striped extends ByteStatsCounters {
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder readOperations = new LongAdder();
+    private final LongAdder writeOperations = new LongAdder();
+    private final LongAdder syscalls = new LongAdder();
+    
+    @Override
+    protected void addSyscall() {
+      syscalls.increment();
+    }
+
+    @Override
+    protected void addWrite(final int size) {
+      bytesWritten.add(size);
+      writeOperations.increment();
+    }
+
+    @Override
+    protected void addRead(final int size) {
+      bytesRead.add(size);
+      readOperations.increment();
+    }
+
+    @Override
+    protected void reset() {
+      bytesRead.reset();
+      bytesWritten.reset();
+      readOperations.reset();
+      writeOperations.reset();
+      syscalls.reset();
+    }
+
+    @Override
+    protected long getBytesRead() {
+      return bytesRead.sum();
+    }
+
+    @Override
+    protected long getBytesWritten() {
+      return bytesWritten.sum();
+    }
+
+    @Override
+    protected long getReadOperations() {
+      return readOperations.sum();
+    }
+
+    @Override
+    protected long getWriteOperations() {
+      return writeOperations.sum();
+    }
+
+    @Override
+    protected long getSyscalls() {
+      return syscalls.sum();
+    }
+  }
+  
+  /**
+   * Counters which only have a single thread updating each one at a time.  They are plain longs 
+   * published with ordered (release) stores, so there is no contention or cell memory overhead.  
+   * Reads from other threads will see a recent, but not necessarily the latest value.
+   */
+  protected static final class SingleWriter extends ByteStatsCounters {
+    private static final AtomicLongFieldUpdater<SingleWriter> BYTES_READ = 
+        AtomicLongFieldUpdater.newUpdater(SingleWriter.class, "bytesRead");
+    private static final AtomicLongFieldUpdater<SingleWriter> BYTES_WRITTEN = 
+        AtomicLongFieldUpdater.newUpdater(SingleWriter.class, "bytesWritten");
+    private static final AtomicLongFieldUpdater<SingleWriter> READ_OPERATIONS = 
+        AtomicLongFieldUpdater.newUpdater(SingleWriter.class, "readOperations");
+    private static final AtomicLongFieldUpdater<SingleWriter> WRITE_OPERATIONS = 
+        AtomicLongFieldUpdater.newUpdater(SingleWriter.class, "writeOperations");
+    private static final AtomicLongFieldUpdater<SingleWriter> SYSCALLS = 
+        AtomicLongFieldUpdater.newUpdater(SingleWriter.class, "syscalls");
+    
+    private volatile long bytesRead = 0;
+    private volatile long bytesWritten = 0;
+    private volatile long readOperations = 0;
+    private volatile long writeOperations = 0;
+    private volatile long syscalls = 0;
+    
+    @Override
+    protected void addSyscall() {
+      SYSCALLS.lazySet(this, syscalls + 1);
+    }
+
+    @Override
+    protected void addWrite(final int size) {
+      BYTES_WRITTEN.lazySet(this, bytesWritten + size);
+      WRITE_OPERATIONS.lazySet(this, writeOperations + 1);
+    }
+
+    @Override
+    protected void addRead(final int size) {
+      BYTES_READ.lazySet(this, bytesRead + size);
+      READ_OPERATIONS.lazySet(this, readOperations + 1);
+    }
+
+    @Override
+    protected void reset() {
+      bytesRead = 0;
+      bytesWritten = 0;
+      readOperations = 0;
+      writeOperations = 0;
+      syscalls = 0;
+    }
+
+    @Override
+    protected long getBytesRead() {
+      return bytesRead;
+    }
+
+    @Override
+    protected long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    @Override
+    protected long getReadOperations() {
+      return readOperations;
+    }
+
+    @Override
+    protected long getWriteOperations() {
+      return writeOperations;
+    }
+
+    @Override
+    protected long getSyscalls() {
+      return syscalls;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package org.threadly.litesockets.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.threadly.util.ArgumentVerifier;
+import org.threadly.util.Clock;
+
+/**
+ * Tracks the items with the largest weight (ie bytes) added over fixed windows of time, using the
+ * Space-Saving algorithm.  At most {@code capacity} items are tracked at once, when a new item is
+ * added while full it replaces the item with the smallest count, inheriting that count as its
+ * error.  Any item whose true weight in a window was more than {@code 1/capacity} of the window
+ * total is guaranteed to be tracked.
+ *
+ * <p>Counters are kept in an indexed min-heap so an add is O(log capacity).  Once a window has
+ * completed its items are sorted into a snapshot.  Whichever add or {@link #getTopItems(int)} call
+ * first sees the window has ended makes that snapshot, which is O(capacity log capacity) and holds
+ * the lock.  Other calls to {@link #getTopItems(int)} just return the snapshot without locking.</p>
+ *
+ * <p>All adds share one lock (and box the heap position of new items), so when used from many
+ * selector threads at once they are serialized on this tracker.  It is intended to be enabled when
+ * looking for heavy hitters, not always on.</p>
+ *
+ * @param <T> the type of item being tracked
+ */
+public class HeavyHitterTracker<T> {
+  private final int capacity;
+  private final long windowMillis;
+  private final HashMap<T, Integer> positions;
+  private final Object[] items;
+  private final long[] counts;
+  private final long[] errors;
+  private int size = 0;
+  // volatile so getTopItems can check it without the lock, always set after lastWindow
+  private volatile long windowEnd;
+  private volatile List<Entry<T>> lastWindow = Collections.emptyList();
+
+  /**
+   * Constructs a new tracker.
+   *
+   * @param capacity the maximum number of items to track at once
+   * @param windowMillis the length of each window in milliseconds
+   */
+  public HeavyHitterTracker(final int capacity, final long windowMillis) {
+    this(capacity, windowMillis, Clock.lastKnownForwardProgressingMillis());
+  }
+
+  protected HeavyHitterTracker(final int capacity, final long windowMillis, final long nowMillis) {
+    ArgumentVerifier.assertGreaterThanZero(capacity, "capacity");
+    ArgumentVerifier.assertGreaterThanZero(windowMillis, "windowMillis");
+    this.capacity = capacity;
+    this.windowMillis = windowMillis;
+    this.positions = new HashMap<>(capacity * 2);
+    this.items = new Object[capacity];
+    this.counts = new long[capacity];
+    this.errors = new long[capacity];
+    this.windowEnd = nowMillis + windowMillis;
+  }
+
+  /**
+   * @return the maximum number of items tracked at once
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the length of each window in milliseconds
+   */
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  /**
+   * Adds weight to an item in the current window.
+   *
+   * @param item the item to add weight to
+   * @param weight the weight to add
+   */
+  public void add(final T item, final long weight) {
+    add(item, weight, Clock.lastKnownForwardProgressingMillis());
+  }
+
+  protected synchronized void add(final T item, final long weight, final long nowMillis) {
+    if(nowMillis >= windowEnd) {
+      rotate(nowMillis);
+    }
+    final Integer pos = positions.get(item);
+    if(pos != null) {
+      counts[pos] += weight;
+      siftDown(pos);
+    } else if(size < capacity) {
+      items[size] = item;
+      counts[size] = weight;
+      errors[size] = 0;
+      positions.put(item, size);
+      siftUp(size++);
+    } else {
+      // replace the smallest counter, its count becomes the new items possible over estimation
+      positions.remove(items[0]);
+      items[0] = item;
+      errors[0] = counts[0];
+      counts[0] += weight;
+      positions.put(item, 0);
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Returns the items with the largest weight from the most recently completed window, largest
+   * first.
+   *
+   * <p>If the current window has ended this call makes the snapshot of it, otherwise the existing
+   * snapshot is returned without locking.</p>
+   *
+   * @param count the maximum number of items to return
+   * @return an unmodifiable list of up to {@code count} {@link Entry}s
+   */
+  public List<Entry<T>> getTopItems(final int count) {
+    return getTopItems(count, Clock.lastKnownForwardProgressingMillis());
+  }
+
+  protected List<Entry<T>> getTopItems(final int count, final long nowMillis) {
+    ArgumentVerifier.assertNotNegative(count, "count");
+    if(nowMillis >= windowEnd) {
+      synchronized(this) {
+        if(nowMillis >= windowEnd) {
+          rotate(nowMillis);
+        }
+      }
+    }
+    final List<Entry<T>> result = lastWindow;
+    if(result.size() <= count) {
+      return result;
+    }
+    return result.subList(0, count);
+  }
+
+  /**
+   * Clears all tracked items, including the last completed window.
+   */
+  public synchronized void reset() {
+    clear();
+    lastWindow = Collections.emptyList();
+    windowEnd = Clock.lastKnownForwardProgressingMillis() + windowMillis;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void rotate(final long nowMillis) {
+    if(nowMillis >= windowEnd + windowMillis || size == 0) {
+      // nothing was added during the window which just completed
+      lastWindow = Collections.emptyList();
+    } else {
+      final ArrayList<Entry<T>> snapshot = new ArrayList<>(size);
+      for(int i = 0; i < size; i++) {
+        snapshot.add(new Entry<>((T)items[i], counts[i], errors[i]));
+      }
+      snapshot.sort((a, b) -> Long.compare(b.count, a.count));
+      lastWindow = Collections.unmodifiableList(snapshot);
+    }
+    clear();
+    windowEnd = nowMillis - ((nowMillis - windowEnd) % windowMillis) + windowMillis;
+  }
+
+  private void clear() {
+    positions.clear();
+    Arrays.fill(items, 0, size, null);
+    size = 0;
+  }
+
+  private void siftUp(int pos) {
+    while(pos > 0) {
+      final int parent = (pos - 1) >>> 1;
+      if(counts[parent] <= counts[pos]) {
+        break;
+      }
+      swap(pos, parent);
+      pos = parent;
+    }
+  }
+
+  private void siftDown(int pos) {
+    while(true) {
+      final int left = (pos << 1) + 1;
+      if(left >= size) {
+        break;
+      }
+      final int right = left + 1;
+      final int smallest = right < size && counts[right] < counts[left] ? right : left;
+      if(counts[pos] <= counts[smallest]) {
+        break;
+      }
+      swap(pos, smallest);
+      pos = smallest;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void swap(final int a, final int b) {
+    final Object item = items[a];
+    final long count = counts[a];
+    final long error = errors[a];
+    items[a] = items[b];
+    counts[a] = counts[b];
+    errors[a] = errors[b];
+    items[b] = item;
+    counts[b] = count;
+    errors[b] = error;
+    positions.put((T)items[a], a);
+    positions.put((T)items[b], b);
+  }
+
+  /**
+   * An item and its estimated weight from a completed window.
+   *
+   * @param <T> the type of item being tracked
+   */
+  public static class Entry<T> {
+    private final T item;
+    private final long count;
+    private final long error;
+
+    protected Entry(final T item, final long count, final long error) {
+      this.item = item;
+      this.count = count;
+      this.error = error;
+    }
+
+    /**
+     * @return the tracked item
+     */
+    public T getItem() {
+      return item;
+    }
+
+    /**
+     * @return the estimated weight of the item, this may over estimate by up to {@link #getError()}
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the most {@link #getCount()} may over estimate the items weight by
+     */
+    public long getError() {
+      return error;
+    }
+
+    /**
+     * @return the weight the item is guaranteed to have had during the window
+     */
+    public long getGuaranteedCount() {
+      return count - error;
+    }
+
+    @Override
+    public String toString() {
+      return item + ":" + count + "(-" + error + ")";
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.threadly.litesockets.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A log-linear histogram for recording latencies (in nanoseconds), similar in layout to an
+ * HdrHistogram.  Values are grouped by their power of 2, and each power of 2 is split into
+ * {@value #SUB_BUCKET_COUNT} linear sub-buckets, so any recorded value can be reported back with
+ * an error of at most ~3%.
+ *
+ * <p>This can be recorded into from many threads at once, each record is a couple atomic
+ * increments.  Queries walk the bucket array and are not atomic with concurrent records.</p>
+ */
+public class LatencyHistogram {
+  protected static final int SUB_BUCKET_BITS = 5;
+  protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalValue = new LongAdder();
+  private final LongAccumulator maxValue = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Record a single value into the histogram.  Negative values are recorded as zero.
+   *
+   * @param nanos the latency in nanoseconds to record
+   */
+  public void recordValue(final long nanos) {
+    final long value = Math.max(0, nanos);
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.increment();
+    totalValue.add(value);
+    maxValue.accumulate(value);
+  }
+
+  /**
+   * @return the number of values recorded since creation or {@link #reset()}
+   */
+  public long getCount() {
+    return totalCount.sum();
+  }
+
+  /**
+   * @return the largest value recorded in nanoseconds, or {@code 0} if nothing has been recorded
+   */
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  /**
+   * @return the average of all recorded values in nanoseconds, or {@code 0} if nothing has been recorded
+   */
+  public double getMean() {
+    final long count = totalCount.sum();
+    if(count == 0) {
+      return 0;
+    }
+    return totalValue.sum() / (double)count;
+  }
+
+  /**
+   * Returns the value at the provided percentile.  The returned value is the highest value which
+   * would be counted in the same bucket as the percentile value (capped at {@link #getMax()}).
+   *
+   * @param percentile the percentile to get, between {@code 0} and {@code 100}
+   * @return the value in nanoseconds at the percentile, or {@code 0} if nothing has been recorded
+   */
+  public long getValueAtPercentile(final double percentile) {
+    if(percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    final long count = totalCount.sum();
+    if(count == 0) {
+      return 0;
+    }
+    final long target = Math.max(1, (long)Math.ceil((percentile / 100) * count));
+    final long max = maxValue.get();
+    long seen = 0;
+    for(int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if(seen >= target) {
+        return Math.min(max, bucketHighestValue(i));
+      }
+    }
+    // records raced with us, the max is the best answer we have
+    return max;
+  }
+
+  /**
+   * Clears all recorded values.
+   */
+  public void reset() {
+    for(int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.reset();
+    totalValue.reset();
+    maxValue.reset();
+  }
+
+  protected static int bucketIndex(final long value) {
+    if(value < SUB_BUCKET_COUNT) {
+      return (int)value;
+    }
+    final int magnitude = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int)(value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return ((magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+  }
+
+  protected static long bucketHighestValue(final int index) {
+    if(index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    final int shift = (index / SUB_BUCKET_COUNT) - 1;
+    final long lowest = (long)(SUB_BUCKET_COUNT + (index % SUB_BUCKET_COUNT)) << shift;
+    return lowest + ((1L << shift) - 1);
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram:count=" + getCount() + ",p50=" + getValueAtPercentile(50) +
+             ",p99=" + getValueAtPercentile(99) + ",max=" + getMax();
+  }
+}
@@ -15,10 +15,12 @@ import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
 
+import org.threadly.concurrent.future.FutureCallback;
 import org.threadly.concurrent.future.ListenableFuture;
 import org.threadly.concurrent.future.SettableListenableFuture;
 import org.threadly.litesockets.Client;
 import org.threadly.litesockets.ClientSettableListenableFuture;
+import org.threadly.litesockets.SocketEventRecorder;
 import org.threadly.litesockets.buffers.MergedByteBuffers;
 import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
 import org.threadly.litesockets.buffers.SimpleMergedByteBuffers;
@@ -82,6 +84,21 @@ public class SSLProcessor {
    */
   public ListenableFuture<SSLSession> doHandShake() {
     if(startedHandshake.compareAndSet(false, true)) {
+      final SocketEventRecorder eventRecorder = client.getClientsSocketExecuter().getSocketEventRecorder();
+      if(eventRecorder != null) {
+        final long startNanos = System.nanoTime();
+        handshakeFuture.callback(new FutureCallback<SSLSession>() {
+          @Override
+          public void handleResult(SSLSession result) {
+            eventRecorder.sslHandshakeFinished(client, System.nanoTime() - startNanos, result, null);
+          }
+
+          @Override
+          public void handleFailure(Throwable t) {
+            eventRecorder.sslHandshakeFinished(client, System.nanoTime() - startNanos, null, t);
+          }
+        });
+      }
       try {
         ssle.beginHandshake();
         if(ssle.getHandshakeStatus() == NEED_WRAP) {
@@ -6,37 +6,119 @@ import org.threadly.util.ArgumentVerifier;
 import org.threadly.util.Clock;
 
 /**
- * Simple class for trying byteStats.  This implementation only tracks global stats. 
+ * Simple class for trying byteStats.  This implementation only tracks global stats.  Counters are 
+ * stored in {@link LongAdder}'s so they may be updated from many threads at once, see 
+ * {@link SingleWriterByteStats} for stats which are only ever updated by one thread at a time.
+ * 
+ * <p>Along with bytes this tracks the number of read and write operations (each call to 
+ * {@link #addRead(int)} / {@link #addWrite(int)}), as well as the number of socket syscalls made.  
+ * Syscalls include reads and writes which did not move any data.</p>
+ * 
+ * <p>Recent rates over a {@link RateWindow} or as an exponentially weighted moving average are also 
+ * available.  Since these require some extra memory they are only tracked once one of the recent 
+ * rate functions has been called, or {@link #trackRecentRates()} has been called.  If tracking was not 
+ * already enabled the first call to a recent rate function enables it and returns zero.</p>
  */
 public class SimpleByteStats {
-  private final LongAdder bytesRead = new LongAdder();
-  private final LongAdder bytesWritten = new LongAdder();
+  private final ByteStatsCounters counters;
   private volatile long startTime = Clock.lastKnownForwardProgressingMillis();
+  private volatile WindowedRateTracker rateTracker = null;
+  
+  /**
+   * Constructs a new stats object with {@link LongAdder} counters.
+   */
+  public SimpleByteStats() {
+    this(new ByteStatsCounters.Striped());
+  }
+  
+  SimpleByteStats(final ByteStatsCounters counters) {
+    this.counters = counters;
+  }
   
   protected void addWrite(final int size) {
     ArgumentVerifier.assertNotNegative(size, "size");
     
-    bytesWritten.add(size);
+    counters.addWrite(size);
+    final WindowedRateTracker rateTracker = this.rateTracker;
+    if(rateTracker != null) {
+      rateTracker.addWrite(Clock.lastKnownForwardProgressingMillis(), size);
+    }
   }
   
   protected void addRead(final int size) {
     ArgumentVerifier.assertNotNegative(size, "size");
     
-    bytesRead.add(size);
+    counters.addRead(size);
+    final WindowedRateTracker rateTracker = this.rateTracker;
+    if(rateTracker != null) {
+      rateTracker.addRead(Clock.lastKnownForwardProgressingMillis(), size);
+    }
+  }
+  
+  /**
+   * Start tracking the counts needed for the recent rate functions if they are not already being 
+   * tracked.  Tracking adds a small cost to every read and write, so it is off until this is called 
+   * or one of the recent rate functions is first used.  Calling this before data is moved means 
+   * the first recent rate requested will include that data.
+   */
+  public void trackRecentRates() {
+    getRateTracker();
+  }
+  
+  private WindowedRateTracker getRateTracker() {
+    WindowedRateTracker rateTracker = this.rateTracker;
+    if(rateTracker == null) {
+      synchronized(this) {
+        rateTracker = this.rateTracker;
+        if(rateTracker == null) {
+          rateTracker = new WindowedRateTracker(Clock.lastKnownForwardProgressingMillis());
+          this.rateTracker = rateTracker;
+        }
+      }
+    }
+    return rateTracker;
+  }
+  
+  /**
+   * Record that a syscall was made against the socket (read, write, send or receive).
+   */
+  protected void addSyscall() {
+    counters.addSyscall();
   }
   
   /**
    * @return the total bytes marked as Read since creation.
    */
   public long getTotalRead() {
-    return bytesRead.sum();
+    return counters.getBytesRead();
   }
 
   /**
    * @return the total bytes marked as Written since creation.
    */
   public long getTotalWrite() {
-    return bytesWritten.sum();
+    return counters.getBytesWritten();
+  }
+  
+  /**
+   * @return the total number of read operations since creation.
+   */
+  public long getTotalReadOperations() {
+    return counters.getReadOperations();
+  }
+
+  /**
+   * @return the total number of write operations since creation.
+   */
+  public long getTotalWriteOperations() {
+    return counters.getWriteOperations();
+  }
+  
+  /**
+   * @return the total number of socket syscalls since creation.
+   */
+  public long getTotalSyscalls() {
+    return counters.getSyscalls();
   }
     
   /**
@@ -44,7 +126,7 @@ public class SimpleByteStats {
    */
   public double getReadRate() {
     final double sec = (Clock.lastKnownForwardProgressingMillis() - startTime)/1000.0;
-    return (bytesRead.sum()/sec);
+    return (getTotalRead()/sec);
   }
   
   /**
@@ -52,7 +134,121 @@ public class SimpleByteStats {
    */
   public double getWriteRate() {
     final double sec = (Clock.lastKnownForwardProgressingMillis() - startTime)/1000.0;
-    return (bytesWritten.sum()/sec);
+    return (getTotalWrite()/sec);
+  }
+  
+  /**
+   * Returns the average bytes read per second over the most recent completed seconds of the window.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @param window the window of time to calculate the rate over
+   * @return the average rate per second that bytes have been read over the window
+   */
+  public double getReadRate(final RateWindow window) {
+    return getRateTracker().getRate(Clock.lastKnownForwardProgressingMillis(), 
+                                    WindowedRateTracker.READ_BYTES, window);
+  }
+  
+  /**
+   * Returns the average bytes written per second over the most recent completed seconds of the window.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @param window the window of time to calculate the rate over
+   * @return the average rate per second that bytes have been written over the window
+   */
+  public double getWriteRate(final RateWindow window) {
+    return getRateTracker().getRate(Clock.lastKnownForwardProgressingMillis(), 
+                                    WindowedRateTracker.WRITE_BYTES, window);
+  }
+  
+  /**
+   * Returns the average read operations per second over the most recent completed seconds of the 
+   * window.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @param window the window of time to calculate the rate over
+   * @return the average rate per second of read operations over the window
+   */
+  public double getReadOperationRate(final RateWindow window) {
+    return getRateTracker().getRate(Clock.lastKnownForwardProgressingMillis(), 
+                                    WindowedRateTracker.READ_OPERATIONS, window);
+  }
+  
+  /**
+   * Returns the average write operations per second over the most recent completed seconds of the 
+   * window.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @param window the window of time to calculate the rate over
+   * @return the average rate per second of write operations over the window
+   */
+  public double getWriteOperationRate(final RateWindow window) {
+    return getRateTracker().getRate(Clock.lastKnownForwardProgressingMillis(), 
+                                    WindowedRateTracker.WRITE_OPERATIONS, window);
+  }
+  
+  /**
+   * Returns the exponentially weighted moving average of bytes read per second.  The average is 
+   * updated once a second, with a decay time constant of 10 seconds.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @return the EWMA rate per second that bytes have been read
+   */
+  public double getEwmaReadRate() {
+    return getRateTracker().getEwmaRate(Clock.lastKnownForwardProgressingMillis(), 
+                                        WindowedRateTracker.READ_BYTES);
+  }
+  
+  /**
+   * Returns the exponentially weighted moving average of bytes written per second.  The average is 
+   * updated once a second, with a decay time constant of 10 seconds.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @return the EWMA rate per second that bytes have been written
+   */
+  public double getEwmaWriteRate() {
+    return getRateTracker().getEwmaRate(Clock.lastKnownForwardProgressingMillis(), 
+                                        WindowedRateTracker.WRITE_BYTES);
+  }
+  
+  /**
+   * Returns the exponentially weighted moving average of read operations per second.  The average 
+   * is updated once a second, with a decay time constant of 10 seconds.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @return the EWMA rate per second of read operations
+   */
+  public double getEwmaReadOperationRate() {
+    return getRateTracker().getEwmaRate(Clock.lastKnownForwardProgressingMillis(), 
+                                        WindowedRateTracker.READ_OPERATIONS);
+  }
+  
+  /**
+   * Returns the exponentially weighted moving average of write operations per second.  The average 
+   * is updated once a second, with a decay time constant of 10 seconds.
+   * 
+   * <p>If recent rates are not yet tracked this starts tracking them and returns zero, see 
+   * {@link #trackRecentRates()}.</p>
+   * 
+   * @return the EWMA rate per second of write operations
+   */
+  public double getEwmaWriteOperationRate() {
+    return getRateTracker().getEwmaRate(Clock.lastKnownForwardProgressingMillis(), 
+                                        WindowedRateTracker.WRITE_OPERATIONS);
   }
   
   /**
@@ -61,7 +257,19 @@ public class SimpleByteStats {
    */
   public void resetStats() {
     startTime = Clock.lastKnownForwardProgressingMillis();
-    bytesRead.reset();
-    bytesWritten.reset();
+    counters.reset();
+    if(rateTracker != null) {
+      synchronized(this) {
+        rateTracker = new WindowedRateTracker(Clock.lastKnownForwardProgressingMillis());
+      }
+    }
+  }
+  
+  /**
+   * The windows of time recent rates can be requested over.  Only completed seconds are included in 
+   * a window, so the data is at most 1 second old.
+   */
+  public enum RateWindow {
+    OneSecond, TenSeconds, OneMinute
   }
 }
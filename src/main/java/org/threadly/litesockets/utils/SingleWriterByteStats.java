@@ -0,0 +1,17 @@
+package org.threadly.litesockets.utils;
+
+/**
+ * {@link SimpleByteStats} for stats which only have a single thread updating each counter at a 
+ * time (ie a clients own thread).  Counters are plain longs published with ordered (release) 
+ * stores, so there is no contention or cell memory overhead like there is with the 
+ * {@link java.util.concurrent.atomic.LongAdder}'s of a {@link SimpleByteStats}.  Reads from other 
+ * threads will see a recent, but not necessarily the latest value.
+ * 
+ * <p>NOTE: If multiple threads update the same counter at once updates can be lost.  Those 
+ * updates must be externally synchronized, or a {@link SimpleByteStats} used instead.</p>
+ */
+public class SingleWriterByteStats extends SimpleByteStats {
+  public SingleWriterByteStats() {
+    super(new ByteStatsCounters.SingleWriter());
+  }
+}
@@ -0,0 +1,239 @@
+package org.threadly.litesockets.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.threadly.litesockets.utils.SimpleByteStats.RateWindow;
+import org.threadly.util.ArgumentVerifier;
+import org.threadly.util.Clock;
+
+/**
+ * A token bucket used to pace writes to a byte rate.  The bucket holds up to a burst size worth of
+ * tokens (bytes), and is refilled at the rate as time passes.  Writes take tokens before going to
+ * the socket, and once the bucket is empty the write is deferred until enough tokens have been
+ * refilled (see {@link #getDelayMillis(long)}).
+ *
+ * <p>The rate and burst size can not be changed, a new bucket should be made for a new limit.  The
+ * bucket starts full.  This is threadsafe, a single bucket is often shared by every client of a
+ * {@link org.threadly.litesockets.SocketExecuter}.</p>
+ */
+public class TokenBucket {
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final long rate;
+  private final long burst;
+  private final long createdNanos;
+  private long tokens;
+  private long lastRefillNanos;
+  // written bytes are the tokens taken, times are millis since the bucket was made
+  private final WindowedRateTracker recentRate = new WindowedRateTracker(0);
+  private long totalTaken = 0;
+  private long deferrals = 0;
+
+  /**
+   * Constructs a full bucket.
+   *
+   * @param bytesPerSecond the rate tokens are refilled at.
+   * @param burstBytes the most tokens the bucket can hold, and so the most that can be written at once.
+   */
+  public TokenBucket(final long bytesPerSecond, final long burstBytes) {
+    this(bytesPerSecond, burstBytes, Clock.accurateTimeNanos());
+  }
+
+  protected TokenBucket(final long bytesPerSecond, final long burstBytes, final long nowNanos) {
+    ArgumentVerifier.assertGreaterThanZero(bytesPerSecond, "bytesPerSecond");
+    ArgumentVerifier.assertGreaterThanZero(burstBytes, "burstBytes");
+    this.rate = bytesPerSecond;
+    this.burst = burstBytes;
+    this.createdNanos = nowNanos;
+    this.lastRefillNanos = nowNanos;
+    this.tokens = burstBytes;
+  }
+
+  /**
+   * @return the rate in bytes per second this bucket is refilled at.
+   */
+  public long getRate() {
+    return rate;
+  }
+
+  /**
+   * @return the most bytes this bucket can hold.
+   */
+  public long getBurst() {
+    return burst;
+  }
+
+  /**
+   * Takes as many tokens as are available up to the provided max, as long as at least the min are
+   * available.  The min keeps a write from being split into many tiny ones while the bucket
+   * refills, it is limited to the burst size.  If not enough are available the caller is expected
+   * to defer its write, which is counted in {@link #getDeferredCount()}.
+   *
+   * @param min the fewest tokens worth writing.
+   * @param max the most tokens to take.
+   * @return the number of tokens taken, 0 if there were less than the min available.
+   */
+  public long acquire(final long min, final long max) {
+    return acquire(min, max, Clock.accurateTimeNanos());
+  }
+
+  protected synchronized long acquire(final long min, final long max, final long nowNanos) {
+    refill(nowNanos);
+    if(max <= 0) {
+      return 0;
+    } else if(tokens <= 0 || tokens < Math.min(min, burst)) {
+      deferrals++;
+      return 0;
+    }
+    final long taken = Math.min(max, tokens);
+    tokens -= taken;
+    totalTaken += taken;
+    recordTaken(taken, nowNanos);
+    return taken;
+  }
+
+  /**
+   * Takes the provided number of tokens if they are all available, for writes which can not be
+   * split like datagrams.  An amount larger than the burst size is taken once the bucket is full,
+   * leaving it in debt until enough time has passed to pay it back.
+   *
+   * @param amount the number of tokens to take.
+   * @return {@code true} if the tokens were taken, {@code false} if the write should be deferred.
+   */
+  public boolean tryAcquire(final long amount) {
+    return tryAcquire(amount, Clock.accurateTimeNanos());
+  }
+
+  protected synchronized boolean tryAcquire(final long amount, final long nowNanos) {
+    refill(nowNanos);
+    if(tokens >= Math.min(amount, burst)) {
+      tokens -= amount;
+      totalTaken += amount;
+      recordTaken(amount, nowNanos);
+      return true;
+    }
+    deferrals++;
+    return false;
+  }
+
+  /**
+   * Gives back tokens which were acquired but not used, ie when the socket took less than was
+   * acquired for.
+   *
+   * @param amount the number of unused tokens.
+   */
+  public void release(final long amount) {
+    release(amount, Clock.accurateTimeNanos());
+  }
+
+  protected synchronized void release(final long amount, final long nowNanos) {
+    tokens = Math.min(burst, tokens + amount);
+    totalTaken -= amount;
+    recordTaken(-amount, nowNanos);
+  }
+
+  /**
+   * Gets how long until the provided number of tokens will be available.  Amounts larger than the
+   * burst size are limited to the burst size.
+   *
+   * @param amount the number of tokens wanted.
+   * @return the milliseconds until the tokens are available, at least 1.
+   */
+  public long getDelayMillis(final long amount) {
+    return getDelayMillis(amount, Clock.accurateTimeNanos());
+  }
+
+  protected synchronized long getDelayMillis(final long amount, final long nowNanos) {
+    refill(nowNanos);
+    final long needed = Math.min(amount, burst) - tokens;
+    if(needed <= 0) {
+      return 1;
+    }
+    return Math.max(1, (long)Math.ceil(needed * 1000.0 / rate));
+  }
+
+  /**
+   * @return the number of tokens currently available, negative if a large datagram left it in debt.
+   */
+  public long getAvailable() {
+    return getAvailable(Clock.accurateTimeNanos());
+  }
+
+  protected synchronized long getAvailable(final long nowNanos) {
+    refill(nowNanos);
+    return tokens;
+  }
+
+  /**
+   * @return the total number of tokens taken from this bucket, this is the bytes written through it.
+   */
+  public synchronized long getTotalAcquired() {
+    return totalTaken;
+  }
+
+  /**
+   * @return the number of times a write was deferred because this bucket was empty.
+   */
+  public synchronized long getDeferredCount() {
+    return deferrals;
+  }
+
+  /**
+   * Gets the rate writes have recently gone through this bucket at, averaged over the last 10 
+   * completed seconds.  See {@link #getAchievedRate(RateWindow)}.
+   *
+   * @return the achieved bytes per second.
+   */
+  public double getAchievedRate() {
+    return getAchievedRate(RateWindow.TenSeconds);
+  }
+
+  /**
+   * Gets the rate writes have recently gone through this bucket at over a window of completed 
+   * seconds.  This will be below {@link #getRate()} when writes are not keeping the bucket empty, 
+   * and can be above it for a second following a burst.
+   *
+   * @param window the window of time to calculate the rate over.
+   * @return the achieved bytes per second.
+   */
+  public double getAchievedRate(final RateWindow window) {
+    return getAchievedRate(window, Clock.accurateTimeNanos());
+  }
+
+  protected synchronized double getAchievedRate(final RateWindow window, final long nowNanos) {
+    return recentRate.getRate(elapsedMillis(nowNanos), WindowedRateTracker.WRITE_BYTES, window);
+  }
+
+  private void recordTaken(final long amount, final long nowNanos) {
+    // released tokens are recorded as a negative write so they come out of the same second
+    recentRate.addWrite(elapsedMillis(nowNanos), 
+                        (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, amount)));
+  }
+
+  private long elapsedMillis(final long nowNanos) {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(nowNanos - createdNanos));
+  }
+
+  private void refill(final long nowNanos) {
+    final long elapsedNanos = nowNanos - lastRefillNanos;
+    if(elapsedNanos <= 0) {
+      return;
+    }
+    final long added = (long)(elapsedNanos * (double)rate / NANOS_PER_SECOND);
+    if(added <= 0) {
+      return;
+    } else if(added >= burst - tokens) {
+      tokens = burst;
+      lastRefillNanos = nowNanos;
+    } else {
+      tokens += added;
+      // only move forward by the time the whole tokens took, so fractions are not lost
+      lastRefillNanos += (long)(added * (double)NANOS_PER_SECOND / rate);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TokenBucket:rate=" + rate + ",burst=" + burst;
+  }
+}
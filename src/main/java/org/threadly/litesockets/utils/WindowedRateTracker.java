@@ -0,0 +1,171 @@
+package org.threadly.litesockets.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.threadly.litesockets.utils.SimpleByteStats.RateWindow;
+
+/**
+ * Tracks recent read / write byte and operation counts in time buckets so that rates over a sliding
+ * window, as well as an exponentially weighted moving average rate, can be calculated cheaply.
+ *
+ * <p>Counts are added into 1 second buckets without locking.  Once a second has completed it is
+ * folded into a 10 second bucket and the EWMA's (this is done lazily by the next update or query
+ * that notices the second has changed).  The 1 and 10 second windows are calculated from the
+ * completed 1 second buckets, the 1 minute window from the 10 second buckets.</p>
+ *
+ * <p>Rates are approximate, an update racing with the rollover of a second can be lost.</p>
+ */
+class WindowedRateTracker {
+  protected static final int READ_BYTES = 0;
+  protected static final int WRITE_BYTES = 1;
+  protected static final int READ_OPERATIONS = 2;
+  protected static final int WRITE_OPERATIONS = 3;
+  protected static final double EWMA_DECAY_SECONDS = 10;
+  private static final int METRIC_COUNT = 4;
+  private static final int SECOND_BUCKETS = 11;   // 10 completed seconds + the current one
+  private static final int TEN_SECOND_BUCKETS = 7; // 6 completed periods + the current one
+  private static final double EWMA_ALPHA = 1 - Math.exp(-1 / EWMA_DECAY_SECONDS);
+
+  private final AtomicLongArray secondBuckets = new AtomicLongArray(SECOND_BUCKETS * METRIC_COUNT);
+  private final long[] tenSecondBuckets = new long[TEN_SECOND_BUCKETS * METRIC_COUNT];
+  private final double[] ewmaRates = new double[METRIC_COUNT];
+  private volatile long currentSecond;
+
+  protected WindowedRateTracker(final long nowMillis) {
+    currentSecond = nowMillis / 1000;
+  }
+
+  protected void addRead(final long nowMillis, final int size) {
+    final int base = bucketBase(nowMillis);
+    secondBuckets.getAndAdd(base + READ_BYTES, size);
+    secondBuckets.getAndIncrement(base + READ_OPERATIONS);
+  }
+
+  protected void addWrite(final long nowMillis, final int size) {
+    final int base = bucketBase(nowMillis);
+    secondBuckets.getAndAdd(base + WRITE_BYTES, size);
+    secondBuckets.getAndIncrement(base + WRITE_OPERATIONS);
+  }
+
+  private int bucketBase(final long nowMillis) {
+    final long nowSecond = nowMillis / 1000;
+    if(nowSecond > currentSecond) {
+      advance(nowSecond);
+    }
+    return (int)(nowSecond % SECOND_BUCKETS) * METRIC_COUNT;
+  }
+
+  /**
+   * Returns the per second rate of a metric over the provided window of completed seconds.
+   *
+   * @param nowMillis the current time in milliseconds
+   * @param metric the metric to get the rate for (ie {@link #READ_BYTES})
+   * @param window the window to calculate the rate over
+   * @return the average per second rate over the window
+   */
+  protected synchronized double getRate(final long nowMillis, final int metric, final RateWindow window) {
+    final long nowSecond = nowMillis / 1000;
+    if(nowSecond > currentSecond) {
+      advance(nowSecond);
+    }
+    switch(window) {
+      case OneSecond:
+        return secondBucketValue(nowSecond - 1, metric);
+      case TenSeconds: {
+        long total = 0;
+        for(long s = nowSecond - 10; s < nowSecond; s++) {
+          total += secondBucketValue(s, metric);
+        }
+        return total / 10.0;
+      }
+      case OneMinute: {
+        // current period has only completed seconds folded in, so take the 5 periods before it,
+        // then use a portion of the oldest period to make up the rest of the 60 seconds
+        final long period = nowSecond / 10;
+        double total = tenSecondBucketValue(period, metric);
+        for(long p = period - 5; p < period; p++) {
+          total += tenSecondBucketValue(p, metric);
+        }
+        total += tenSecondBucketValue(period - 6, metric) * ((10 - (nowSecond % 10)) / 10.0);
+        return total / 60.0;
+      }
+      default:
+        throw new UnsupportedOperationException("Unknown window: " + window);
+    }
+  }
+
+  /**
+   * Returns the exponentially weighted moving average of the per second rate for a metric.
+   *
+   * @param nowMillis the current time in milliseconds
+   * @param metric the metric to get the rate for (ie {@link #READ_BYTES})
+   * @return the EWMA per second rate
+   */
+  protected synchronized double getEwmaRate(final long nowMillis, final int metric) {
+    final long nowSecond = nowMillis / 1000;
+    if(nowSecond > currentSecond) {
+      advance(nowSecond);
+    }
+    return ewmaRates[metric];
+  }
+
+  private long secondBucketValue(final long second, final int metric) {
+    if(second < 0) {
+      return 0;
+    }
+    return secondBuckets.get((int)(second % SECOND_BUCKETS) * METRIC_COUNT + metric);
+  }
+
+  private long tenSecondBucketValue(final long period, final int metric) {
+    if(period < 0) {
+      return 0;
+    }
+    return tenSecondBuckets[(int)(period % TEN_SECOND_BUCKETS) * METRIC_COUNT + metric];
+  }
+
+  private synchronized void advance(final long nowSecond) {
+    long second = currentSecond;
+    if(nowSecond - second > SECOND_BUCKETS + (TEN_SECOND_BUCKETS * 10)) {
+      // idle for longer than we track, just clear everything
+      fold(second);
+      for(int i = 0; i < secondBuckets.length(); i++) {
+        secondBuckets.set(i, 0);
+      }
+      for(int i = 0; i < tenSecondBuckets.length; i++) {
+        tenSecondBuckets[i] = 0;
+      }
+      final double decay = Math.exp(-(nowSecond - second - 1) / EWMA_DECAY_SECONDS);
+      for(int m = 0; m < METRIC_COUNT; m++) {
+        ewmaRates[m] *= decay;
+      }
+      currentSecond = nowSecond;
+      return;
+    }
+    while(second < nowSecond) {
+      fold(second);
+      second++;
+      // clear the bucket we are about to start using, it holds data from SECOND_BUCKETS ago
+      final int base = (int)(second % SECOND_BUCKETS) * METRIC_COUNT;
+      for(int m = 0; m < METRIC_COUNT; m++) {
+        secondBuckets.set(base + m, 0);
+      }
+      if(second % 10 == 0) {
+        final int tenBase = (int)((second / 10) % TEN_SECOND_BUCKETS) * METRIC_COUNT;
+        for(int m = 0; m < METRIC_COUNT; m++) {
+          tenSecondBuckets[tenBase + m] = 0;
+        }
+      }
+      currentSecond = second;
+    }
+  }
+
+  private void fold(final long completedSecond) {
+    final int base = (int)(completedSecond % SECOND_BUCKETS) * METRIC_COUNT;
+    final int tenBase = (int)((completedSecond / 10) % TEN_SECOND_BUCKETS) * METRIC_COUNT;
+    for(int m = 0; m < METRIC_COUNT; m++) {
+      final long value = secondBuckets.get(base + m);
+      tenSecondBuckets[tenBase + m] += value;
+      ewmaRates[m] += EWMA_ALPHA * (value - ewmaRates[m]);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package org.threadly.litesockets.perf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses {@code --name=value} style benchmark arguments.  Lists are comma separated.
+ */
+public class BenchmarkArgs {
+  private final Map<String, String> values = new HashMap<>();
+  
+  /**
+   * Parses the provided arguments.
+   * 
+   * @param args the arguments passed to main
+   * @throws IllegalArgumentException if an argument is not in the {@code --name=value} form
+   */
+  public BenchmarkArgs(final String[] args) {
+    for(final String arg : args) {
+      final int eq = arg.indexOf('=');
+      if(! arg.startsWith("--") || eq < 0) {
+        throw new IllegalArgumentException("Arguments must be in the form --name=value: " + arg);
+      }
+      values.put(arg.substring(2, eq), arg.substring(eq + 1));
+    }
+  }
+  
+  public String getString(final String name, final String defaultValue) {
+    final String value = values.get(name);
+    return value == null ? defaultValue : value;
+  }
+  
+  public int getInt(final String name, final int defaultValue) {
+    final String value = values.get(name);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+  
+  public List<Integer> getInts(final String name, final String defaultValue) {
+    final List<Integer> result = new ArrayList<>();
+    for(final String str : getStrings(name, defaultValue)) {
+      result.add(Integer.parseInt(str));
+    }
+    return result;
+  }
+  
+  public List<Boolean> getBooleans(final String name, final String defaultValue) {
+    final List<Boolean> result = new ArrayList<>();
+    for(final String str : getStrings(name, defaultValue)) {
+      result.add(Boolean.parseBoolean(str));
+    }
+    return result;
+  }
+  
+  public List<BenchmarkExecuter.Type> getExecuterTypes(final String name) {
+    final List<BenchmarkExecuter.Type> result = new ArrayList<>();
+    final String value = values.get(name);
+    if(value == null) {
+      for(final BenchmarkExecuter.Type type : BenchmarkExecuter.Type.values()) {
+        result.add(type);
+      }
+    } else {
+      for(final String str : value.split(",")) {
+        result.add(BenchmarkExecuter.Type.valueOf(str.trim()));
+      }
+    }
+    return result;
+  }
+  
+  private List<String> getStrings(final String name, final String defaultValue) {
+    final List<String> result = new ArrayList<>();
+    for(final String str : getString(name, defaultValue).split(",")) {
+      if(! str.trim().isEmpty()) {
+        result.add(str.trim());
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,97 @@
+package org.threadly.litesockets.perf;
+
+import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.litesockets.NoThreadSocketExecuter;
+import org.threadly.litesockets.SingleThreadSocketExecuter;
+import org.threadly.litesockets.SocketExecuter;
+import org.threadly.litesockets.ThreadedSocketExecuter;
+import org.threadly.util.ExceptionUtils;
+
+/**
+ * Creates, runs and shuts down a {@link SocketExecuter} of a given {@link Type} for a benchmark.
+ */
+public class BenchmarkExecuter implements AutoCloseable {
+  /**
+   * The {@link SocketExecuter} implementations which can be benchmarked.
+   */
+  public enum Type {
+    Threaded, SingleThread, NoThread
+  }
+  
+  private final Type type;
+  private final SocketExecuter se;
+  private final PriorityScheduler scheduler;
+  private final Thread selectThread;
+  private volatile boolean running = true;
+  
+  /**
+   * Creates and starts a {@link SocketExecuter}.
+   * 
+   * @param type the type of executer to create
+   */
+  public BenchmarkExecuter(final Type type) {
+    this.type = type;
+    switch(type) {
+      case Threaded:
+        scheduler = new PriorityScheduler(Runtime.getRuntime().availableProcessors());
+        se = new ThreadedSocketExecuter(scheduler);
+        selectThread = null;
+        break;
+      case SingleThread:
+        scheduler = null;
+        se = new SingleThreadSocketExecuter();
+        selectThread = null;
+        break;
+      default:
+        scheduler = null;
+        final NoThreadSocketExecuter ntse = new NoThreadSocketExecuter();
+        se = ntse;
+        selectThread = new Thread(() -> {
+          while(running) {
+            try {
+              ntse.select(100);
+            } catch(Throwable t) {
+              if(running) {
+                ExceptionUtils.handleException(t);
+              }
+            }
+          }
+        }, "NoThreadBenchmarkSelector");
+        break;
+    }
+    se.start();
+    if(selectThread != null) {
+      selectThread.start();
+    }
+  }
+  
+  /**
+   * @return the type of executer
+   */
+  public Type getType() {
+    return type;
+  }
+  
+  /**
+   * @return the running {@link SocketExecuter}
+   */
+  public SocketExecuter getSocketExecuter() {
+    return se;
+  }
+  
+  @Override
+  public void close() {
+    running = false;
+    if(selectThread != null) {
+      try {
+        selectThread.join();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    se.stopIfRunning();
+    if(scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package org.threadly.litesockets.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects benchmark results and writes them as a single JSON document, so runs from different
+ * commits can be compared by tooling.  Each result is a flat set of named values (configuration
+ * and measurements), the document also records the environment the benchmark ran in.
+ */
+public class BenchmarkResults {
+  private final String benchmark;
+  private final Map<String, Object> environment = new LinkedHashMap<>();
+  private final List<Map<String, Object>> results = new ArrayList<>();
+  
+  /**
+   * Constructs a new results collection.
+   * 
+   * @param benchmark the name of the benchmark
+   * @param label an optional label for the run (ie the commit), or {@code null}
+   */
+  public BenchmarkResults(final String benchmark, final String label) {
+    this.benchmark = benchmark;
+    environment.put("label", label);
+    environment.put("timestamp", System.currentTimeMillis());
+    environment.put("javaVersion", System.getProperty("java.version"));
+    environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+    environment.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * Starts a new result, values should be added to the returned map in the order they should be
+   * output.
+   * 
+   * @return the map to put the results values in
+   */
+  public Map<String, Object> newResult() {
+    final Map<String, Object> result = new LinkedHashMap<>();
+    synchronized(results) {
+      results.add(result);
+    }
+    return result;
+  }
+  
+  /**
+   * Writes the results to a file, creating any needed parent directories.
+   * 
+   * @param file the file to write to
+   * @throws IOException if the file could not be written
+   */
+  public void write(final File file) throws IOException {
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if(parent != null) {
+      Files.createDirectories(parent.toPath());
+    }
+    try (Writer w = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+      w.write(toJson());
+    }
+  }
+  
+  /**
+   * @return the results as a JSON document
+   */
+  public String toJson() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\n  \"benchmark\": ");
+    appendValue(sb, benchmark);
+    sb.append(",\n  \"environment\": ");
+    appendObject(sb, environment);
+    sb.append(",\n  \"results\": [");
+    synchronized(results) {
+      for(int i = 0; i < results.size(); i++) {
+        sb.append(i == 0 ? "\n    " : ",\n    ");
+        appendObject(sb, results.get(i));
+      }
+    }
+    sb.append("\n  ]\n}\n");
+    return sb.toString();
+  }
+  
+  private static void appendObject(final StringBuilder sb, final Map<String, Object> values) {
+    sb.append('{');
+    boolean first = true;
+    for(final Map.Entry<String, Object> e : values.entrySet()) {
+      if(! first) {
+        sb.append(", ");
+      }
+      first = false;
+      appendValue(sb, e.getKey());
+      sb.append(": ");
+      appendValue(sb, e.getValue());
+    }
+    sb.append('}');
+  }
+  
+  private static void appendValue(final StringBuilder sb, final Object value) {
+    if(value == null) {
+      sb.append("null");
+    } else if(value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+      sb.append(value);
+    } else if(value instanceof Number) {
+      final double d = ((Number)value).doubleValue();
+      if(Double.isNaN(d) || Double.isInfinite(d)) {
+        sb.append("null");
+      } else {
+        sb.append(d);
+      }
+    } else {
+      sb.append('"');
+      final String str = value.toString();
+      for(int i = 0; i < str.length(); i++) {
+        final char c = str.charAt(i);
+        if(c == '"' || c == '\\') {
+          sb.append('\\').append(c);
+        } else if(c < 0x20) {
+          sb.append(String.format("\\u%04x", (int)c));
+        } else {
+          sb.append(c);
+        }
+      }
+      sb.append('"');
+    }
+  }
+}
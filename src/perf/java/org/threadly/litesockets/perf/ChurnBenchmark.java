@@ -0,0 +1,273 @@
+package org.threadly.litesockets.perf;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.threadly.concurrent.future.FutureUtils;
+import org.threadly.concurrent.future.ListenableFuture;
+import org.threadly.litesockets.SelectorStats;
+import org.threadly.litesockets.SocketExecuter;
+import org.threadly.litesockets.TCPClient;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.utils.PortUtils;
+
+/**
+ * Connection scale benchmark, with two scenarios run for each executer type:
+ *
+ * <ul>
+ *   <li>churn - {@code concurrency} client loops each connect to a {@link TCPServer} which closes
+ *   every client as soon as it is accepted, reconnecting as soon as their close is seen.  Reports
+ *   accept and close cycles per second.</li>
+ *   <li>idle - opens {@code N} idle connections to a {@link TCPServer} and reports the wall time to
+ *   connect and accept them all, the selector time spent registering them, the heap used per
+ *   connection (client and server side together) and the time to shut the executers down.
+ *   Registration time is the time the selectors of both executers spent draining their queued
+ *   tasks ({@link SelectorStats#getProcessQueueDrainNanos()}) while connecting, so it excludes the
+ *   TCP handshake and the waits for it.  With NoThread this queue also runs client callbacks.
+ *   {@code N} is capped to what the processes file descriptor limit allows, each connection uses
+ *   two descriptors since both ends are local.</li>
+ * </ul>
+ *
+ * <p>Arguments (all optional): {@code --executers=Threaded,SingleThread,NoThread
+ * --scenarios=churn,idle --concurrency=1,16 --warmup=1 --duration=5 --idle=10000,50000,100000
+ * --output=build/reports/perf/churn.json --label=<run label>}</p>
+ */
+public class ChurnBenchmark {
+  private static final int CONNECT_BATCH_SIZE = 64;
+  private static final int RESERVED_FDS = 256;
+  private static final int OPEN_TIMEOUT_SECONDS = 120;
+
+  public static void main(final String[] args) throws Exception {
+    final BenchmarkArgs bargs = new BenchmarkArgs(args);
+    final int warmupSeconds = bargs.getInt("warmup", 1);
+    final int durationSeconds = bargs.getInt("duration", 5);
+    final String scenarios = bargs.getString("scenarios", "churn,idle");
+    final File output = new File(bargs.getString("output", "build/reports/perf/churn.json"));
+    final BenchmarkResults results = new BenchmarkResults("churn", bargs.getString("label", null));
+
+    for(final BenchmarkExecuter.Type type : bargs.getExecuterTypes("executers")) {
+      if(scenarios.contains("churn")) {
+        for(final int concurrency : bargs.getInts("concurrency", "1,16")) {
+          final Map<String, Object> result = results.newResult();
+          result.put("scenario", "churn");
+          result.put("executer", type.name());
+          result.put("concurrency", concurrency);
+          runChurn(type, concurrency, warmupSeconds, durationSeconds, result);
+          System.out.println(String.format("churn %-12s concurrency=%-4d %10.0f accept+close/sec",
+                                           type, concurrency, result.get("cyclesPerSecond")));
+        }
+      }
+      if(scenarios.contains("idle")) {
+        for(final int requested : bargs.getInts("idle", "10000,50000,100000")) {
+          final Map<String, Object> result = results.newResult();
+          result.put("scenario", "idle");
+          result.put("executer", type.name());
+          result.put("requestedConnections", requested);
+          runIdle(type, requested, result);
+          System.out.println(String.format("idle  %-12s connections=%-7d open=%7dms (%6.1fus/conn) register=%6.1fus/conn heap=%8.0f bytes/conn shutdown=%6dms",
+                                           type, result.get("connections"), result.get("openMillis"),
+                                           result.get("openMicrosPerConnection"), result.get("registerMicrosPerConnection"),
+                                           result.get("heapBytesPerConnection"), result.get("shutdownMillis")));
+        }
+      }
+    }
+    results.write(output);
+    System.out.println("Results written to: " + output.getAbsolutePath());
+  }
+
+  private static void runChurn(final BenchmarkExecuter.Type type, final int concurrency,
+                               final int warmupSeconds, final int durationSeconds,
+                               final Map<String, Object> result) throws Exception {
+    final LongAdder cycles = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    try (BenchmarkExecuter serverExecuter = new BenchmarkExecuter(type);
+         BenchmarkExecuter clientExecuter = new BenchmarkExecuter(type)) {
+      final int port = PortUtils.findTCPPort();
+      final TCPServer server = serverExecuter.getSocketExecuter().createTCPServer("localhost", port);
+      server.setClientAcceptor((client) -> client.close());
+      server.start();
+
+      final List<ChurnLoop> loops = new ArrayList<>(concurrency);
+      for(int i = 0; i < concurrency; i++) {
+        final ChurnLoop loop = new ChurnLoop(clientExecuter.getSocketExecuter(), port, cycles, failures);
+        loops.add(loop);
+        loop.connect();
+      }
+
+      Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+      final long startCycles = cycles.sum();
+      final long startFailures = failures.sum();
+      final long start = System.nanoTime();
+      Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+      final long endCycles = cycles.sum();
+      final long endFailures = failures.sum();
+      final double seconds = (System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1);
+      for(final ChurnLoop loop : loops) {
+        loop.running = false;
+      }
+      server.close();
+
+      result.put("cyclesPerSecond", (endCycles - startCycles) / seconds);
+      result.put("connectFailures", endFailures - startFailures);
+    }
+  }
+
+  private static void runIdle(final BenchmarkExecuter.Type type, final int requested,
+                              final Map<String, Object> result) throws Exception {
+    final int connections = Math.min(requested, maxLocalConnections());
+    result.put("connections", connections);
+    final LongAdder accepted = new LongAdder();
+    final long baseHeap = usedHeapAfterGC();
+    final BenchmarkExecuter serverExecuter = new BenchmarkExecuter(type);
+    final BenchmarkExecuter clientExecuter = new BenchmarkExecuter(type);
+    final List<TCPClient> clients = new ArrayList<>(connections);
+    try {
+      final int port = PortUtils.findTCPPort();
+      final TCPServer server = serverExecuter.getSocketExecuter().createTCPServer("localhost", port);
+      server.setClientAcceptor((client) -> {
+        client.setReader((c) -> c.getRead().discard(c.getReadBufferSize()));
+        accepted.increment();
+      });
+      server.start();
+
+      final long drainStartNanos = processQueueDrainNanos(serverExecuter, clientExecuter);
+      final long drainStartTasks = processedTasks(serverExecuter, clientExecuter);
+      final long openStart = System.nanoTime();
+      final long deadline = openStart + TimeUnit.SECONDS.toNanos(OPEN_TIMEOUT_SECONDS);
+      final List<ListenableFuture<Boolean>> batch = new ArrayList<>(CONNECT_BATCH_SIZE);
+      for(int i = 0; i < connections; i++) {
+        final TCPClient client = clientExecuter.getSocketExecuter().createTCPClient("localhost", port);
+        client.setReader((c) -> c.getRead().discard(c.getReadBufferSize()));
+        clients.add(client);
+        batch.add(client.connect());
+        if(batch.size() == CONNECT_BATCH_SIZE || i == connections - 1) {
+          // bound the connects in flight to less than the TCPServer listen backlog, once it
+          // overflows idle connections can sit unaccepted until the server side retries
+          FutureUtils.makeCompleteFuture(batch).get(OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+          batch.clear();
+          while(accepted.sum() <= i) {
+            if(System.nanoTime() > deadline) {
+              throw new IllegalStateException("Only " + accepted.sum() + " of " + connections + " connections accepted");
+            }
+            Thread.yield();
+          }
+        }
+      }
+      final long openNanos = System.nanoTime() - openStart;
+      final long registerNanos = processQueueDrainNanos(serverExecuter, clientExecuter) - drainStartNanos;
+      final long registerTasks = processedTasks(serverExecuter, clientExecuter) - drainStartTasks;
+      final long heap = usedHeapAfterGC();
+      // includes the connect, the accept and waiting on both, not just the selector registration
+      result.put("openMillis", TimeUnit.NANOSECONDS.toMillis(openNanos));
+      result.put("openMicrosPerConnection", openNanos / 1000.0 / connections);
+      result.put("registerMillis", TimeUnit.NANOSECONDS.toMillis(registerNanos));
+      result.put("registerMicrosPerConnection", registerNanos / 1000.0 / connections);
+      result.put("registerTasks", registerTasks);
+      result.put("heapBytesPerConnection", (heap - baseHeap) / (double)connections);
+    } finally {
+      final long shutdownStart = System.nanoTime();
+      clientExecuter.close();
+      serverExecuter.close();
+      result.put("shutdownMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shutdownStart));
+    }
+  }
+
+  private static long processQueueDrainNanos(final BenchmarkExecuter ...executers) {
+    long total = 0;
+    for(final BenchmarkExecuter be : executers) {
+      for(final SelectorStats ss : be.getSocketExecuter().getSelectorStats()) {
+        total += ss.getProcessQueueDrainNanos();
+      }
+    }
+    return total;
+  }
+
+  private static long processedTasks(final BenchmarkExecuter ...executers) {
+    long total = 0;
+    for(final BenchmarkExecuter be : executers) {
+      for(final SelectorStats ss : be.getSocketExecuter().getSelectorStats()) {
+        total += ss.getProcessedTasks();
+      }
+    }
+    return total;
+  }
+
+  private static int maxLocalConnections() {
+    final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if(os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+      final com.sun.management.UnixOperatingSystemMXBean unixOs = (com.sun.management.UnixOperatingSystemMXBean)os;
+      final long available = unixOs.getMaxFileDescriptorCount() - unixOs.getOpenFileDescriptorCount() - RESERVED_FDS;
+      return (int)Math.max(0, Math.min(Integer.MAX_VALUE, available / 2));
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  private static long usedHeapAfterGC() throws InterruptedException {
+    for(int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Connects a client, and once the server has closed it connects a new one, counting each
+   * completed cycle.
+   */
+  private static class ChurnLoop {
+    private final SocketExecuter se;
+    private final int port;
+    private final LongAdder cycles;
+    private final LongAdder failures;
+    private volatile boolean running = true;
+
+    private ChurnLoop(final SocketExecuter se, final int port,
+                      final LongAdder cycles, final LongAdder failures) {
+      this.se = se;
+      this.port = port;
+      this.cycles = cycles;
+      this.failures = failures;
+    }
+
+    private void connect() {
+      if(! running) {
+        return;
+      }
+      final TCPClient client;
+      try {
+        client = se.createTCPClient("localhost", port);
+      } catch(Exception e) {
+        failures.increment();
+        se.getThreadScheduler().schedule(this::connect, 10);
+        return;
+      }
+      client.setReader((c) -> c.getRead().discard(c.getReadBufferSize()));
+      final ListenableFuture<Boolean> connectFuture = client.connect();
+      connectFuture.failureCallback((t) -> failures.increment());
+      client.addCloseListener((c) -> {
+        if(connected(connectFuture)) {
+          cycles.increment();
+        }
+        connect();
+      });
+    }
+
+    private static boolean connected(final ListenableFuture<Boolean> connectFuture) {
+      if(! connectFuture.isDone()) {
+        return false;
+      }
+      try {
+        connectFuture.get();
+        return true;
+      } catch(Exception e) {
+        return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,225 @@
+package org.threadly.litesockets.perf;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+
+import org.threadly.litesockets.Client;
+import org.threadly.litesockets.SocketExecuter;
+import org.threadly.litesockets.TCPClient;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.buffers.MergedByteBuffers;
+import org.threadly.litesockets.utils.IOUtils;
+import org.threadly.litesockets.utils.LatencyHistogram;
+import org.threadly.litesockets.utils.PortUtils;
+import org.threadly.litesockets.utils.SSLUtils;
+
+/**
+ * End to end loopback benchmark.  A {@link TCPServer} echo is started on each executer type, then
+ * clients on a separate executer of the same type send messages to it.  Two modes are run for each
+ * combination of executer, SSL, message size and connection count:
+ *
+ * <ul>
+ *   <li>throughput - each connection keeps {@code window} messages outstanding, reporting the echoed
+ *   messages and bytes per second</li>
+ *   <li>rtt - each connection has a single message outstanding (ping-pong), reporting round trip
+ *   percentiles in microseconds</li>
+ * </ul>
+ *
+ * <p>Arguments (all optional): {@code --executers=Threaded,SingleThread,NoThread --ssl=false,true
+ * --sizes=64,1024,16384 --connections=1,16,64 --window=16 --warmup=1 --duration=5
+ * --output=build/reports/perf/loopback.json --label=<run label> --pem=<cert and key pem file>}</p>
+ */
+public class LoopbackBenchmark {
+  private static final double[] PERCENTILES = new double[] {50, 90, 99, 99.9};
+  private static final String[] PERCENTILE_NAMES = new String[] {"p50Micros", "p90Micros", "p99Micros", "p999Micros"};
+
+  public static void main(final String[] args) throws Exception {
+    final BenchmarkArgs bargs = new BenchmarkArgs(args);
+    final int window = bargs.getInt("window", 16);
+    final int warmupSeconds = bargs.getInt("warmup", 1);
+    final int durationSeconds = bargs.getInt("duration", 5);
+    final File output = new File(bargs.getString("output", "build/reports/perf/loopback.json"));
+    final BenchmarkResults results = new BenchmarkResults("loopback", bargs.getString("label", null));
+    final List<Boolean> sslModes = bargs.getBooleans("ssl", "false,true");
+    final SSLContext sslContext = sslModes.contains(Boolean.TRUE) ? makeSSLContext(bargs.getString("pem", null)) : null;
+
+    System.out.println(String.format("%-12s %-5s %8s %6s %-10s %14s %16s %10s %10s %10s %10s",
+                                     "executer", "ssl", "size", "conns", "mode", "msgs/sec", "bytes/sec",
+                                     "p50us", "p90us", "p99us", "p999us"));
+    for(final BenchmarkExecuter.Type type : bargs.getExecuterTypes("executers")) {
+      for(final boolean ssl : sslModes) {
+        for(final int size : bargs.getInts("sizes", "64,1024,16384")) {
+          for(final int connections : bargs.getInts("connections", "1,16,64")) {
+            for(final int modeWindow : new int[] {window, 1}) {
+              final Map<String, Object> result = results.newResult();
+              result.put("executer", type.name());
+              result.put("ssl", ssl);
+              result.put("messageSize", size);
+              result.put("connections", connections);
+              result.put("mode", modeWindow == 1 ? "rtt" : "throughput");
+              result.put("window", modeWindow);
+              run(type, ssl ? sslContext : null, size, connections, modeWindow,
+                  warmupSeconds, durationSeconds, result);
+              final StringBuilder line = new StringBuilder();
+              line.append(String.format("%-12s %-5s %8d %6d %-10s %14.0f %16.0f",
+                                        type, ssl, size, connections, result.get("mode"),
+                                        result.get("messagesPerSecond"), result.get("bytesPerSecond")));
+              for(final String percentile : PERCENTILE_NAMES) {
+                if(result.containsKey(percentile)) {
+                  line.append(String.format(" %10.1f", result.get(percentile)));
+                }
+              }
+              System.out.println(line);
+            }
+          }
+        }
+      }
+    }
+    results.write(output);
+    System.out.println("Results written to: " + output.getAbsolutePath());
+  }
+
+  private static void run(final BenchmarkExecuter.Type type, final SSLContext sslContext,
+                          final int messageSize, final int connections, final int window,
+                          final int warmupSeconds, final int durationSeconds,
+                          final Map<String, Object> result) throws Exception {
+    final LongAdder messages = new LongAdder();
+    final LatencyHistogram rtt = new LatencyHistogram();
+    final List<LoadConnection> loadConnections = new ArrayList<>(connections);
+    try (BenchmarkExecuter serverExecuter = new BenchmarkExecuter(type);
+         BenchmarkExecuter clientExecuter = new BenchmarkExecuter(type)) {
+      final int port = PortUtils.findTCPPort();
+      final TCPServer server = serverExecuter.getSocketExecuter().createTCPServer("localhost", port);
+      if(sslContext != null) {
+        server.setSSLContext(sslContext);
+        server.setDoHandshake(true);
+      }
+      server.setClientAcceptor((client) -> {
+        client.setReader((c) -> c.write(c.getRead()));
+      });
+      server.start();
+
+      final ByteBuffer message = ByteBuffer.allocate(messageSize).asReadOnlyBuffer();
+      for(int i = 0; i < connections; i++) {
+        loadConnections.add(new LoadConnection(clientExecuter.getSocketExecuter(), port, sslContext,
+                                               message, messages, rtt));
+      }
+      for(final LoadConnection lc : loadConnections) {
+        lc.start(window);
+      }
+
+      Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+      rtt.reset();
+      final long startMessages = messages.sum();
+      final long start = System.nanoTime();
+      Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+      final long endMessages = messages.sum();
+      final double seconds = (System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1);
+      for(final LoadConnection lc : loadConnections) {
+        lc.stop();
+      }
+
+      final double messagesPerSecond = (endMessages - startMessages) / seconds;
+      result.put("messagesPerSecond", messagesPerSecond);
+      result.put("bytesPerSecond", messagesPerSecond * messageSize);
+      for(int i = 0; window == 1 && i < PERCENTILES.length; i++) {
+        result.put(PERCENTILE_NAMES[i], rtt.getValueAtPercentile(PERCENTILES[i]) / 1000.0);
+      }
+      server.close();
+    }
+  }
+
+  private static SSLContext makeSSLContext(final String pemFile) throws Exception {
+    final File pem;
+    if(pemFile == null) {
+      final URL url = ClassLoader.getSystemResource("test.pem");
+      if(url == null) {
+        throw new IllegalArgumentException("No test.pem on the classpath, provide one with --pem=");
+      }
+      pem = new File(url.toURI());
+    } else {
+      pem = new File(pemFile);
+    }
+    final SSLContext sslCtx = SSLContext.getInstance("TLS");
+    sslCtx.init(SSLUtils.generateKeyStoreFromPEM(pem, pem).getKeyManagers(),
+                new TrustManager[] {new SSLUtils.FullTrustManager()}, null);
+    return sslCtx;
+  }
+
+  /**
+   * A client connection which sends fixed size messages to the echo server, sending a new message
+   * each time one is echoed back.
+   */
+  private static class LoadConnection {
+    private final TCPClient client;
+    private final ByteBuffer message;
+    private final int messageSize;
+    private final LongAdder messages;
+    private final LatencyHistogram rtt;
+    private volatile boolean running = true;
+    private int receivedBytes = 0;
+    private long sentNanos = -1;
+
+    private LoadConnection(final SocketExecuter se, final int port, final SSLContext sslContext,
+                           final ByteBuffer message, final LongAdder messages,
+                           final LatencyHistogram rtt) throws Exception {
+      this.message = message;
+      this.messageSize = message.remaining();
+      this.messages = messages;
+      this.rtt = rtt;
+      client = se.createTCPClient("localhost", port);
+      if(sslContext != null) {
+        final SSLEngine ssle = sslContext.createSSLEngine("localhost", port);
+        ssle.setUseClientMode(true);
+        client.setSSLEngine(ssle);
+      }
+      client.setReader(this::onRead);
+      client.connect().get(10, TimeUnit.SECONDS);
+      if(sslContext != null) {
+        client.startSSL().get(10, TimeUnit.SECONDS);
+      }
+    }
+
+    private void start(final int window) {
+      if(window == 1) {
+        sentNanos = System.nanoTime();
+      }
+      for(int i = 0; i < window; i++) {
+        client.write(message.duplicate());
+      }
+    }
+
+    private void stop() {
+      running = false;
+      IOUtils.closeQuietly(client);
+    }
+
+    private void onRead(final Client c) {
+      final MergedByteBuffers mbb = c.getRead();
+      receivedBytes += mbb.remaining();
+      mbb.discard(mbb.remaining());
+      while(receivedBytes >= messageSize) {
+        receivedBytes -= messageSize;
+        messages.increment();
+        if(sentNanos >= 0) {
+          final long now = System.nanoTime();
+          rtt.recordValue(now - sentNanos);
+          sentNanos = now;
+        }
+        if(running) {
+          client.write(message.duplicate());
+        }
+      }
+    }
+  }
+}
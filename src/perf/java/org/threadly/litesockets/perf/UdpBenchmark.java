@@ -0,0 +1,327 @@
+package org.threadly.litesockets.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.threadly.litesockets.UDPClient;
+import org.threadly.litesockets.UDPServer;
+import org.threadly.litesockets.buffers.MergedByteBuffers;
+import org.threadly.litesockets.utils.LatencyHistogram;
+import org.threadly.litesockets.utils.PortUtils;
+import org.threadly.util.debug.Profiler;
+
+/**
+ * UDP receive path benchmark.  Plain {@link DatagramChannel} senders (one thread each) blast fixed
+ * size datagrams at a {@link UDPServer} on 127.0.0.1, so only the receive path (socket read,
+ * dispatch to the clients executor, {@code UDPClient} read buffering and reader callback) is
+ * measured.  In {@link UDPServer.UDPReceiveMode#Inline} mode packets are read by a
+ * {@link UDPServer.UDPReader} which returns {@code false}, so no {@code UDPClient}s are used.  For
+ * each executer type, receive mode, packet size and sender count this reports:
+ *
+ * <ul>
+ *   <li>packets and bytes per second received by client readers during the measured period</li>
+ *   <li>drop rate, the fraction of all sent packets which never made it to a reader</li>
+ *   <li>bytes allocated per received packet by every thread except the senders (requires a JVM
+ *   which supports thread allocation accounting and not profiling, otherwise -1)</li>
+ *   <li>send to reader latency percentiles in microseconds, each packet carries its send time</li>
+ * </ul>
+ *
+ * <p>Arguments (all optional): {@code --executers=Threaded,SingleThread,NoThread
+ * --sizes=64,512,1400 --senders=1,4 --rate=<packets/sec per sender, 0 for unlimited>
+ * --receiveModes=Copy,Slice,Inline --batch=<datagrams received per read event>
+ * --channels=<SO_REUSEPORT channels for the server, default 1>
+ * --connected=<give each sender a connected channel with UDPServer.connectClient, default false>
+ * --warmup=1 --duration=5 --output=build/reports/perf/udp.json --label=<run label>
+ * --profile=<directory to write a receive path profile for each run>}</p>
+ */
+public class UdpBenchmark {
+  private static final int MIN_PACKET_SIZE = Long.BYTES;
+  private static final int DRAIN_WAIT_MILLIS = 500;
+  private static final double[] PERCENTILES = new double[] {50, 90, 99, 99.9};
+  private static final String[] PERCENTILE_NAMES = new String[] {"p50Micros", "p90Micros", "p99Micros", "p999Micros"};
+
+  public static void main(final String[] args) throws Exception {
+    final BenchmarkArgs bargs = new BenchmarkArgs(args);
+    final int rate = bargs.getInt("rate", 0);
+    final int batchSize = bargs.getInt("batch", UDPServer.DEFAULT_RECEIVE_BATCH_SIZE);
+    final int channels = bargs.getInt("channels", 1);
+    final boolean connected = Boolean.parseBoolean(bargs.getString("connected", "false"));
+    final int warmupSeconds = bargs.getInt("warmup", 1);
+    final int durationSeconds = bargs.getInt("duration", 5);
+    final String profileDir = bargs.getString("profile", null);
+    final File output = new File(bargs.getString("output", "build/reports/perf/udp.json"));
+    final BenchmarkResults results = new BenchmarkResults("udp", bargs.getString("label", null));
+
+    System.out.println(String.format("%-12s %-6s %6s %7s %14s %16s %8s %6s %12s %10s %10s %10s %10s",
+                                     "executer", "mode", "size", "senders", "packets/sec", "bytes/sec", "drop%", "batch",
+                                     "alloc/packet", "p50us", "p90us", "p99us", "p999us"));
+    for(final BenchmarkExecuter.Type type : bargs.getExecuterTypes("executers")) {
+      for(final int size : bargs.getInts("sizes", "64,512,1400")) {
+        if(size < MIN_PACKET_SIZE) {
+          throw new IllegalArgumentException("Packet size must be at least " + MIN_PACKET_SIZE);
+        }
+        for(final int senders : bargs.getInts("senders", "1,4")) {
+          for(final String modeName : bargs.getString("receiveModes", "Copy,Slice,Inline").split(",")) {
+            final UDPServer.UDPReceiveMode mode = UDPServer.UDPReceiveMode.valueOf(modeName.trim());
+            final Map<String, Object> result = results.newResult();
+            result.put("executer", type.name());
+            result.put("receiveMode", mode.name());
+            result.put("receiveBatchSize", batchSize);
+            result.put("channels", channels);
+            result.put("connected", connected);
+            result.put("packetSize", size);
+            result.put("senders", senders);
+            result.put("ratePerSender", rate);
+            final File profileFile = profileDir == null ? null :
+              new File(profileDir, "udp-" + type + '-' + mode + '-' + size + '-' + senders + ".txt");
+            run(type, mode, batchSize, channels, connected, size, senders, rate, warmupSeconds, 
+                durationSeconds, profileFile, result);
+            System.out.println(String.format("%-12s %-6s %6d %7d %14.0f %16.0f %8.3f %6.1f %12.1f %10.1f %10.1f %10.1f %10.1f",
+                                             type, mode, size, senders,
+                                             result.get("packetsPerSecond"), result.get("bytesPerSecond"),
+                                             (Double)result.get("dropRate") * 100, result.get("averageReceiveBatch"),
+                                             result.get("allocatedBytesPerPacket"),
+                                             result.get(PERCENTILE_NAMES[0]), result.get(PERCENTILE_NAMES[1]),
+                                             result.get(PERCENTILE_NAMES[2]), result.get(PERCENTILE_NAMES[3])));
+          }
+        }
+      }
+    }
+    results.write(output);
+    System.out.println("Results written to: " + output.getAbsolutePath());
+  }
+
+  private static void run(final BenchmarkExecuter.Type type, final UDPServer.UDPReceiveMode mode,
+                          final int batchSize, final int channels, final boolean connected,
+                          final int packetSize, final int senderCount,
+                          final int rate, final int warmupSeconds, final int durationSeconds,
+                          final File profileFile, final Map<String, Object> result) throws Exception {
+    final LongAdder received = new LongAdder();
+    final LatencyHistogram latency = new LatencyHistogram();
+    final List<Sender> senders = new ArrayList<>(senderCount);
+    try (BenchmarkExecuter executer = new BenchmarkExecuter(type)) {
+      final int port = PortUtils.findUDPPort();
+      final UDPServer server = executer.getSocketExecuter().createUDPServer("127.0.0.1", port, channels, connected);
+      result.put("boundChannels", server.getChannelCount());
+      server.setFrameSize(Math.max(UDPServer.DEFAULT_FRAME_SIZE, packetSize));
+      server.setReceiveMode(mode);
+      server.setReceiveBatchSize(batchSize);
+      if(mode == UDPServer.UDPReceiveMode.Inline) {
+        server.setUDPReader((bb, isa) -> {
+          latency.recordValue(System.nanoTime() - bb.getLong(bb.position()));
+          received.increment();
+          return false;
+        });
+      } else {
+        server.setClientAcceptor((client) -> {
+          if(connected) {
+            server.connectClient((UDPClient)client);
+          }
+          client.setReader((c) -> {
+            final MergedByteBuffers mbb = c.getRead();
+            final long now = System.nanoTime();
+            while(mbb.remaining() >= packetSize) {
+              latency.recordValue(now - mbb.getLong());
+              mbb.discard(packetSize - MIN_PACKET_SIZE);
+              received.increment();
+            }
+          });
+        });
+      }
+      server.start();
+
+      final InetSocketAddress target = new InetSocketAddress("127.0.0.1", port);
+      for(int i = 0; i < senderCount; i++) {
+        final Sender sender = new Sender(i, target, packetSize, rate);
+        senders.add(sender);
+        sender.start();
+      }
+
+      Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+      latency.reset();
+      final Profiler profiler = profileFile == null ? null : new Profiler();
+      if(profiler != null) {
+        profiler.start();
+      }
+      // the profilers own sampling would be counted, so allocations are only measured when not profiling
+      final AllocationCounter allocations = profiler == null ? new AllocationCounter(senders) : null;
+      result.put("connectedClients", server.getConnectedClientCount());
+      final long startReceived = received.sum();
+      final long startBatches = server.getReceiveBatchCount();
+      final long startPackets = server.getReceivedPacketCount();
+      final long start = System.nanoTime();
+      Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+      final long endReceived = received.sum();
+      final long batches = server.getReceiveBatchCount() - startBatches;
+      final long batchedPackets = server.getReceivedPacketCount() - startPackets;
+      final double seconds = (System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1);
+      final long allocatedBytes = allocations == null ? -1 : allocations.getAllocatedBytes();
+      if(profiler != null) {
+        profiler.stop();
+        writeProfile(profiler, profileFile);
+      }
+
+      long sent = 0;
+      for(final Sender sender : senders) {
+        sent += sender.finish();
+      }
+      // let anything still in the socket buffer or executor queues be delivered before counting drops
+      long lastReceived;
+      do {
+        lastReceived = received.sum();
+        Thread.sleep(DRAIN_WAIT_MILLIS);
+      } while(received.sum() != lastReceived);
+      server.close();
+
+      final long measuredPackets = endReceived - startReceived;
+      final double packetsPerSecond = measuredPackets / seconds;
+      result.put("packetsPerSecond", packetsPerSecond);
+      result.put("bytesPerSecond", packetsPerSecond * packetSize);
+      result.put("averageReceiveBatch", batches == 0 ? 0.0 : batchedPackets / (double)batches);
+      result.put("maxReceiveBatch", server.getMaxReceiveBatchSize());
+      result.put("packetsSent", sent);
+      result.put("packetsReceived", received.sum());
+      result.put("dropRate", sent == 0 ? 0.0 : Math.max(0, sent - received.sum()) / (double)sent);
+      result.put("allocatedBytesPerPacket",
+                 allocatedBytes < 0 || measuredPackets == 0 ? -1.0 : allocatedBytes / (double)measuredPackets);
+      for(int i = 0; i < PERCENTILES.length; i++) {
+        result.put(PERCENTILE_NAMES[i], latency.getValueAtPercentile(PERCENTILES[i]) / 1000.0);
+      }
+    } finally {
+      for(final Sender sender : senders) {
+        sender.finish();
+      }
+    }
+  }
+
+  private static void writeProfile(final Profiler profiler, final File file) throws IOException {
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if(parent != null && ! parent.exists() && ! parent.mkdirs()) {
+      throw new IOException("Could not create directory: " + parent);
+    }
+    try (OutputStream out = new FileOutputStream(file)) {
+      profiler.dump(out);
+    }
+  }
+
+  /**
+   * Sends datagrams as fast as possible (or at a fixed rate) from its own socket, each packet
+   * starts with the {@link System#nanoTime()} it was sent at.
+   */
+  private static class Sender extends Thread {
+    private final InetSocketAddress target;
+    private final ByteBuffer packet;
+    private final long nanosPerPacket;
+    private volatile boolean running = true;
+    private volatile long sent = 0;
+
+    private Sender(final int id, final InetSocketAddress target, final int packetSize, final int rate) {
+      super("UdpBenchmarkSender-" + id);
+      setDaemon(true);
+      this.target = target;
+      this.packet = ByteBuffer.allocateDirect(packetSize);
+      this.nanosPerPacket = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    }
+
+    @Override
+    public void run() {
+      try (DatagramChannel channel = DatagramChannel.open()) {
+        channel.bind(new InetSocketAddress("127.0.0.1", 0));
+        long nextSend = System.nanoTime();
+        long count = 0;
+        while(running) {
+          if(nanosPerPacket > 0) {
+            final long wait = nextSend - System.nanoTime();
+            if(wait > 0) {
+              LockSupport.parkNanos(wait);
+            }
+            nextSend += nanosPerPacket;
+          }
+          packet.clear();
+          packet.putLong(0, System.nanoTime());
+          if(channel.send(packet, target) > 0) {
+            sent = ++count;
+          }
+        }
+      } catch(IOException e) {
+        if(running) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    /**
+     * Stops sending and waits for the sender to finish.
+     *
+     * @return the total number of packets sent
+     */
+    private long finish() throws InterruptedException {
+      running = false;
+      join();
+      return sent;
+    }
+  }
+
+  /**
+   * Counts the bytes allocated by every live thread other than the senders and the calling thread,
+   * between construction and {@link #getAllocatedBytes()}.
+   */
+  private static class AllocationCounter {
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final List<Long> excludedThreads = new ArrayList<>();
+    private final Map<Long, Long> startBytes = new HashMap<>();
+
+    private AllocationCounter(final List<Sender> senders) {
+      final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if(bean instanceof com.sun.management.ThreadMXBean &&
+          ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+        threadBean = (com.sun.management.ThreadMXBean)bean;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        for(final Sender sender : senders) {
+          excludedThreads.add(sender.getId());
+        }
+        excludedThreads.add(Thread.currentThread().getId());
+        snapshot(startBytes);
+      } else {
+        threadBean = null;
+      }
+    }
+
+    private long getAllocatedBytes() {
+      if(threadBean == null) {
+        return -1;
+      }
+      final Map<Long, Long> endBytes = new HashMap<>();
+      snapshot(endBytes);
+      long total = 0;
+      for(final Map.Entry<Long, Long> e : endBytes.entrySet()) {
+        final Long start = startBytes.get(e.getKey());
+        total += e.getValue() - (start == null ? 0 : start);
+      }
+      return total;
+    }
+
+    private void snapshot(final Map<Long, Long> into) {
+      final long[] ids = threadBean.getAllThreadIds();
+      final long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+      for(int i = 0; i < ids.length; i++) {
+        if(bytes[i] >= 0 && ! excludedThreads.contains(ids[i])) {
+          into.put(ids[i], bytes[i]);
+        }
+      }
+    }
+  }
+}
@@ -1,10 +1,13 @@
 package org.threadly.litesockets;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.After;
@@ -14,7 +17,9 @@ import org.threadly.concurrent.PriorityScheduler;
 import org.threadly.litesockets.buffers.MergedByteBuffers;
 import org.threadly.litesockets.tcp.FakeTCPServerClient;
 import org.threadly.litesockets.tcp.TCPTests;
+import org.threadly.litesockets.utils.HeavyHitterTracker;
 import org.threadly.litesockets.utils.PortUtils;
+import org.threadly.litesockets.utils.SimpleByteStats.RateWindow;
 import org.threadly.test.concurrent.TestCondition;
 import org.threadly.util.Clock;
 
@@ -144,6 +149,29 @@ public class SocketExecuterTests {
     
   }
   
+  @Test
+  public void stopClosesClientChannelsTest() throws IOException, InterruptedException, ExecutionException {
+    final TCPServer server = SE.createTCPServer("localhost", port);
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    serverFC.addTCPServer(server);
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    client.connect().get();
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getNumberOfClients() == 1;
+      }
+    }.blockTillTrue(5000);
+    final TCPClient serverClient = serverFC.getClientAt(0);
+    
+    SE.stop();
+    assertEquals(0, SE.getClientCount());
+    assertTrue(client.isClosed());
+    assertFalse(client.getChannel().isOpen());
+    assertTrue(serverClient.isClosed());
+    assertFalse(serverClient.getChannel().isOpen());
+  }
+  
   @Test
   public void SEStatsTest() throws IOException, InterruptedException {
     final int sendCount = 1000;
@@ -197,9 +225,151 @@ public class SocketExecuterTests {
     System.out.println(SE.getStats().getTotalRead());
     assertEquals(endSize*2, SE.getStats().getTotalWrite());
     assertEquals(endSize*2, SE.getStats().getTotalRead());
+    
+    assertTrue(SE.getStats().getTotalReadOperations() > 0);
+    assertTrue(SE.getStats().getTotalWriteOperations() > 0);
+    assertTrue(SE.getStats().getTotalSyscalls() >= 
+                 SE.getStats().getTotalReadOperations() + SE.getStats().getTotalWriteOperations());
+    assertEquals(endSize, client.getStats().getTotalWrite());
+    assertTrue(client.getStats().getTotalWriteOperations() > 0);
+    assertTrue(client.getStats().getTotalWriteOperations() <= SE.getStats().getTotalWriteOperations());
+    assertTrue(client.getStats().getTotalSyscalls() >= 
+                 client.getStats().getTotalReadOperations() + client.getStats().getTotalWriteOperations());
+    client.getStats().resetStats();
+    assertEquals(0, client.getStats().getTotalWrite());
+    assertEquals(0, client.getStats().getTotalWriteOperations());
+    assertEquals(0, client.getStats().getTotalSyscalls());
 
   }
   
+  @Test
+  public void recentRatesTest() throws IOException, InterruptedException, ExecutionException {
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    final TCPServer server = SE.createTCPServer("localhost", port);
+    serverFC.addTCPServer(server);
+    
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    // rates are only tracked once requested, the first request enables tracking
+    assertEquals(0, client.getStats().getWriteRate(RateWindow.OneSecond), 0);
+    SE.getStats().trackRecentRates();
+    serverFC.addTCPClient(client);
+    client.connect().get();
+    
+    final int size = TCPTests.SMALL_TEXT_BUFFER.remaining();
+    for(int i = 0; i < 10; i++) {
+      client.write(TCPTests.SMALL_TEXT_BUFFER.duplicate()).get();
+    }
+    
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        // once all the writes are in completed seconds the 10 second window will contain them all
+        return SE.getStats().getReadRate(RateWindow.TenSeconds) >= size && 
+                 client.getStats().getWriteRate(RateWindow.TenSeconds) >= size;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(size, client.getStats().getWriteRate(RateWindow.TenSeconds), 0.001);
+    assertEquals(size * 10.0 / 60, client.getStats().getWriteRate(RateWindow.OneMinute), 0.001);
+    assertTrue(client.getStats().getWriteOperationRate(RateWindow.TenSeconds) > 0);
+    assertTrue(client.getStats().getEwmaWriteRate() > 0);
+    assertTrue(SE.getStats().getReadOperationRate(RateWindow.TenSeconds) > 0);
+    assertTrue(SE.getStats().getEwmaReadRate() > 0);
+    assertTrue(SE.getStats().getEwmaWriteRate() > 0);
+    
+    client.close();
+    server.close();
+  }
+  
+  @Test
+  public void topClientsTest() throws IOException, InterruptedException, ExecutionException {
+    assertTrue(SE.getTopClients(10).isEmpty());
+    SE.setTopClientTracking(10, 100);
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    final TCPServer server = SE.createTCPServer("localhost", port);
+    serverFC.addTCPServer(server);
+    
+    final TCPClient busyClient = SE.createTCPClient("localhost", port);
+    serverFC.addTCPClient(busyClient);
+    busyClient.connect().get();
+    final TCPClient quietClient = SE.createTCPClient("localhost", port);
+    serverFC.addTCPClient(quietClient);
+    quietClient.connect().get();
+    
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        quietClient.write(TCPTests.SMALL_TEXT_BUFFER.duplicate());
+        for(int i = 0; i < 10; i++) {
+          busyClient.write(TCPTests.SMALL_TEXT_BUFFER.duplicate());
+        }
+        // the busy client and the server side client reading from it have the same byte counts
+        List<HeavyHitterTracker.Entry<Client>> top = SE.getTopClients(2);
+        if(top.size() < 2 || top.get(0).getItem() == quietClient || top.get(1).getItem() == quietClient) {
+          return false;
+        }
+        return top.get(0).getItem() == busyClient || top.get(1).getItem() == busyClient;
+      }
+    }.blockTillTrue(5000, 10);
+    assertTrue(SE.getTopClients(10).size() >= 2);
+    
+    SE.setTopClientTracking(0, 100);
+    assertTrue(SE.getTopClients(10).isEmpty());
+    busyClient.close();
+    quietClient.close();
+    server.close();
+  }
+  
+  @Test
+  public void selectorStatsTest() throws IOException, InterruptedException, ExecutionException {
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    final TCPServer server = SE.createTCPServer("localhost", port);
+    serverFC.addTCPServer(server);
+    
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    serverFC.addTCPClient(client);
+    client.connect().get();
+    client.write(TCPTests.SMALL_TEXT_BUFFER.duplicate()).get();
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return sumEvents(SelectorStats.EventType.Read) > 0 && 
+                 sumEvents(SelectorStats.EventType.Accept) > 0;
+      }
+    }.blockTillTrue(5000);
+    
+    assertTrue(SE.getSelectorStats().size() > 0);
+    long selects = 0;
+    long wakeups = 0;
+    long wakeupRequests = 0;
+    long processedTasks = 0;
+    for(SelectorStats ss : SE.getSelectorStats()) {
+      selects += ss.getSelectCount();
+      wakeups += ss.getWakeups();
+      wakeupRequests += ss.getWakeupRequests();
+      processedTasks += ss.getProcessedTasks();
+      assertTrue(ss.getSelectCount() >= ss.getEmptySelectCount());
+      assertTrue(ss.getProcessQueueDrains() >= ss.getSelectCount());
+    }
+    assertTrue(selects > 0);
+    assertTrue(processedTasks > 0);
+    assertTrue(wakeupRequests >= wakeups);
+    assertTrue(sumEvents(SelectorStats.EventType.Connect) > 0);
+    
+    client.close();
+    server.close();
+  }
+  
+  private long sumEvents(SelectorStats.EventType type) {
+    long result = 0;
+    for(SelectorStats ss : SE.getSelectorStats()) {
+      result += ss.getEventCount(type);
+      if(ss.getEventCount(type) > 0) {
+        assertTrue(ss.getEventNanos(type) > 0);
+      }
+    }
+    return result;
+  }
+  
   @Test
   public void serverSizeTest() throws IOException {
     Server lserver = SE.createTCPServer("localhost", PortUtils.findTCPPort());
@@ -0,0 +1,127 @@
+package org.threadly.litesockets.networkutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.litesockets.TCPClient;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.ThreadedSocketExecuter;
+import org.threadly.litesockets.tcp.FakeTCPServerClient;
+import org.threadly.litesockets.tcp.TCPTests;
+import org.threadly.litesockets.utils.PortUtils;
+import org.threadly.test.concurrent.TestCondition;
+
+public class MBeanRegistrarTest {
+  PriorityScheduler PS;
+  ThreadedSocketExecuter SE;
+  int port;
+  FakeTCPServerClient serverFC;
+  TCPServer server;
+  MBeanServer mbs;
+  MBeanRegistrar registrar;
+  
+  @Before
+  public void start() throws Exception {
+    port = PortUtils.findTCPPort();
+    PS = new PriorityScheduler(5);
+    SE = new ThreadedSocketExecuter(PS);
+    SE.start();
+    serverFC = new FakeTCPServerClient();
+    server = SE.createTCPServer("localhost", port);
+    serverFC.addTCPServer(server);
+    mbs = ManagementFactory.getPlatformMBeanServer();
+    registrar = new MBeanRegistrar();
+  }
+  
+  @After
+  public void stop() {
+    registrar.unregisterAll();
+    SE.stopIfRunning();
+    PS.shutdown();
+  }
+  
+  @Test
+  public void executerAttributesTest() throws Exception {
+    ObjectName on = registrar.register(SE, "test");
+    assertTrue(mbs.isRegistered(on));
+    
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    serverFC.addTCPClient(client);
+    client.connect().get();
+    client.write(TCPTests.SMALL_TEXT_BUFFER.duplicate()).get();
+    
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        try {
+          return ((Long)mbs.getAttribute(on, "TotalRead")) > 0;
+        } catch(Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }.blockTillTrue(5000);
+    assertEquals(true, mbs.getAttribute(on, "Running"));
+    assertEquals(SE.getClientCount(), mbs.getAttribute(on, "ClientCount"));
+    assertEquals(1, mbs.getAttribute(on, "ServerCount"));
+    assertEquals(SE.getSelectorStats().size(), mbs.getAttribute(on, "SelectorCount"));
+    assertTrue(((Long)mbs.getAttribute(on, "SelectCount")) > 0);
+    assertEquals(0L, mbs.getAttribute(on, "PendingWriteBytes"));
+    
+    mbs.invoke(on, "resetStats", new Object[0], new String[0]);
+    assertEquals(0L, mbs.getAttribute(on, "TotalRead"));
+    
+    registrar.unregister(on);
+    assertFalse(mbs.isRegistered(on));
+  }
+  
+  @Test
+  public void serverOperationsTest() throws Exception {
+    ObjectName on = registrar.register(server, "testServer");
+    assertEquals("TCP", mbs.getAttribute(on, "ServerType"));
+    assertEquals(false, mbs.getAttribute(on, "AcceptPaused"));
+    
+    mbs.invoke(on, "pauseAccept", new Object[0], new String[0]);
+    assertEquals(true, mbs.getAttribute(on, "AcceptPaused"));
+    mbs.invoke(on, "resumeAccept", new Object[0], new String[0]);
+    assertEquals(false, mbs.getAttribute(on, "AcceptPaused"));
+    
+    mbs.invoke(on, "close", new Object[0], new String[0]);
+    assertTrue(server.isClosed());
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return ! mbs.isRegistered(on);
+      }
+    }.blockTillTrue(5000);
+  }
+  
+  @Test
+  public void clientCloseTest() throws Exception {
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    serverFC.addTCPClient(client);
+    client.connect().get();
+    ObjectName on = registrar.register(client);
+    assertEquals("TCP", mbs.getAttribute(on, "Protocol"));
+    assertEquals(false, mbs.getAttribute(on, "Closed"));
+    assertEquals(0, mbs.getAttribute(on, "WriteBufferSize"));
+    
+    mbs.invoke(on, "close", new Object[0], new String[0]);
+    assertTrue(client.isClosed());
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return ! mbs.isRegistered(on);
+      }
+    }.blockTillTrue(5000);
+  }
+}
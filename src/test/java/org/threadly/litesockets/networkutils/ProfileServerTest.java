@@ -1,6 +1,7 @@
 package org.threadly.litesockets.networkutils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -185,6 +186,77 @@ public class ProfileServerTest {
     pServer.stop();
   }
   
+  private String collapsedDump(final TCPClient client) {
+    client.write(ByteBuffer.wrap("collapsed\n".getBytes()));
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        MergedByteBuffers mbb = clientHandler.getClientsBuffer(client);
+        return mbb.indexOf(ProfileServer.END_DUMP) >= 0;
+      }
+    }.blockTillTrue(5000);
+    MergedByteBuffers mbb = clientHandler.getClientsBuffer(client);
+    String dump = mbb.getAsString(mbb.indexOf(ProfileServer.END_DUMP));
+    mbb.discard(mbb.remaining());
+    assertTrue(dump.startsWith(ProfileServer.START_DUMP));
+    return dump.substring(ProfileServer.START_DUMP.length());
+  }
+  
+  @Test
+  public void collapsedDumpTest() throws IOException, InterruptedException {
+    pServer.start();
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    clientHandler.addTCPClient(client);
+    assertEquals("", collapsedDump(client));
+    
+    client.write(ByteBuffer.wrap("start\n".getBytes()));
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return clientHandler.getClientsBuffer(client).remaining() == ProfileServer.STARTED_RESPONSE.remaining();
+      }
+    }.blockTillTrue(5000);
+    clientHandler.getClientsBuffer(client).discard(ProfileServer.STARTED_RESPONSE.remaining());
+    Thread.sleep(200);
+    String dump = collapsedDump(client);
+    assertTrue(dump.length() > 0);
+    for(String line : dump.split("\n")) {
+      assertTrue(line, line.matches("[^ ;]+(;[^ ;]+\\.[^ ;]+)+ [0-9]+"));
+    }
+  }
+  
+  @Test
+  public void threadFilterTest() throws IOException, InterruptedException {
+    pServer.start();
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    clientHandler.addTCPClient(client);
+    client.write(ByteBuffer.wrap("filter selectors\nstart\n".getBytes()));
+    final int expectedSize = ProfileServer.FILTER_RESPONSE.length() + "Selectors\n\n".length() + 
+                               ProfileServer.STARTED_RESPONSE.remaining();
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return clientHandler.getClientsBuffer(client).remaining() == expectedSize;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(ProfileServer.FILTER_RESPONSE + "Selectors\n\n" + getMessageAsString(ProfileServer.STARTED_RESPONSE), 
+                 clientHandler.getClientsBuffer(client).getAsString(expectedSize));
+    Thread.sleep(200);
+    String dump = collapsedDump(client);
+    assertTrue(dump.length() > 0);
+    for(String line : dump.split("\n")) {
+      assertTrue(line, line.startsWith(ThreadedSocketExecuter.SELECTOR_THREAD_NAME));
+    }
+    
+    client.write(ByteBuffer.wrap("filter bad\n".getBytes()));
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return clientHandler.getClientsBuffer(client).remaining() == ProfileServer.HELP.remaining();
+      }
+    }.blockTillTrue(5000);
+  }
+  
   public static String getMessageAsString(ByteBuffer bb) {
     MergedByteBuffers mbb = new ReuseableMergedByteBuffers();
     mbb.add(bb.duplicate());
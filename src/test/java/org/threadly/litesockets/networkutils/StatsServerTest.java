@@ -0,0 +1,139 @@
+package org.threadly.litesockets.networkutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.concurrent.future.SettableListenableFuture;
+import org.threadly.litesockets.TCPClient;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.ThreadedSocketExecuter;
+import org.threadly.litesockets.buffers.MergedByteBuffers;
+import org.threadly.litesockets.buffers.ReuseableMergedByteBuffers;
+import org.threadly.litesockets.tcp.FakeTCPServerClient;
+import org.threadly.litesockets.tcp.TCPTests;
+import org.threadly.litesockets.utils.PortUtils;
+
+public class StatsServerTest {
+  PriorityScheduler PS;
+  ThreadedSocketExecuter SE;
+  int port;
+  StatsServer sServer;
+  
+  @Before
+  public void start() throws IOException {
+    port = PortUtils.findTCPPort();
+    PS = new PriorityScheduler(5);
+    SE = new ThreadedSocketExecuter(PS);
+    SE.start();
+    sServer = new StatsServer(SE, "localhost", port);
+    sServer.start();
+  }
+  
+  @After
+  public void stop() {
+    sServer.stopIfRunning();
+    SE.stopIfRunning();
+    PS.shutdown();
+  }
+  
+  private String request(String request) throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    final MergedByteBuffers response = new ReuseableMergedByteBuffers();
+    final SettableListenableFuture<String> closed = new SettableListenableFuture<>();
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    client.setReader((c) -> {
+      synchronized(response) {
+        response.add(c.getRead());
+      }
+    });
+    client.addCloseListener((c) -> {
+      synchronized(response) {
+        closed.setResult(response.getAsString(response.remaining()));
+      }
+    });
+    client.connect().get(5, TimeUnit.SECONDS);
+    client.write(ByteBuffer.wrap(request.getBytes()));
+    return closed.get(5, TimeUnit.SECONDS);
+  }
+  
+  private static String body(String response) {
+    return response.substring(response.indexOf("\r\n\r\n") + 4);
+  }
+  
+  @Test
+  public void metricsTest() throws Exception {
+    final FakeTCPServerClient serverFC = new FakeTCPServerClient();
+    final TCPServer server = SE.createTCPServer("localhost", PortUtils.findTCPPort());
+    serverFC.addTCPServer(server);
+    sServer.addServer(server, "echo \"test\"");
+    
+    String response = request("GET /metrics HTTP/1.0\r\nHost: localhost\r\n\r\n");
+    assertTrue(response.startsWith("HTTP/1.0 200 OK\r\n"));
+    String body = body(response);
+    assertTrue(response.contains("Content-Length: " + body.length() + "\r\n"));
+    assertTrue(body.contains("# TYPE litesockets_clients gauge\nlitesockets_clients "));
+    assertTrue(body.contains("litesockets_read_bytes_total "));
+    assertTrue(body.contains("litesockets_write_flush_latency_seconds{quantile=\"0.99\"} 0.000000\n"));
+    assertTrue(body.contains("litesockets_write_flush_latency_seconds_count 0\n"));
+    assertTrue(body.contains("litesockets_selector_selects_total{selector=\"HashedSelector-0\"} "));
+    assertTrue(body.contains("litesockets_selector_events_total{selector=\"HashedSelector-0\",type=\"Read\"} "));
+    assertTrue(body.contains("litesockets_server_open{server=\"echo \\\"test\\\"\",protocol=\"TCP\"} 1\n"));
+    for(String line : body.split("\n")) {
+      assertTrue(line, line.startsWith("# TYPE litesockets_") || line.matches("litesockets_[a-z_]+(\\{.*\\})? -?[0-9]+(\\.[0-9]{6})?"));
+    }
+    
+    server.close();
+    assertTrue(! body(request("GET / HTTP/1.0\r\n\r\n")).contains("litesockets_server_open"));
+  }
+  
+  @Test
+  public void repeatedScrapeTest() throws Exception {
+    SE.setWriteLatencyTrackingEnabled(true);
+    long lastRead = -1;
+    for(int i = 0; i < 10; i++) {
+      String body = body(request("GET /metrics?i=" + i + " HTTP/1.0\r\n\r\n"));
+      int start = body.indexOf("\nlitesockets_read_bytes_total ") + "\nlitesockets_read_bytes_total ".length();
+      long read = Long.parseLong(body.substring(start, body.indexOf('\n', start)));
+      // each scrape reads at least the previous request
+      assertTrue(read > lastRead);
+      lastRead = read;
+    }
+    String body = body(request("GET /metrics HTTP/1.0\r\n\r\n"));
+    assertTrue(! body.contains("litesockets_write_flush_latency_seconds_count 0\n"));
+  }
+  
+  @Test
+  public void notFoundTest() throws Exception {
+    assertEquals(getMessageAsString(StatsServer.NOT_FOUND), request("GET /other HTTP/1.0\r\n\r\n"));
+    assertEquals(getMessageAsString(StatsServer.NOT_FOUND), request("GET /metricsother HTTP/1.0\r\n\r\n"));
+  }
+  
+  @Test
+  public void badMethodTest() throws Exception {
+    assertEquals(getMessageAsString(StatsServer.METHOD_NOT_ALLOWED), request("POST /metrics HTTP/1.0\r\n\r\n"));
+  }
+  
+  @Test
+  public void badRequestTest() throws Exception {
+    StringBuilder sb = new StringBuilder(); 
+    while(sb.length() <= StatsServer.MAX_REQUEST_SIZE) {
+      sb.append(TCPTests.SMALL_TEXT);
+    }
+    assertEquals(getMessageAsString(StatsServer.BAD_REQUEST), request(sb.toString()));
+  }
+  
+  public static String getMessageAsString(ByteBuffer bb) {
+    MergedByteBuffers mbb = new ReuseableMergedByteBuffers();
+    mbb.add(bb.duplicate());
+    return mbb.getAsString(mbb.remaining());
+  }
+}
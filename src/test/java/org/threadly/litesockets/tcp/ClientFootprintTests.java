@@ -0,0 +1,87 @@
+package org.threadly.litesockets.tcp;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.threadly.litesockets.Client;
+import org.threadly.litesockets.NoThreadSocketExecuter;
+import org.threadly.litesockets.TCPClient;
+import org.threadly.litesockets.TCPServer;
+import org.threadly.litesockets.utils.PortUtils;
+
+public class ClientFootprintTests {
+  // Guards against regressions in the heap used per idle connection.  This includes everything 
+  // reachable from the executer for the connection (ie the JDK channel and SelectionKey) but not 
+  // read buffers, since idle connections have not read anything yet.
+  public static final int MAX_IDLE_CONNECTION_BYTES = 1408;
+  private static final int CONNECTION_PAIRS = 100;
+  
+  static {
+    // allows JOL to walk lambdas (hidden classes) on newer JVMs
+    System.setProperty("jol.magicFieldOffset", "true");
+  }
+  
+  NoThreadSocketExecuter SE;
+  TCPServer server;
+  List<Client> clients;
+  int port;
+  
+  @Before
+  public void start() throws IOException {
+    port = PortUtils.findTCPPort();
+    clients = new ArrayList<>();
+    SE = new NoThreadSocketExecuter();
+    SE.start();
+    server = SE.createTCPServer("127.0.0.1", port);
+    server.setClientAcceptor((client) -> {
+      setupClient(client);
+    });
+    server.start();
+    SE.select(10);
+  }
+  
+  @After
+  public void stop() {
+    for(Client c : clients) {
+      c.close();
+    }
+    server.close();
+    SE.stopIfRunning();
+  }
+  
+  private void setupClient(Client client) {
+    clients.add(client);
+    client.setReader((c) -> c.getRead());
+    client.addCloseListener((c) -> { /* ignored */ });
+  }
+  
+  @Test
+  public void idleConnectionFootprint() throws IOException {
+    final long before = GraphLayout.parseInstance(SE).totalSize();
+    for(int i=0; i<CONNECTION_PAIRS; i++) {
+      final TCPClient client = SE.createTCPClient("127.0.0.1", port);
+      setupClient(client);
+      client.connect();
+    }
+    for(int i = 0; i < 1000 && (clients.size() < CONNECTION_PAIRS * 2 || 
+                                SE.getClientCount() < CONNECTION_PAIRS * 2); i++) {
+      SE.select(10);
+    }
+    for(int i=0; i<10; i++) {
+      SE.select(1);
+    }
+    final long after = GraphLayout.parseInstance(SE).totalSize();
+    final double bytesPerConnection = (after - before) / (double)SE.getClientCount();
+    System.out.println("Idle connection footprint: " + bytesPerConnection + " bytes");
+    assertTrue(SE.getClientCount() >= CONNECTION_PAIRS * 2);
+    assertTrue("Idle connection footprint grew to " + bytesPerConnection + " bytes", 
+               bytesPerConnection <= MAX_IDLE_CONNECTION_BYTES);
+  }
+}
@@ -2,6 +2,7 @@ package org.threadly.litesockets.tcp;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -15,6 +16,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -35,9 +37,11 @@ import org.threadly.litesockets.SocketExecuter;
 import org.threadly.litesockets.TCPClient;
 import org.threadly.litesockets.TCPServer;
 import org.threadly.litesockets.ThreadedSocketExecuter;
+import org.threadly.litesockets.utils.AddressFilter;
 import org.threadly.litesockets.utils.IOUtils;
 import org.threadly.litesockets.utils.PortUtils;
 import org.threadly.test.concurrent.TestCondition;
+import org.threadly.util.Clock;
 
 public class TCPTests {
   private static final String OS = System.getProperty("os.name").toLowerCase();
@@ -149,6 +153,93 @@ public class TCPTests {
     server.close();
   }
   
+  @Test
+  public void addressFilterTest() throws Exception {
+    final AddressFilter af = new AddressFilter();
+    af.deny("127.0.0.0/8");
+    server.setAddressFilter(af);
+    final TCPClient denied = SE.createTCPClient("localhost", port);
+    denied.setReader((c) -> c.getRead());
+    denied.connect().get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return denied.isClosed();
+      }
+    }.blockTillTrue(5000);
+    assertEquals(0, serverFC.getNumberOfClients());
+    
+    af.allow("127.0.0.1");
+    final TCPClient allowed = SE.createTCPClient("localhost", port);
+    allowed.connect().get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getNumberOfClients() == 1;
+      }
+    }.blockTillTrue(5000);
+    allowed.close();
+  }
+  
+  @Test
+  public void clientWriteRateLimitTest() throws Exception {
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    client.connect().get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getNumberOfClients() == 1;
+      }
+    }.blockTillTrue(5000);
+    final TCPClient sclient = serverFC.getClientAt(0);
+    // the first 40k is the burst, the rest takes at least 250ms
+    client.setWriteRateLimit(400000, 40000);
+    assertEquals(400000, client.getWriteRateLimiter().getRate());
+    final long start = Clock.accurateForwardProgressingMillis();
+    client.write(LARGE_TEXT_BUFFER.duplicate()).get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getClientsBuffer(sclient).remaining() == LARGE_TEXT_BUFFER.remaining();
+      }
+    }.blockTillTrue(5000);
+    assertTrue(Clock.accurateForwardProgressingMillis() - start >= 200);
+    assertEquals(LARGE_TEXT_BUFFER.remaining(), client.getWriteRateLimiter().getTotalAcquired());
+    assertTrue(client.getWriteRateLimiter().getDeferredCount() > 0);
+    client.setWriteRateLimit(0, 0);
+    assertNull(client.getWriteRateLimiter());
+    client.close();
+  }
+
+  @Test
+  public void executerWriteRateLimitTest() throws Exception {
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    final FakeTCPServerClient clientFC = new FakeTCPServerClient();
+    clientFC.addTCPClient(client);
+    client.connect().get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getNumberOfClients() == 1;
+      }
+    }.blockTillTrue(5000);
+    final TCPClient sclient = serverFC.getClientAt(0);
+    SE.setWriteRateLimit(400000, 40000);
+    final long start = Clock.accurateForwardProgressingMillis();
+    sclient.write(LARGE_TEXT_BUFFER.duplicate());
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return clientFC.getClientsBuffer(client).remaining() == LARGE_TEXT_BUFFER.remaining();
+      }
+    }.blockTillTrue(5000);
+    assertTrue(Clock.accurateForwardProgressingMillis() - start >= 200);
+    assertEquals(LARGE_TEXT_BUFFER.remaining(), SE.getWriteRateLimiter().getTotalAcquired());
+    SE.setWriteRateLimit(0, 0);
+    assertNull(SE.getWriteRateLimiter());
+    client.close();
+  }
+
   @Test
   public void noPreReaderTest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
     final TCPClient client = SE.createTCPClient("localhost", port);
@@ -868,4 +959,152 @@ public class TCPTests {
         + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024*1024));
   }
   
+  
+  @Test
+  public void adaptiveReadAllocationsTest() throws Exception {
+    final TCPClient idleClient = SE.createTCPClient("localhost", port);
+    final TCPClient bulkClient = SE.createTCPClient("localhost", port);
+    final TCPClient defaultClient = SE.createTCPClient("localhost", port);
+    assertFalse(idleClient.clientOptions().getAdaptiveReadAllocations());
+    assertTrue(idleClient.clientOptions().setAdaptiveReadAllocations(true));
+    assertTrue(idleClient.clientOptions().getAdaptiveReadAllocations());
+    assertTrue(bulkClient.clientOptions().setAdaptiveReadAllocations(true));
+    final CapacityTrackingReader idleReader = new CapacityTrackingReader();
+    final CapacityTrackingReader bulkReader = new CapacityTrackingReader();
+    final CapacityTrackingReader defaultReader = new CapacityTrackingReader();
+    idleClient.setReader(idleReader);
+    bulkClient.setReader(bulkReader);
+    defaultClient.setReader(defaultReader);
+    FutureUtils.makeCompleteFuture(Arrays.asList(idleClient.connect(), bulkClient.connect(), 
+                                                 defaultClient.connect())).get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getNumberOfClients() == 3;
+      }
+    }.blockTillTrue(5000);
+    for(TCPClient sc: serverFC.getAllClients()) {
+      if(sc.getRemoteSocketAddress().equals(idleClient.getLocalSocketAddress())) {
+        for(int i=0; i<10; i++) {
+          sc.write(SMALL_TEXT_BUFFER.duplicate()).get(5000, TimeUnit.MILLISECONDS);
+        }
+      } else if(sc.getRemoteSocketAddress().equals(bulkClient.getLocalSocketAddress())) {
+        for(int i=0; i<10; i++) {
+          sc.write(LARGE_TEXT_BUFFER.duplicate());
+        }
+      } else {
+        sc.write(SMALL_TEXT_BUFFER.duplicate());
+      }
+    }
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return idleReader.totalRead == SMALL_TEXT_BUFFER.remaining()*10 && 
+               bulkReader.totalRead == LARGE_TEXT_BUFFER.remaining()*10 && 
+               defaultReader.totalRead == SMALL_TEXT_BUFFER.remaining();
+      }
+    }.blockTillTrue(5000);
+    System.out.println("Read buffer capacity idle:"+idleReader.maxCapacity+
+                       " bulk:"+bulkReader.maxCapacity+" default:"+defaultReader.maxCapacity);
+    // idle clients should settle on small allocations, bulk clients grow up to the allocation size
+    assertTrue(idleReader.maxCapacity <= 2048);
+    assertEquals(IOUtils.DEFAULT_CLIENT_READ_BUFFER_SIZE, bulkReader.maxCapacity);
+    assertEquals(IOUtils.DEFAULT_CLIENT_READ_BUFFER_SIZE, defaultReader.maxCapacity);
+    
+    assertTrue(idleClient.clientOptions().setAdaptiveReadAllocations(false));
+    assertFalse(idleClient.clientOptions().getAdaptiveReadAllocations());
+  }
+  
+  @Test
+  public void sharedReadBufferTest() throws Exception {
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    assertFalse(client.clientOptions().getSharedReadBuffer());
+    assertTrue(client.clientOptions().setSharedReadBuffer(true));
+    assertTrue(client.clientOptions().getSharedReadBuffer());
+    final CapacityTrackingReader reader = new CapacityTrackingReader();
+    final ReuseableMergedByteBuffers received = new ReuseableMergedByteBuffers();
+    client.setReader((c) -> {
+      synchronized(received) {
+        received.add(reader.track(c.getRead()));
+      }
+    });
+    client.connect().get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return serverFC.getNumberOfClients() == 1;
+      }
+    }.blockTillTrue(5000);
+    final TCPClient sclient = serverFC.getClientAt(0);
+    sclient.write(SMALL_TEXT_BUFFER.duplicate());
+    sclient.write(LARGE_TEXT_BUFFER.duplicate());
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return reader.totalRead == SMALL_TEXT_BUFFER.remaining() + LARGE_TEXT_BUFFER.remaining();
+      }
+    }.blockTillTrue(5000);
+    // every buffer handed to the reader should be exactly the size of the data read
+    assertTrue(reader.exactSize);
+    synchronized(received) {
+      assertEquals(SMALL_TEXT, received.getAsString(SMALL_TEXT_BUFFER.remaining()));
+      assertEquals(LARGE_TEXT, received.getAsString(LARGE_TEXT_BUFFER.remaining()));
+    }
+    client.close();
+  }
+  
+  @Test
+  public void writeLatencyTest() throws Exception {
+    final TCPClient client = SE.createTCPClient("localhost", port);
+    client.connect().get(5000, TimeUnit.MILLISECONDS);
+    client.write(SMALL_TEXT_BUFFER.duplicate()).get(5000, TimeUnit.MILLISECONDS);
+    assertEquals(0, SE.getWriteFlushLatency().getCount());
+    assertEquals(0, SE.getWriteCompletionLatency().getCount());
+    
+    SE.setWriteLatencyTrackingEnabled(true);
+    ListenableFuture<?> lastFuture = null;
+    for(int i = 0; i < 10; i++) {
+      lastFuture = client.write(SMALL_TEXT_BUFFER.duplicate());
+    }
+    lastFuture.get(5000, TimeUnit.MILLISECONDS);
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return SE.getWriteCompletionLatency().getCount() == 10;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(10, SE.getWriteFlushLatency().getCount());
+    assertTrue(SE.getWriteFlushLatency().getValueAtPercentile(50) > 0);
+    assertTrue(SE.getWriteCompletionLatency().getMax() >= SE.getWriteFlushLatency().getValueAtPercentile(0));
+    
+    SE.setWriteLatencyTrackingEnabled(false);
+    client.write(SMALL_TEXT_BUFFER.duplicate()).get(5000, TimeUnit.MILLISECONDS);
+    assertEquals(10, SE.getWriteFlushLatency().getCount());
+    client.close();
+  }
+  
+  private static class CapacityTrackingReader implements Reader {
+    private volatile int totalRead = 0;
+    private volatile int maxCapacity = 0;
+    private volatile boolean exactSize = true;
+    
+    @Override
+    public void onRead(Client client) {
+      track(client.getRead());
+    }
+    
+    public ReuseableMergedByteBuffers track(ReuseableMergedByteBuffers mbb) {
+      ReuseableMergedByteBuffers result = new ReuseableMergedByteBuffers();
+      while(mbb.hasRemaining()) {
+        ByteBuffer bb = mbb.popBuffer();
+        maxCapacity = Math.max(maxCapacity, bb.capacity());
+        if(bb.capacity() != bb.remaining()) {
+          exactSize = false;
+        }
+        totalRead += bb.remaining();
+        result.add(bb);
+      }
+      return result;
+    }
+  }
 }
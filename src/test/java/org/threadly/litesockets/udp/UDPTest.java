@@ -2,27 +2,45 @@ package org.threadly.litesockets.udp;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.threadly.concurrent.PriorityScheduler;
+import org.threadly.concurrent.future.ListenableFuture;
 import org.threadly.concurrent.future.SettableListenableFuture;
+import org.threadly.litesockets.NoThreadSocketExecuter;
 import org.threadly.litesockets.SocketExecuter;
 import org.threadly.litesockets.ThreadedSocketExecuter;
 import org.threadly.litesockets.UDPClient;
 import org.threadly.litesockets.UDPServer;
 import org.threadly.litesockets.UDPServer.UDPFilterMode;
 import org.threadly.litesockets.UDPServer.UDPReader;
+import org.threadly.litesockets.UDPServer.UDPReceiveMode;
+import org.threadly.litesockets.utils.AddressFilter;
+import org.threadly.litesockets.utils.AddressFilter.FilterAction;
 import org.threadly.litesockets.utils.PortUtils;
 import org.threadly.test.concurrent.TestCondition;
+import org.threadly.util.Clock;
 
 public class UDPTest {
   PriorityScheduler PS;
@@ -409,6 +427,31 @@ public class UDPTest {
     whiteServer.close();
   }
   
+  @Test
+  public void filterHostSharedFilterTest() throws IOException {
+    final AddressFilter shared = new AddressFilter(FilterAction.Deny);
+    final UDPServer otherServer = SE.createUDPServer("127.0.0.1", PortUtils.findUDPPort());
+    try {
+      server.setAddressFilter(shared);
+      otherServer.setAddressFilter(shared);
+      final InetSocketAddress host = new InetSocketAddress("127.0.0.1", 5555);
+      server.filterHost(host);
+      // the shared filter is left alone, this server gets a copy with the host allowed
+      assertEquals(0, shared.getRuleCount());
+      assertTrue(shared == otherServer.getAddressFilter());
+      final AddressFilter af = server.getAddressFilter();
+      assertTrue(af != shared);
+      assertTrue(af.isAllowed(host));
+      assertFalse(af.isAllowed(new InetSocketAddress("127.0.0.1", 5556)));
+      // the copy belongs to this server so later hosts are added to it
+      server.filterHost(new InetSocketAddress("127.0.0.1", 5556));
+      assertTrue(af == server.getAddressFilter());
+      assertEquals(2, af.getRuleCount());
+    } finally {
+      otherServer.close();
+    }
+  }
+  
   
   @Test
   public void changeBufferSize() throws IOException, InterruptedException, ExecutionException {
@@ -538,6 +581,558 @@ public class UDPTest {
     newServer.close();
   }
 
+  @Test
+  public void receiveBatchTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final List<ByteBuffer> packets = new CopyOnWriteArrayList<>();
+    newServer.setUDPReader((bb, isa) -> packets.add(bb) && false);
+    sendPackets(newPort, 20);
+    newServer.start();
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return packets.size() == 20;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(20, newServer.getReceivedPacketCount());
+    assertEquals(20, newServer.getMaxReceiveBatchSize());
+    for(int i = 0; i < packets.size(); i++) {
+      final ByteBuffer bb = packets.get(i);
+      assertEquals(bb.remaining(), bb.capacity());
+      assertEquals("packet" + i, new String(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining()));
+    }
+    newServer.close();
+  }
+  
+  @Test
+  public void receiveBatchLimitTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final List<ByteBuffer> packets = new CopyOnWriteArrayList<>();
+    newServer.setUDPReader((bb, isa) -> packets.add(bb) && false);
+    newServer.setReceiveBatchSize(5);
+    assertEquals(5, newServer.getReceiveBatchSize());
+    sendPackets(newPort, 20);
+    newServer.start();
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return packets.size() == 20;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(5, newServer.getMaxReceiveBatchSize());
+    assertTrue(newServer.getReceiveBatchCount() >= 4);
+    assertTrue(newServer.getAverageReceiveBatchSize() <= 5);
+    newServer.close();
+  }
+  
+  @Test
+  public void receiveSliceModeTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final List<ByteBuffer> packets = new CopyOnWriteArrayList<>();
+    newServer.setUDPReader((bb, isa) -> packets.add(bb) && false);
+    newServer.setReceiveMode(UDPReceiveMode.Slice);
+    assertEquals(UDPReceiveMode.Slice, newServer.getReceiveMode());
+    sendPackets(newPort, 20);
+    newServer.start();
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return packets.size() == 20;
+      }
+    }.blockTillTrue(5000);
+    for(int i = 0; i < packets.size(); i++) {
+      final ByteBuffer bb = packets.get(i);
+      assertTrue(bb.isDirect());
+      assertTrue(bb.isReadOnly());
+      final byte[] ba = new byte[bb.remaining()];
+      bb.duplicate().get(ba);
+      assertEquals("packet" + i, new String(ba));
+    }
+    newServer.close();
+  }
+  
+  @Test
+  public void queuedWriteDrainTest() throws Exception {
+    queuedWriteDrain(UDPServer.DEFAULT_WRITE_BATCH_SIZE);
+  }
+  
+  @Test
+  public void queuedWriteDrainSingleBatchTest() throws Exception {
+    queuedWriteDrain(1);
+  }
+  
+  private void queuedWriteDrain(final int batchSize) throws Exception {
+    final int packetCount = 500;
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    newServer.setWriteBatchSize(batchSize);
+    assertEquals(batchSize, newServer.getWriteBatchSize());
+    newServer.start();
+    try (DatagramChannel receiver = DatagramChannel.open()) {
+      receiver.socket().setReceiveBufferSize(packetCount * 1024);
+      receiver.bind(new InetSocketAddress("127.0.0.1", 0));
+      final InetSocketAddress target = (InetSocketAddress)receiver.getLocalAddress();
+      final List<ListenableFuture<Long>> futures = new ArrayList<>(packetCount);
+      long expectedBytes = 0;
+      for(int i = 0; i < packetCount; i++) {
+        final byte[] ba = ("packet" + i).getBytes();
+        expectedBytes += ba.length;
+        futures.add(newServer.write(ByteBuffer.wrap(ba), target));
+      }
+      long writtenBytes = 0;
+      for(final ListenableFuture<Long> lf : futures) {
+        writtenBytes += lf.get(5, TimeUnit.SECONDS);
+      }
+      assertEquals(expectedBytes, writtenBytes);
+      final ByteBuffer bb = ByteBuffer.allocate(1500);
+      for(int i = 0; i < packetCount; i++) {
+        bb.clear();
+        receiver.receive(bb);
+        bb.flip();
+        assertEquals("packet" + i, new String(bb.array(), 0, bb.remaining()));
+      }
+    }
+    newServer.close();
+  }
+  
+  @Test
+  public void receiveInlineModeTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final FakeUDPServerClient newFC = new FakeUDPServerClient(SE);
+    final List<String> inlineReads = new CopyOnWriteArrayList<>();
+    final List<String> readThreads = new CopyOnWriteArrayList<>();
+    try (DatagramChannel ignored = DatagramChannel.open(); 
+         DatagramChannel optedIn = DatagramChannel.open()) {
+      ignored.bind(new InetSocketAddress("127.0.0.1", 0));
+      optedIn.bind(new InetSocketAddress("127.0.0.1", 0));
+      final InetSocketAddress optedInAddress = (InetSocketAddress)optedIn.getLocalAddress();
+      newServer.setReceiveMode(UDPReceiveMode.Inline);
+      newServer.setUDPReader((bb, isa) -> {
+        final byte[] ba = new byte[bb.remaining()];
+        bb.get(ba);
+        inlineReads.add(new String(ba));
+        readThreads.add(Thread.currentThread().getName());
+        return isa.equals(optedInAddress);
+      });
+      newFC.AddUDPServer(newServer);
+      final InetSocketAddress target = new InetSocketAddress("127.0.0.1", newPort);
+      ignored.send(ByteBuffer.wrap("ignored".getBytes()), target);
+      optedIn.send(ByteBuffer.wrap(GET.getBytes()), target);
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newFC.clientList.size() == 1 && newFC.clients.get(newFC.clientList.get(0)).remaining() > 0;
+        }
+      }.blockTillTrue(5000);
+      assertEquals(2, inlineReads.size());
+      assertTrue(inlineReads.contains("ignored"));
+      if(SE instanceof ThreadedSocketExecuter) {
+        for(final String name : readThreads) {
+          assertTrue(name.startsWith(ThreadedSocketExecuter.SELECTOR_THREAD_NAME));
+        }
+      }
+      final UDPClient rc = newFC.clientList.get(0);
+      assertEquals(optedInAddress, rc.getRemoteSocketAddress());
+      assertEquals(GET, newFC.clients.get(rc).getAsString(newFC.clients.get(rc).remaining()));
+    }
+    newServer.close();
+  }
+  
+  @Test
+  public void clientTableMaxClientsTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final AtomicInteger accepted = new AtomicInteger();
+    final AtomicInteger closed = new AtomicInteger();
+    newServer.setClientAcceptor((c) -> {
+      accepted.incrementAndGet();
+      c.addCloseListener((cc) -> closed.incrementAndGet());
+    });
+    newServer.setMaxClients(4);
+    assertEquals(4, newServer.getMaxClients());
+    newServer.start();
+    for(int i = 0; i < 10; i++) {
+      final int expected = i + 1;
+      sendPackets(newPort, 1);
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return accepted.get() == expected;
+        }
+      }.blockTillTrue(5000);
+    }
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return closed.get() == 6;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(4, newServer.getClientCount());
+    assertEquals(6, newServer.getOverflowEvictionCount());
+    assertEquals(0, newServer.getIdleEvictionCount());
+    newServer.close();
+  }
+
+  @Test
+  public void clientTableIdleTimeoutTest() throws Exception {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final AtomicInteger accepted = new AtomicInteger();
+    final AtomicInteger closed = new AtomicInteger();
+    newServer.setClientAcceptor((c) -> {
+      accepted.incrementAndGet();
+      c.addCloseListener((cc) -> closed.incrementAndGet());
+    });
+    newServer.setClientIdleTimeout(100);
+    assertEquals(100, newServer.getClientIdleTimeout());
+    newServer.start();
+    for(int i = 0; i < 3; i++) {
+      sendPackets(newPort, 1);
+    }
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return accepted.get() == 3;
+      }
+    }.blockTillTrue(5000);
+    Thread.sleep(300);
+    if(SE instanceof NoThreadSocketExecuter) {
+      // select() blocks until there is I/O, wake it so the scheduled idle sweep runs
+      ((NoThreadSocketExecuter)SE).wakeup();
+    }
+    new TestCondition(){
+      @Override
+      public boolean get() {
+        return closed.get() == 3;
+      }
+    }.blockTillTrue(5000);
+    assertEquals(0, newServer.getClientCount());
+    assertEquals(3, newServer.getIdleEvictionCount());
+    assertEquals(0, newServer.getOverflowEvictionCount());
+    newServer.close();
+  }
+
+  @Test
+  public void clientTableRemoveOnCloseTest() throws IOException {
+    final UDPClient c = server.createUDPClient("127.0.0.1", 1234);
+    assertTrue(c == server.createUDPClient("127.0.0.1", 1234));
+    final int count = server.getClientCount();
+    c.close();
+    assertEquals(count - 1, server.getClientCount());
+    assertFalse(c == server.createUDPClient("127.0.0.1", 1234));
+  }
+
+  @Test
+  public void addressFilterTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    final List<InetSocketAddress> reads = new CopyOnWriteArrayList<>();
+    newServer.setUDPReader((bb, isa) -> reads.add(isa) && false);
+    try (DatagramChannel denied = DatagramChannel.open(); 
+         DatagramChannel allowed = DatagramChannel.open()) {
+      denied.bind(new InetSocketAddress("127.0.0.1", 0));
+      allowed.bind(new InetSocketAddress("127.0.0.1", 0));
+      final int allowedPort = ((InetSocketAddress)allowed.getLocalAddress()).getPort();
+      final AddressFilter af = new AddressFilter();
+      af.deny("127.0.0.0/8");
+      af.allow("127.0.0.0/24", allowedPort, allowedPort);
+      newServer.setAddressFilter(af);
+      assertTrue(af == newServer.getAddressFilter());
+      newServer.start();
+      final InetSocketAddress target = new InetSocketAddress("127.0.0.1", newPort);
+      denied.send(ByteBuffer.wrap(GET.getBytes()), target);
+      allowed.send(ByteBuffer.wrap(GET.getBytes()), target);
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newServer.getReceivedPacketCount() == 2;
+        }
+      }.blockTillTrue(5000);
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return reads.size() == 1;
+        }
+      }.blockTillTrue(5000);
+      assertEquals(allowed.getLocalAddress(), reads.get(0));
+    }
+    newServer.close();
+  }
+
+  @Test
+  public void multiChannelServerTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort, 4);
+    if(! System.getProperty("java.specification.version").startsWith("1.") && 
+        System.getProperty("os.name").toLowerCase().contains("linux")) {
+      // SO_REUSEPORT is available from java 9
+      assertEquals(4, newServer.getChannelCount());
+    }
+    // the additional channels are not counted as servers, only the setup server and this one
+    assertEquals(2, SE.getServerCount());
+    final FakeUDPServerClient newFC = new FakeUDPServerClient(SE);
+    newFC.AddUDPServer(newServer);
+    final List<DatagramChannel> senders = new ArrayList<>();
+    try {
+      final InetSocketAddress target = new InetSocketAddress("127.0.0.1", newPort);
+      for(int i = 0; i < 16; i++) {
+        final DatagramChannel dc = DatagramChannel.open();
+        senders.add(dc);
+        dc.bind(new InetSocketAddress("127.0.0.1", 0));
+        dc.socket().setSoTimeout(5000);
+        dc.send(ByteBuffer.wrap(GET.getBytes()), target);
+      }
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newFC.clientList.size() == 16;
+        }
+      }.blockTillTrue(5000);
+      assertEquals(16, newServer.getClientCount());
+      assertEquals(16, newServer.getReceivedPacketCount());
+      for(final UDPClient c : newFC.clientList) {
+        c.write(ByteBuffer.wrap(GET.getBytes()));
+      }
+      for(final DatagramChannel dc : senders) {
+        final DatagramPacket dp = new DatagramPacket(new byte[100], 100);
+        dc.socket().receive(dp);
+        assertEquals(GET, new String(dp.getData(), 0, dp.getLength()));
+        assertEquals(newPort, dp.getPort());
+      }
+    } finally {
+      for(final DatagramChannel dc : senders) {
+        dc.close();
+      }
+    }
+    newServer.close();
+    assertTrue(newServer.isClosed());
+  }
+
+  @Test
+  public void connectClientTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort, 1, true);
+    final FakeUDPServerClient newFC = new FakeUDPServerClient(SE);
+    newFC.AddUDPServer(newServer);
+    try (DatagramChannel dc = DatagramChannel.open()) {
+      final InetSocketAddress target = new InetSocketAddress("127.0.0.1", newPort);
+      dc.bind(new InetSocketAddress("127.0.0.1", 0));
+      dc.socket().setSoTimeout(5000);
+      dc.send(ByteBuffer.wrap(GET.getBytes()), target);
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newFC.clientList.size() == 1;
+        }
+      }.blockTillTrue(5000);
+      final UDPClient c = newFC.clientList.get(0);
+      if(! System.getProperty("java.specification.version").startsWith("1.") && 
+          System.getProperty("os.name").toLowerCase().contains("linux")) {
+        // SO_REUSEPORT is available from java 9
+        assertTrue(newServer.isPortShared());
+      }
+      final boolean connected = newServer.isPortShared() && newServer.connectClient(c);
+      assertEquals(connected ? 1 : 0, newServer.getConnectedClientCount());
+      assertEquals(1, newServer.getChannelCount());
+      // connected channels are not counted as servers
+      assertEquals(2, SE.getServerCount());
+      assertEquals(connected, newServer.isPortShared() && newServer.connectClient(c));
+      // traffic in both directions goes through the connected channel when there is one
+      for(int i = 0; i < 10; i++) {
+        dc.send(ByteBuffer.wrap(GET.getBytes()), target);
+      }
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newServer.getReceivedPacketCount() == 11;
+        }
+      }.blockTillTrue(5000);
+      assertEquals(1, newServer.getClientCount());
+      c.write(ByteBuffer.wrap(GET.getBytes()));
+      final DatagramPacket dp = new DatagramPacket(new byte[100], 100);
+      dc.socket().receive(dp);
+      assertEquals(GET, new String(dp.getData(), 0, dp.getLength()));
+      assertEquals(newPort, dp.getPort());
+      // closing the client closes its channel without losing its stats
+      c.close();
+      assertEquals(0, newServer.getConnectedClientCount());
+      assertEquals(11, newServer.getReceivedPacketCount());
+      assertFalse(newServer.isClosed());
+      // datagrams can be lost until the selector releases the closed channel, so keep sending
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          try {
+            dc.send(ByteBuffer.wrap(GET.getBytes()), target);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          return newFC.clientList.size() == 2;
+        }
+      }.blockTillTrue(5000, 20);
+      assertEquals(connected, newServer.isPortShared() && newServer.connectClient(newFC.clientList.get(1)));
+    }
+    newServer.close();
+    assertTrue(newServer.isClosed());
+    assertEquals(0, newServer.getConnectedClientCount());
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void connectClientWithoutPortSharingTest() throws IOException {
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", PortUtils.findUDPPort());
+    try {
+      assertFalse(newServer.isPortShared());
+      newServer.connectClient(newServer.createUDPClient("127.0.0.1", 1));
+    } finally {
+      newServer.close();
+    }
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void connectOtherServersClientTest() throws IOException {
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", PortUtils.findUDPPort());
+    try {
+      newServer.connectClient(server.createUDPClient("127.0.0.1", 1));
+    } finally {
+      newServer.close();
+    }
+  }
+
+  @Test
+  public void multicastTest() throws IOException {
+    final NetworkInterface lo = NetworkInterface.getByInetAddress(InetAddress.getByName("127.0.0.1"));
+    final InetAddress group = InetAddress.getByName("239.255.42.99");
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("0.0.0.0", newPort);
+    final FakeUDPServerClient newFC = new FakeUDPServerClient(SE);
+    newFC.AddUDPServer(newServer);
+    final InetSocketAddress groupAddress = new InetSocketAddress(group, newPort);
+    newServer.joinGroup(group, lo, InetAddress.getByName("127.0.0.1"));
+    assertEquals(1, newServer.getGroupMemberships().size());
+    try (DatagramChannel source = DatagramChannel.open(StandardProtocolFamily.INET);
+         DatagramChannel otherSource = DatagramChannel.open(StandardProtocolFamily.INET);
+         DatagramChannel receiver = DatagramChannel.open(StandardProtocolFamily.INET)) {
+      source.bind(new InetSocketAddress("127.0.0.1", 0));
+      source.setOption(StandardSocketOptions.IP_MULTICAST_IF, lo);
+      otherSource.bind(new InetSocketAddress("127.0.0.2", 0));
+      otherSource.setOption(StandardSocketOptions.IP_MULTICAST_IF, lo);
+      // only the joined source is received, the other one is sent first so would be read first
+      otherSource.send(ByteBuffer.wrap(GET.getBytes()), groupAddress);
+      source.send(ByteBuffer.wrap(GET.getBytes()), groupAddress);
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newFC.clientList.size() == 1 && newFC.clients.get(newFC.clientList.get(0)).remaining() > 0;
+        }
+      }.blockTillTrue(5000);
+      assertEquals(source.getLocalAddress(), newFC.clientList.get(0).getRemoteSocketAddress());
+      assertEquals(1, newServer.getReceivedPacketCount());
+
+      // writes to a group go out of the chosen interface
+      final int receivePort = PortUtils.findUDPPort();
+      receiver.bind(new InetSocketAddress(receivePort));
+      receiver.join(group, lo);
+      receiver.socket().setSoTimeout(5000);
+      newServer.setMulticastInterface(lo);
+      newServer.setMulticastTimeToLive(0);
+      newServer.setMulticastLoopback(true);
+      newServer.write(ByteBuffer.wrap(GET.getBytes()), new InetSocketAddress(group, receivePort));
+      final DatagramPacket dp = new DatagramPacket(new byte[100], 100);
+      receiver.socket().receive(dp);
+      assertEquals(GET, new String(dp.getData(), 0, dp.getLength()));
+
+      // after leaving only the unicast datagram sent after the group one arrives
+      assertTrue(newServer.leaveGroup(group, lo));
+      assertFalse(newServer.leaveGroup(group, lo));
+      assertEquals(0, newServer.getGroupMemberships().size());
+      source.send(ByteBuffer.wrap(GET.getBytes()), groupAddress);
+      source.send(ByteBuffer.wrap(GET.getBytes()), new InetSocketAddress("127.0.0.1", newPort));
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          return newServer.getReceivedPacketCount() >= 2;
+        }
+      }.blockTillTrue(5000);
+      assertEquals(2, newServer.getReceivedPacketCount());
+    }
+    newServer.close();
+    assertTrue(newServer.isClosed());
+  }
+
+  @Test
+  public void multicastMultiChannelTest() throws IOException {
+    final UDPServer newServer = SE.createUDPServer("0.0.0.0", PortUtils.findUDPPort(), 2);
+    try {
+      newServer.joinGroup(InetAddress.getByName("239.255.42.99"), 
+                          NetworkInterface.getByInetAddress(InetAddress.getByName("127.0.0.1")));
+      // without SO_REUSEPORT the server only has one channel
+      assertEquals(1, newServer.getChannelCount());
+    } catch (IllegalStateException e) {
+      assertEquals(2, newServer.getChannelCount());
+    } finally {
+      newServer.close();
+    }
+  }
+
+  @Test
+  public void writeRateLimitTest() throws IOException {
+    final int newPort = PortUtils.findUDPPort();
+    final UDPServer newServer = SE.createUDPServer("127.0.0.1", newPort);
+    newServer.start();
+    // the first 1000 bytes are the burst, the rest takes at least 450ms
+    newServer.setWriteRateLimit(20000, 1000);
+    try (DatagramChannel dc = DatagramChannel.open()) {
+      dc.bind(new InetSocketAddress("127.0.0.1", 0));
+      dc.socket().setSoTimeout(5000);
+      final long start = Clock.accurateForwardProgressingMillis();
+      for(int i = 0; i < 20; i++) {
+        newServer.write(ByteBuffer.allocate(500), (InetSocketAddress)dc.getLocalAddress());
+      }
+      final DatagramPacket dp = new DatagramPacket(new byte[1000], 1000);
+      for(int i = 0; i < 20; i++) {
+        dc.socket().receive(dp);
+        assertEquals(500, dp.getLength());
+      }
+      assertTrue(Clock.accurateForwardProgressingMillis() - start >= 400);
+    }
+    assertEquals(10000, newServer.getWriteRateLimiter().getTotalAcquired());
+    assertTrue(newServer.getWriteRateLimiter().getDeferredCount() > 0);
+    newServer.setWriteRateLimit(0, 0);
+    assertNull(newServer.getWriteRateLimiter());
+    newServer.close();
+  }
+
+  @Test
+  public void topClientsWriteTest() throws IOException {
+    SE.setTopClientTracking(10, 100);
+    try (DatagramChannel dc = DatagramChannel.open()) {
+      dc.bind(new InetSocketAddress("127.0.0.1", 0));
+      final UDPClient c = server.createUDPClient("127.0.0.1", ((InetSocketAddress)dc.getLocalAddress()).getPort());
+      new TestCondition(){
+        @Override
+        public boolean get() {
+          // keep writing so the window which completes has this clients writes in it
+          c.write(ByteBuffer.wrap(GET.getBytes()));
+          return SE.getTopClients(10).stream().anyMatch((e) -> e.getItem() == c);
+        }
+      }.blockTillTrue(5000, 20);
+    } finally {
+      SE.setTopClientTracking(0, 100);
+    }
+  }
+
+  private static void sendPackets(final int port, final int count) throws IOException {
+    try (DatagramChannel dc = DatagramChannel.open()) {
+      for(int i = 0; i < count; i++) {
+        dc.send(ByteBuffer.wrap(("packet" + i).getBytes()), new InetSocketAddress("127.0.0.1", port));
+      }
+    }
+  }
+
   public void printBA(byte[] ba) {
     printBB(ByteBuffer.wrap(ba));
   }
@@ -0,0 +1,181 @@
+package org.threadly.litesockets.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.threadly.litesockets.utils.AddressFilter.FilterAction;
+
+public class AddressFilterTests {
+
+  private static boolean allowed(AddressFilter af, String host, int port) throws UnknownHostException {
+    return af.isAllowed(InetAddress.getByName(host), port);
+  }
+
+  @Test
+  public void emptyFilterTest() throws UnknownHostException {
+    assertTrue(allowed(new AddressFilter(), "10.0.0.1", 80));
+    assertTrue(allowed(new AddressFilter(), "::1", 80));
+    assertFalse(allowed(new AddressFilter(FilterAction.Deny), "10.0.0.1", 80));
+    assertFalse(allowed(new AddressFilter(FilterAction.Deny), "::1", 80));
+    assertFalse(new AddressFilter(FilterAction.Deny).isAllowed(null, 80));
+  }
+
+  @Test
+  public void ipv4CidrTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter();
+    af.deny("10.0.0.0/8");
+    af.allow("10.1.0.0/16");
+    af.deny("10.1.2.3");
+    assertFalse(allowed(af, "10.0.0.1", 80));
+    assertFalse(allowed(af, "10.255.255.255", 80));
+    assertTrue(allowed(af, "10.1.0.1", 80));
+    assertTrue(allowed(af, "10.1.2.4", 80));
+    assertFalse(allowed(af, "10.1.2.3", 80));
+    assertTrue(allowed(af, "11.0.0.1", 80));
+    assertTrue(allowed(af, "9.255.255.255", 80));
+    // ipv4 rules do not apply to ipv6
+    assertTrue(allowed(af, "2001:db8::1", 80));
+    assertEquals(3, af.getRuleCount());
+  }
+
+  @Test
+  public void copyTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter(FilterAction.Deny);
+    af.allow("10.0.0.0/8");
+    AddressFilter copy = new AddressFilter(af);
+    assertEquals(FilterAction.Deny, copy.getDefaultAction());
+    assertTrue(allowed(copy, "10.0.0.1", 80));
+    copy.allow("11.0.0.0/8");
+    af.deny("10.1.0.0/16");
+    assertTrue(allowed(copy, "11.0.0.1", 80));
+    assertTrue(allowed(copy, "10.1.0.1", 80));
+    assertFalse(allowed(af, "11.0.0.1", 80));
+    assertFalse(allowed(af, "10.1.0.1", 80));
+    assertEquals(2, copy.getRuleCount());
+    assertEquals(2, af.getRuleCount());
+  }
+
+  @Test
+  public void ipv6CidrTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter(FilterAction.Deny);
+    af.allow("2001:db8::/32");
+    af.deny("2001:db8:1::/48");
+    assertTrue(allowed(af, "2001:db8::1", 80));
+    assertTrue(allowed(af, "2001:db8:ffff::1", 80));
+    assertFalse(allowed(af, "2001:db8:1::1", 80));
+    assertFalse(allowed(af, "2001:db9::1", 80));
+    assertFalse(allowed(af, "10.0.0.1", 80));
+  }
+
+  @Test
+  public void unalignedPrefixTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter();
+    // host bits past the prefix are ignored
+    af.deny("192.168.1.77/26");
+    assertFalse(allowed(af, "192.168.1.64", 80));
+    assertFalse(allowed(af, "192.168.1.127", 80));
+    assertTrue(allowed(af, "192.168.1.63", 80));
+    assertTrue(allowed(af, "192.168.1.128", 80));
+  }
+
+  @Test
+  public void defaultRouteTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter();
+    af.deny("0.0.0.0/0");
+    af.allow("127.0.0.0/8");
+    assertFalse(allowed(af, "8.8.8.8", 80));
+    assertTrue(allowed(af, "127.0.0.1", 80));
+  }
+
+  @Test
+  public void portRangeTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter();
+    af.deny("10.0.0.0/8", 1000, 2000);
+    assertTrue(allowed(af, "10.0.0.1", 999));
+    assertFalse(allowed(af, "10.0.0.1", 1000));
+    assertFalse(allowed(af, "10.0.0.1", 2000));
+    assertTrue(allowed(af, "10.0.0.1", 2001));
+    // a longer prefix only overrides the ports it matches
+    af.allow("10.0.0.0/24", 1500, 1500);
+    assertTrue(allowed(af, "10.0.0.1", 1500));
+    assertFalse(allowed(af, "10.0.0.1", 1501));
+    // deny wins over allow on the same prefix
+    af.deny("10.0.0.0/24", 1500, 1500);
+    assertFalse(allowed(af, "10.0.0.1", 1500));
+    assertTrue(af.isAllowed(new InetSocketAddress("10.0.0.1", 80)));
+  }
+
+  @Test
+  public void removeAndClearTest() throws UnknownHostException {
+    AddressFilter af = new AddressFilter();
+    af.deny("10.0.0.0/8");
+    af.deny("10.0.0.0/8", 80, 80);
+    af.deny("172.16.0.0/12");
+    assertFalse(allowed(af, "10.0.0.1", 80));
+    assertTrue(af.remove("10.0.0.0/8"));
+    assertFalse(af.remove("10.0.0.0/8"));
+    assertEquals(1, af.getRuleCount());
+    assertTrue(allowed(af, "10.0.0.1", 80));
+    assertFalse(allowed(af, "172.16.0.1", 80));
+    af.clear();
+    assertEquals(0, af.getRuleCount());
+    assertTrue(allowed(af, "172.16.0.1", 80));
+  }
+
+  @Test
+  public void randomPrefixesTest() throws UnknownHostException {
+    // check the trie against a linear scan of the rules
+    Random r = new Random(1);
+    AddressFilter af = new AddressFilter();
+    int[] addresses = new int[200];
+    int[] lengths = new int[200];
+    boolean[] deny = new boolean[200];
+    for(int i = 0; i < addresses.length; i++) {
+      addresses[i] = r.nextInt(8) << 29 | r.nextInt(4) << 20 | r.nextInt();
+      lengths[i] = r.nextInt(33);
+      addresses[i] &= lengths[i] == 0 ? 0 : -1 << (32 - lengths[i]);
+      deny[i] = r.nextBoolean();
+      String cidr = toHost(addresses[i]) + "/" + lengths[i];
+      if(deny[i]) {
+        af.deny(cidr);
+      } else {
+        af.allow(cidr);
+      }
+    }
+    for(int i = 0; i < 10000; i++) {
+      int addr = r.nextBoolean() ? addresses[r.nextInt(addresses.length)] ^ r.nextInt(1 << r.nextInt(31)) : r.nextInt();
+      int bestLength = -1;
+      boolean expected = true;
+      for(int j = 0; j < addresses.length; j++) {
+        int mask = lengths[j] == 0 ? 0 : -1 << (32 - lengths[j]);
+        if((addr & mask) == addresses[j] &&
+            (lengths[j] > bestLength || (lengths[j] == bestLength && deny[j]))) {
+          bestLength = lengths[j];
+          expected = ! deny[j];
+        }
+      }
+      assertEquals(toHost(addr), expected, allowed(af, toHost(addr), 80));
+    }
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void badPrefixTest() {
+    new AddressFilter().deny("10.0.0.0/33");
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void badPortRangeTest() {
+    new AddressFilter().deny("10.0.0.0/8", 100, 99);
+  }
+
+  private static String toHost(int addr) {
+    return (addr >>> 24) + "." + ((addr >> 16) & 0xff) + "." + ((addr >> 8) & 0xff) + "." + (addr & 0xff);
+  }
+}
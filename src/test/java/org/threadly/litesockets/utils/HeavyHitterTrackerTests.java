@@ -0,0 +1,88 @@
+package org.threadly.litesockets.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.threadly.litesockets.utils.HeavyHitterTracker.Entry;
+
+public class HeavyHitterTrackerTests {
+  private static final long START = 1_000_000_000L;
+  private static final long WINDOW = 1000;
+  
+  @Test
+  public void exactUnderCapacityTest() {
+    HeavyHitterTracker<String> hht = new HeavyHitterTracker<>(10, WINDOW, START);
+    for(int i = 0; i < 5; i++) {
+      for(int j = 0; j <= i; j++) {
+        hht.add("item" + i, 100, START + j);
+      }
+    }
+    // nothing is reported till the window completes
+    assertTrue(hht.getTopItems(10, START + WINDOW - 1).isEmpty());
+    
+    List<Entry<String>> top = hht.getTopItems(10, START + WINDOW);
+    assertEquals(5, top.size());
+    for(int i = 0; i < 5; i++) {
+      assertEquals("item" + (4 - i), top.get(i).getItem());
+      assertEquals((5 - i) * 100, top.get(i).getCount());
+      assertEquals(0, top.get(i).getError());
+    }
+    assertEquals(2, hht.getTopItems(2, START + WINDOW).size());
+    assertEquals("item4", hht.getTopItems(1, START + WINDOW).get(0).getItem());
+  }
+  
+  @Test
+  public void heavyHittersFoundTest() {
+    HeavyHitterTracker<Integer> hht = new HeavyHitterTracker<>(20, WINDOW, START);
+    Random r = new Random(1);
+    long total = 0;
+    for(int i = 0; i < 100_000; i++) {
+      final int item;
+      if(i % 10 == 0) {
+        item = -1;
+      } else if(i % 10 == 5) {
+        item = -2;
+      } else {
+        item = r.nextInt(10_000);
+      }
+      final int weight = item == -1 ? 20 : 10;
+      hht.add(item, weight, START);
+      total += weight;
+    }
+    List<Entry<Integer>> top = hht.getTopItems(2, START + WINDOW);
+    assertEquals(-1, (int)top.get(0).getItem());
+    assertEquals(-2, (int)top.get(1).getItem());
+    for(Entry<Integer> e : top) {
+      // the error is bounded by the total divided by the capacity
+      assertTrue(e.getError() <= total / 20);
+      assertTrue(e.getGuaranteedCount() <= e.getCount());
+    }
+    assertTrue(top.get(0).getGuaranteedCount() <= 10_000 * 20);
+    assertTrue(top.get(0).getCount() >= 10_000 * 20);
+  }
+  
+  @Test
+  public void windowRotationTest() {
+    HeavyHitterTracker<String> hht = new HeavyHitterTracker<>(4, WINDOW, START);
+    hht.add("first", 100, START);
+    hht.add("second", 100, START + WINDOW);
+    
+    List<Entry<String>> top = hht.getTopItems(10, START + (WINDOW * 2) - 1);
+    assertEquals(1, top.size());
+    assertEquals("first", top.get(0).getItem());
+    
+    top = hht.getTopItems(10, START + (WINDOW * 2));
+    assertEquals(1, top.size());
+    assertEquals("second", top.get(0).getItem());
+    
+    // a window with no adds reports nothing
+    assertTrue(hht.getTopItems(10, START + (WINDOW * 3)).isEmpty());
+    hht.add("third", 100, START + (WINDOW * 3) + 10);
+    // skipping a whole window also reports nothing
+    assertTrue(hht.getTopItems(10, START + (WINDOW * 5)).isEmpty());
+  }
+}
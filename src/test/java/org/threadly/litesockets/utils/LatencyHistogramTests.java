@@ -0,0 +1,69 @@
+package org.threadly.litesockets.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTests {
+  
+  @Test
+  public void emptyTest() {
+    LatencyHistogram lh = new LatencyHistogram();
+    assertEquals(0, lh.getCount());
+    assertEquals(0, lh.getMax());
+    assertEquals(0, lh.getMean(), 0);
+    assertEquals(0, lh.getValueAtPercentile(99));
+  }
+  
+  @Test
+  public void smallValuesExactTest() {
+    LatencyHistogram lh = new LatencyHistogram();
+    for(int i = 1; i <= 20; i++) {
+      lh.recordValue(i);
+    }
+    assertEquals(20, lh.getCount());
+    assertEquals(20, lh.getMax());
+    assertEquals(10.5, lh.getMean(), 0.0001);
+    assertEquals(10, lh.getValueAtPercentile(50));
+    assertEquals(19, lh.getValueAtPercentile(95));
+    assertEquals(20, lh.getValueAtPercentile(100));
+    assertEquals(1, lh.getValueAtPercentile(0));
+  }
+  
+  @Test
+  public void bucketErrorTest() {
+    for(long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = (value * 3) + 7) {
+      int index = LatencyHistogram.bucketIndex(value);
+      long highest = LatencyHistogram.bucketHighestValue(index);
+      assertTrue(highest >= value);
+      assertTrue((highest - value) <= (value / (LatencyHistogram.SUB_BUCKET_COUNT / 2)));
+      assertEquals(index, LatencyHistogram.bucketIndex(highest));
+    }
+    LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+  }
+  
+  @Test
+  public void percentilesTest() {
+    LatencyHistogram lh = new LatencyHistogram();
+    for(int i = 0; i < 990; i++) {
+      lh.recordValue(1_000_000); // 1ms
+    }
+    for(int i = 0; i < 10; i++) {
+      lh.recordValue(100_000_000); // 100ms
+    }
+    lh.recordValue(-5);
+    assertEquals(1001, lh.getCount());
+    assertEquals(100_000_000, lh.getMax());
+    long p50 = lh.getValueAtPercentile(50);
+    assertTrue(p50 >= 1_000_000 && p50 < 1_040_000);
+    long p99 = lh.getValueAtPercentile(99);
+    assertTrue(p99 >= 1_000_000 && p99 < 1_040_000);
+    assertEquals(100_000_000, lh.getValueAtPercentile(99.9));
+    
+    lh.reset();
+    assertEquals(0, lh.getCount());
+    assertEquals(0, lh.getMax());
+    assertEquals(0, lh.getValueAtPercentile(50));
+  }
+}
@@ -0,0 +1,119 @@
+package org.threadly.litesockets.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.threadly.litesockets.utils.SimpleByteStats.RateWindow;
+
+public class TokenBucketTests {
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void acquireTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    assertEquals(500, tb.getAvailable(0));
+    assertEquals(300, tb.acquire(1, 300, 0));
+    assertEquals(200, tb.acquire(1, 300, 0));
+    assertEquals(0, tb.acquire(1, 300, 0));
+    assertEquals(1, tb.getDeferredCount());
+    // 1000 per second is 1 per milli
+    assertEquals(100, tb.getDelayMillis(100, 0));
+    assertEquals(50, tb.acquire(1, 300, 50 * MILLI));
+    assertEquals(550, tb.getTotalAcquired());
+  }
+
+  @Test
+  public void acquireMinTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    assertEquals(450, tb.acquire(1, 450, 0));
+    assertEquals(0, tb.acquire(100, 300, 0));
+    assertEquals(100, tb.acquire(100, 300, 50 * MILLI));
+    // the min is limited to the burst size
+    assertEquals(500, tb.acquire(1000, 1000, 1000 * MILLI));
+  }
+
+  @Test
+  public void refillCapsAtBurstTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    assertEquals(500, tb.acquire(1, 500, 0));
+    assertEquals(500, tb.getAvailable(10000 * MILLI));
+    assertEquals(1, tb.getDelayMillis(100, 10000 * MILLI));
+  }
+
+  @Test
+  public void fractionalRefillTest() {
+    // 10 per second, checking every 30ms must not lose the partial tokens
+    TokenBucket tb = new TokenBucket(10, 10, 0);
+    assertEquals(10, tb.acquire(1, 10, 0));
+    long taken = 0;
+    for(long now = 0; now <= 1000 * MILLI; now += 30 * MILLI) {
+      taken += tb.acquire(1, 10, now);
+    }
+    assertEquals(9, taken);
+  }
+
+  @Test
+  public void tryAcquireTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    assertTrue(tb.tryAcquire(400, 0));
+    assertFalse(tb.tryAcquire(400, 0));
+    assertTrue(tb.tryAcquire(100, 0));
+    // larger than the burst goes through once full, leaving the bucket in debt
+    assertTrue(tb.tryAcquire(800, 500 * MILLI));
+    assertEquals(-300, tb.getAvailable(500 * MILLI));
+    assertEquals(800, tb.getDelayMillis(800, 500 * MILLI));
+    assertFalse(tb.tryAcquire(1, 500 * MILLI));
+    assertTrue(tb.tryAcquire(1, 801 * MILLI));
+  }
+
+  @Test
+  public void releaseTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    assertEquals(500, tb.acquire(1, 1000, 0));
+    tb.release(200);
+    assertEquals(200, tb.getAvailable(0));
+    assertEquals(300, tb.getTotalAcquired());
+    tb.release(1000);
+    assertEquals(500, tb.getAvailable(0));
+  }
+
+  @Test
+  public void achievedRateTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    assertEquals(0, tb.getAchievedRate(RateWindow.OneSecond, 0), 0);
+    tb.acquire(1, 500, 0);
+    tb.acquire(1, 1000, 1000 * MILLI);
+    assertEquals(500, tb.getAchievedRate(RateWindow.OneSecond, 2000 * MILLI), 0.001);
+    assertEquals(100, tb.getAchievedRate(RateWindow.TenSeconds, 2000 * MILLI), 0.001);
+    // released tokens were not written
+    tb.acquire(1, 1000, 2500 * MILLI);
+    tb.release(200, 2500 * MILLI);
+    assertEquals(300, tb.getAchievedRate(RateWindow.OneSecond, 3000 * MILLI), 0.001);
+  }
+
+  @Test
+  public void achievedRateAfterIdleTest() {
+    TokenBucket tb = new TokenBucket(1000, 500, 0);
+    for(long now = 0; now < 10000 * MILLI; now += 100 * MILLI) {
+      tb.acquire(1, 1000, now);
+    }
+    assertEquals(1000, tb.getAchievedRate(RateWindow.TenSeconds, 10000 * MILLI), 50);
+    // once idle the recent rate drops, rather than averaging in the time since creation
+    assertEquals(0, tb.getAchievedRate(RateWindow.TenSeconds, 25000 * MILLI), 0);
+    assertEquals(0, tb.getAchievedRate(RateWindow.OneSecond, 25000 * MILLI), 0);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void badRateTest() {
+    new TokenBucket(0, 100);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void badBurstTest() {
+    new TokenBucket(100, 0);
+  }
+}
@@ -0,0 +1,80 @@
+package org.threadly.litesockets.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.threadly.litesockets.utils.SimpleByteStats.RateWindow;
+
+public class WindowedRateTrackerTests {
+  private static final double DELTA = 0.0001;
+  private static final long START = 1_000_000_000L;
+  
+  @Test
+  public void currentSecondNotIncludedTest() {
+    WindowedRateTracker wrt = new WindowedRateTracker(START);
+    wrt.addRead(START, 100);
+    
+    assertEquals(0, wrt.getRate(START + 500, WindowedRateTracker.READ_BYTES, RateWindow.OneSecond), DELTA);
+    assertEquals(100, wrt.getRate(START + 1000, WindowedRateTracker.READ_BYTES, RateWindow.OneSecond), DELTA);
+    assertEquals(1, wrt.getRate(START + 1000, WindowedRateTracker.READ_OPERATIONS, RateWindow.OneSecond), DELTA);
+    assertEquals(0, wrt.getRate(START + 1000, WindowedRateTracker.WRITE_BYTES, RateWindow.OneSecond), DELTA);
+    assertEquals(0, wrt.getRate(START + 2000, WindowedRateTracker.READ_BYTES, RateWindow.OneSecond), DELTA);
+  }
+  
+  @Test
+  public void steadyRateWindowsTest() {
+    WindowedRateTracker wrt = new WindowedRateTracker(START);
+    for(int s = 0; s < 120; s++) {
+      for(int i = 0; i < 10; i++) {
+        wrt.addWrite(START + (s * 1000) + (i * 100), 50);
+      }
+    }
+    long now = START + 120_000;
+    for(RateWindow window : RateWindow.values()) {
+      assertEquals(500, wrt.getRate(now, WindowedRateTracker.WRITE_BYTES, window), DELTA);
+      assertEquals(10, wrt.getRate(now, WindowedRateTracker.WRITE_OPERATIONS, window), DELTA);
+      assertEquals(0, wrt.getRate(now, WindowedRateTracker.READ_BYTES, window), DELTA);
+    }
+    // after 2 minutes at a steady rate the EWMA should have converged
+    assertEquals(500, wrt.getEwmaRate(now, WindowedRateTracker.WRITE_BYTES), 1);
+  }
+  
+  @Test
+  public void windowsExpireTest() {
+    WindowedRateTracker wrt = new WindowedRateTracker(START);
+    for(int s = 0; s < 60; s++) {
+      wrt.addRead(START + (s * 1000), 600);
+    }
+    long now = START + 60_000;
+    assertEquals(600, wrt.getRate(now, WindowedRateTracker.READ_BYTES, RateWindow.TenSeconds), DELTA);
+    assertEquals(600, wrt.getRate(now, WindowedRateTracker.READ_BYTES, RateWindow.OneMinute), DELTA);
+    
+    now += 10_000;
+    assertEquals(0, wrt.getRate(now, WindowedRateTracker.READ_BYTES, RateWindow.TenSeconds), DELTA);
+    assertEquals(500, wrt.getRate(now, WindowedRateTracker.READ_BYTES, RateWindow.OneMinute), DELTA);
+    
+    now += 55_000;
+    assertEquals(0, wrt.getRate(now, WindowedRateTracker.READ_BYTES, RateWindow.OneMinute), DELTA);
+  }
+  
+  @Test
+  public void ewmaDecayTest() {
+    WindowedRateTracker wrt = new WindowedRateTracker(START);
+    for(int s = 0; s < 100; s++) {
+      wrt.addRead(START + (s * 1000), 1000);
+    }
+    double ewma = wrt.getEwmaRate(START + 100_000, WindowedRateTracker.READ_BYTES);
+    assertEquals(1000, ewma, 1);
+    
+    double decayed = wrt.getEwmaRate(START + 110_000, WindowedRateTracker.READ_BYTES);
+    assertEquals(ewma * Math.exp(-1), decayed, 1);
+    
+    // long idle period should clear all windows and nearly zero the average
+    long now = START + 1_000_000;
+    assertTrue(wrt.getEwmaRate(now, WindowedRateTracker.READ_BYTES) < 1);
+    assertEquals(0, wrt.getRate(now, WindowedRateTracker.READ_BYTES, RateWindow.OneMinute), DELTA);
+    wrt.addRead(now, 10);
+    assertEquals(10, wrt.getRate(now + 1000, WindowedRateTracker.READ_BYTES, RateWindow.OneSecond), DELTA);
+  }
+}